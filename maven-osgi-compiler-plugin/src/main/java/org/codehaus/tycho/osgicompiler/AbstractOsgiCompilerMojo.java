@@ -20,11 +20,19 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.apache.maven.artifact.Artifact;
@@ -33,6 +41,7 @@ import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
 import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.repository.RepositorySystem;
 import org.codehaus.plexus.compiler.CompilerConfiguration;
@@ -49,6 +58,7 @@ import org.codehaus.tycho.UnknownEnvironmentException;
 import org.codehaus.tycho.ClasspathEntry.AccessRule;
 import org.codehaus.tycho.osgicompiler.copied.AbstractCompilerMojo;
 import org.codehaus.tycho.osgicompiler.copied.CompilationFailureException;
+import org.codehaus.tycho.osgicompiler.incremental.IncrementalBuild;
 import org.codehaus.tycho.osgitools.project.BuildOutputJar;
 import org.codehaus.tycho.osgitools.project.EclipsePluginProject;
 import org.codehaus.tycho.utils.ExecutionEnvironment;
@@ -72,6 +82,7 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 	private static final String MANIFEST_HEADER_BUNDLE_REQ_EXEC_ENV = "Bundle-RequiredExecutionEnvironment";
 	private static final Pattern COMMA_SEP_INCLUDING_WHITESPACE = Pattern
 			.compile("\\s*,\\s*");
+	private static final Pattern PLATFORM_URL_PREFIX = Pattern.compile("^platform:/(plugin|fragment)/[^/]*/");
 
 	/**
 	 * @parameter expression="${project}"
@@ -129,9 +140,36 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 	private Set<String> excludes = new HashSet<String>();
 
 	/**
-	 * Current build output jar
+	 * If set to true, only changed source files and source files depending on types whose API
+	 * changed, either in this project or in its classpath, are recompiled. Compilation is skipped
+	 * entirely if nothing changed. Dependencies and API fingerprints are recorded in the build
+	 * directory, full compilation is performed if there is no record of the previous compilation
+	 * or if compiler configuration changed.
+	 * 
+	 * @parameter expression="${tycho.compiler.incremental}" default-value="false"
+	 */
+	private boolean incremental;
+
+	/**
+	 * Maximum number of output jars of a bundle compiled in parallel, 0 means number of available
+	 * processors. An output jar is compiled after the output jars it depends on. If
+	 * build.properties <code>extra.&lt;jar&gt;</code> entry of the jar names other output jars of
+	 * the bundle, the jar only depends on these. Otherwise it depends on all jars preceding it in
+	 * <code>jars.compile.order</code>.
+	 * 
+	 * @parameter expression="${tycho.compiler.outputJarThreads}" default-value="0"
+	 */
+	private int outputJarThreads;
+
+	/**
+	 * Current build output jar, per thread as output jars may be compiled in parallel
+	 */
+	private final ThreadLocal<BuildOutputJar> outputJar = new ThreadLocal<BuildOutputJar>();
+
+	/**
+	 * Incremental compilation of current build output jar, <code>null</code> if not enabled
 	 */
-	private BuildOutputJar outputJar;
+	private final ThreadLocal<IncrementalBuild> incrementalBuild = new ThreadLocal<IncrementalBuild>();
 
 	/**
 	 * @component role="org.codehaus.tycho.TychoProject"
@@ -145,11 +183,15 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 			getLog().info("Using compile source roots from build.properties");
 		}
 
-		for (BuildOutputJar jar : pdeProject.getOutputJars()) {
-			this.outputJar = jar;
-			this.outputJar.getOutputDirectory().mkdirs();
-			super.execute();
-			copyResources();
+		List<BuildOutputJar> jars = pdeProject.getOutputJars();
+		int threads = outputJarThreads > 0 ? outputJarThreads : Runtime.getRuntime().availableProcessors();
+		if (jars.size() > 1 && threads > 1) {
+			compileInParallel(jars, Math.min(threads, jars.size()));
+		} else {
+			for (BuildOutputJar jar : jars) {
+				compile(jar);
+				copyResources(jar);
+			}
 		}
 
 		// this does not include classes from nested jars
@@ -159,10 +201,180 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 		}
 	}
 
+	private void compile(BuildOutputJar jar) throws MojoExecutionException, CompilationFailureException {
+		outputJar.set(jar);
+		try {
+			jar.getOutputDirectory().mkdirs();
+			super.execute();
+			if (incrementalBuild.get() != null) {
+				incrementalBuild.get().save();
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not save incremental compilation state", e);
+		} finally {
+			if (incrementalBuild.get() != null) {
+				incrementalBuild.get().close();
+				incrementalBuild.remove();
+			}
+			outputJar.remove();
+		}
+	}
+
+	/**
+	 * Compiles independent output jars in parallel and copies resources while compiling. Failures
+	 * are reported in the order of the output jars, jars depending on failed jars are not compiled.
+	 */
+	private void compileInParallel(List<BuildOutputJar> jars, int threads) throws MojoExecutionException,
+			CompilationFailureException {
+		Map<BuildOutputJar, Set<BuildOutputJar>> dependencies = getOutputJarDependencies(jars);
+
+		Map<BuildOutputJar, Future<?>> compilations = new HashMap<BuildOutputJar, Future<?>>();
+		Map<BuildOutputJar, Future<?>> copies = new HashMap<BuildOutputJar, Future<?>>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			// dependencies are submitted first and the executor runs tasks in submission order,
+			// so waiting for them cannot block the executor
+			for (final BuildOutputJar jar : sortOutputJars(jars, dependencies)) {
+				final List<Future<?>> required = new ArrayList<Future<?>>();
+				for (BuildOutputJar dependency : dependencies.get(jar)) {
+					required.add(compilations.get(dependency));
+				}
+				compilations.put(jar, executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						for (Future<?> dependency : required) {
+							dependency.get();
+						}
+						compile(jar);
+						return null;
+					}
+				}));
+				copies.put(jar, executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						copyResources(jar);
+						return null;
+					}
+				}));
+			}
+
+			Throwable failure = null;
+			for (BuildOutputJar jar : jars) {
+				for (Future<?> task : new Future<?>[] { compilations.get(jar), copies.get(jar) }) {
+					try {
+						task.get();
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						if (cause instanceof ExecutionException) {
+							getLog().warn("Output jar " + jar.getName() + " not compiled, required output jar failed");
+						} else if (failure == null) {
+							failure = cause;
+						} else {
+							getLog().error("Output jar " + jar.getName() + " failed: " + getMessage(cause));
+						}
+					}
+				}
+			}
+
+			if (failure instanceof CompilationFailureException) {
+				throw (CompilationFailureException) failure;
+			} else if (failure instanceof MojoExecutionException) {
+				throw (MojoExecutionException) failure;
+			} else if (failure != null) {
+				throw new MojoExecutionException("Compilation failed", failure);
+			}
+		} catch (InterruptedException e) {
+			throw new MojoExecutionException("Interrupted", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static String getMessage(Throwable t) {
+		if (t instanceof MojoFailureException && ((MojoFailureException) t).getLongMessage() != null) {
+			return ((MojoFailureException) t).getLongMessage();
+		}
+		return t.getMessage();
+	}
+
+	/**
+	 * Output jars of the bundle each output jar depends on, according to build.properties.
+	 */
+	private Map<BuildOutputJar, Set<BuildOutputJar>> getOutputJarDependencies(List<BuildOutputJar> jars) {
+		Properties props = pdeProject.getBuildProperties();
+		Map<String, BuildOutputJar> jarsByName = new LinkedHashMap<String, BuildOutputJar>();
+		for (BuildOutputJar jar : jars) {
+			jarsByName.put(jar.getName(), jar);
+		}
+		List<String> compileOrder = new ArrayList<String>();
+		String order = props.getProperty("jars.compile.order");
+		if (order != null) {
+			for (String name : order.split(",")) {
+				compileOrder.add(name.trim());
+			}
+		}
+
+		Map<BuildOutputJar, Set<BuildOutputJar>> dependencies = new HashMap<BuildOutputJar, Set<BuildOutputJar>>();
+		for (BuildOutputJar jar : jars) {
+			Set<BuildOutputJar> required = new LinkedHashSet<BuildOutputJar>();
+			String extra = props.getProperty("extra." + jar.getName());
+			if (extra != null) {
+				for (String entry : extra.split(",")) {
+					BuildOutputJar other = jarsByName.get(PLATFORM_URL_PREFIX.matcher(entry.trim()).replaceFirst(""));
+					if (other != null && other != jar) {
+						required.add(other);
+					}
+				}
+			}
+			// jars listed before this jar in the compile order are required in addition to the extra entries
+			int idx = compileOrder.indexOf(jar.getName());
+			for (int i = 0; i < idx; i++) {
+				BuildOutputJar other = jarsByName.get(compileOrder.get(i));
+				if (other != null && other != jar) {
+					required.add(other);
+				}
+			}
+			dependencies.put(jar, required);
+		}
+		return dependencies;
+	}
+
+	private static List<BuildOutputJar> sortOutputJars(List<BuildOutputJar> jars,
+			Map<BuildOutputJar, Set<BuildOutputJar>> dependencies) throws MojoExecutionException {
+		List<BuildOutputJar> sorted = new ArrayList<BuildOutputJar>();
+		Set<BuildOutputJar> visiting = new HashSet<BuildOutputJar>();
+		for (BuildOutputJar jar : jars) {
+			sortOutputJars(jar, dependencies, visiting, sorted);
+		}
+		return sorted;
+	}
+
+	private static void sortOutputJars(BuildOutputJar jar, Map<BuildOutputJar, Set<BuildOutputJar>> dependencies,
+			Set<BuildOutputJar> visiting, List<BuildOutputJar> sorted) throws MojoExecutionException {
+		if (sorted.contains(jar)) {
+			return;
+		}
+		if (!visiting.add(jar)) {
+			throw new MojoExecutionException("Cyclic dependency between output jars involving " + jar.getName());
+		}
+		for (BuildOutputJar dependency : dependencies.get(jar)) {
+			sortOutputJars(dependency, dependencies, visiting, sorted);
+		}
+		visiting.remove(jar);
+		sorted.add(jar);
+	}
+
 	/*
 	 * mimics the behavior of the PDE incremental builder which by default copies all
 	 * (non-java) resource files in source directories into the target folder
 	 */
+	private void copyResources(BuildOutputJar jar) throws MojoExecutionException {
+		outputJar.set(jar);
+		try {
+			copyResources();
+		} finally {
+			outputJar.remove();
+		}
+	}
+
 	private void copyResources() throws MojoExecutionException {
 		for (String sourceRoot : getCompileSourceRoots()) {
 			// StaleSourceScanner.getIncludedSources throws IllegalStateException
@@ -177,7 +389,7 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 			CopyMapping copyMapping = new CopyMapping();
 			scanner.addSourceMapping(copyMapping);
 			try {
-				scanner.getIncludedSources(sourceRootFile, this.outputJar
+				scanner.getIncludedSources(sourceRootFile, this.outputJar.get()
 						.getOutputDirectory());
 				for (CopyMapping.SourceTargetPair sourceTargetPair : copyMapping
 						.getSourceTargetPairs()) {
@@ -191,7 +403,7 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 			} catch (IOException e) {
 				throw new MojoExecutionException(
 						"Exception copying resource files from " + sourceRoot
-								+ " to " + this.outputJar.getOutputDirectory(),
+								+ " to " + this.outputJar.get().getOutputDirectory(),
 						e);
 			}
 		}
@@ -205,7 +417,7 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 
 	@Override
 	protected File getOutputDirectory() {
-		return outputJar.getOutputDirectory();
+		return outputJar.get().getOutputDirectory();
 	}
 
 	public List<String> getClasspathElements() throws MojoExecutionException {
@@ -281,10 +493,7 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 		if (includes.isEmpty() && excludes.isEmpty()) {
 			scanner = new StaleSourceScanner(staleMillis);
 		} else {
-			if (includes.isEmpty()) {
-				includes.add("**/*.java");
-			}
-			scanner = new StaleSourceScanner(staleMillis, includes, excludes);
+			scanner = new StaleSourceScanner(staleMillis, getIncludes("java"), excludes);
 		}
 		return scanner;
 	}
@@ -294,22 +503,29 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 		SourceInclusionScanner scanner = null;
 
 		if (includes.isEmpty() && excludes.isEmpty()) {
-			includes = Collections.singleton("**/*." + inputFileEnding);
-			scanner = new SimpleSourceInclusionScanner(includes,
+			scanner = new SimpleSourceInclusionScanner(getIncludes(inputFileEnding),
 					Collections.EMPTY_SET);
 		} else {
-			if (includes.isEmpty()) {
-				includes.add("**/*." + inputFileEnding);
-			}
-			scanner = new SimpleSourceInclusionScanner(includes, excludes);
+			scanner = new SimpleSourceInclusionScanner(getIncludes(inputFileEnding), excludes);
 		}
 
 		return scanner;
 	}
 
+	/**
+	 * Configured includes, or all files with the given extension. Does not modify the
+	 * configuration, which is shared by output jars compiled in parallel.
+	 */
+	private Set<String> getIncludes(String inputFileEnding) {
+		if (includes.isEmpty()) {
+			return Collections.singleton("**/*." + inputFileEnding);
+		}
+		return includes;
+	}
+
 	protected List<String> getPdeCompileSourceRoots() throws MojoExecutionException {
 		ArrayList<String> roots = new ArrayList<String>();
-		for (File folder : outputJar.getSourceFolders()) {
+		for (File folder : outputJar.get().getSourceFolders()) {
 			try {
 				roots.add(folder.getCanonicalPath());
 			} catch (IOException e) {
@@ -319,12 +535,92 @@ public abstract class AbstractOsgiCompilerMojo extends AbstractCompilerMojo {
 		return roots;
 	}
 
+	@Override
+	protected Set<File> getSourcesToCompile(CompilerConfiguration compilerConfiguration, Set staleSources)
+			throws MojoExecutionException {
+		if (!incremental) {
+			return staleSources;
+		}
+
+		List<String> sourceRoots = compilerConfiguration.getSourceLocations();
+		SourceInclusionScanner scanner = getSourceInclusionScanner("java");
+		Set<File> sources = new LinkedHashSet<File>();
+		for (String sourceRoot : sourceRoots) {
+			File sourceRootFile = new File(sourceRoot);
+			if (!sourceRootFile.isDirectory()) {
+				continue;
+			}
+			try {
+				sources.addAll(scanner.getIncludedSources(sourceRootFile, null));
+			} catch (InclusionScanException e) {
+				throw new MojoExecutionException("Exception while scanning for source files in " + sourceRoot, e);
+			}
+		}
+
+		IncrementalBuild incrementalBuild = new IncrementalBuild(getIncrementalStateFile(), getOutputDirectory(),
+				getIncrementalConfiguration(compilerConfiguration));
+		this.incrementalBuild.set(incrementalBuild);
+		try {
+			Set<File> result = incrementalBuild.getSourcesToCompile(sourceRoots, sources, compilerConfiguration
+					.getClasspathEntries());
+			if (incrementalBuild.isFullBuild()) {
+				getLog().info("Full compilation of " + result.size() + " source files");
+			} else if (!result.isEmpty()) {
+				getLog().info("Incremental compilation of " + result.size() + " of " + sources.size() + " source files");
+			}
+			return result;
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not determine changed source files", e);
+		}
+	}
+
+	/**
+	 * State file of the output folder, keyed by its path relative to the build directory because nested jars in
+	 * different directories may have the same name.
+	 */
+	private File getIncrementalStateFile() {
+		File buildDirectory = new File(project.getBuild().getDirectory());
+		String outputDirectory = getOutputDirectory().getAbsolutePath();
+		String prefix = buildDirectory.getAbsolutePath() + File.separator;
+		String path = outputDirectory.startsWith(prefix) ? outputDirectory.substring(prefix.length())
+				: getOutputDirectory().getName();
+		return new File(buildDirectory, "incremental/" + path.replace(File.separatorChar, '/') + ".state");
+	}
+
+	@Override
+	protected Set<File> getAffectedSources(Set compiledSources) throws MojoExecutionException {
+		IncrementalBuild incrementalBuild = this.incrementalBuild.get();
+		if (incrementalBuild == null) {
+			return Collections.emptySet();
+		}
+		try {
+			return incrementalBuild.getAffectedSources();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not analyze compiled classes", e);
+		}
+	}
+
+	/**
+	 * Compiler settings which affect generated class files, any change results in full compilation.
+	 */
+	private String getIncrementalConfiguration(CompilerConfiguration compilerConfiguration) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(compilerConfiguration.getSourceLocations()).append('\n');
+		sb.append(compilerConfiguration.getClasspathEntries()).append('\n');
+		sb.append(compilerConfiguration.getSourceVersion()).append(' ');
+		sb.append(compilerConfiguration.getTargetVersion()).append(' ');
+		sb.append(compilerConfiguration.getSourceEncoding()).append(' ');
+		sb.append(compilerConfiguration.isDebug()).append('\n');
+		sb.append(compilerConfiguration.getCustomCompilerArguments());
+		return sb.toString();
+	}
+
 	@Override
 	protected CompilerConfiguration getCompilerConfiguration(List<String> compileSourceRoots) throws MojoExecutionException {
 		CompilerConfiguration compilerConfiguration = super.getCompilerConfiguration(compileSourceRoots);
 		if (usePdeSourceRoots) {
 			Properties props = pdeProject.getBuildProperties();
-			String encoding = props.getProperty("javacDefaultEncoding." + outputJar.getName());
+			String encoding = props.getProperty("javacDefaultEncoding." + outputJar.get().getName());
 			if (encoding != null) {
 				compilerConfiguration.setSourceEncoding(encoding);
 			}
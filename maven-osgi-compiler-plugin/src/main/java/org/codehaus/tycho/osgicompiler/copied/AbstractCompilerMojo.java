@@ -18,6 +18,7 @@ package org.codehaus.tycho.osgicompiler.copied;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -317,6 +318,9 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 
 				compilerConfiguration.setSourceFiles(sources);
 			} else {
+				staleSources = getSourcesToCompile(compilerConfiguration,
+						staleSources);
+
 				compilerConfiguration.setSourceFiles(staleSources);
 			}
 		} catch (CompilerException e) {
@@ -381,6 +385,27 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 		// Compile!
 		// ----------------------------------------------------------------------
 
+		compile(compiler, compilerConfiguration);
+
+		Set affectedSources = getAffectedSources(compilerConfiguration
+				.getSourceFiles());
+
+		while (!affectedSources.isEmpty()) {
+			getLog().info(
+					"Compiling " + affectedSources.size()
+							+ " source files affected by changes");
+
+			compilerConfiguration.setSourceFiles(affectedSources);
+
+			compile(compiler, compilerConfiguration);
+
+			affectedSources = getAffectedSources(affectedSources);
+		}
+	}
+
+	private void compile(Compiler compiler,
+			CompilerConfiguration compilerConfiguration)
+			throws MojoExecutionException, CompilationFailureException {
 		List messages;
 
 		try {
@@ -411,6 +436,25 @@ public abstract class AbstractCompilerMojo extends AbstractMojo {
 		}
 	}
 
+	/**
+	 * Returns source files to compile, by default the stale source files found
+	 * by the source inclusion scanner.
+	 */
+	protected Set getSourcesToCompile(
+			CompilerConfiguration compilerConfiguration, Set staleSources)
+			throws MojoExecutionException {
+		return staleSources;
+	}
+
+	/**
+	 * Returns source files which need to be compiled because of compilation of
+	 * the provided source files, by default none.
+	 */
+	protected Set getAffectedSources(Set compiledSources)
+			throws MojoExecutionException {
+		return Collections.EMPTY_SET;
+	}
+
 	protected CompilerConfiguration getCompilerConfiguration(List<String> compileSourceRoots) throws MojoExecutionException {
 
 		CompilerConfiguration compilerConfiguration = new CompilerConfiguration();
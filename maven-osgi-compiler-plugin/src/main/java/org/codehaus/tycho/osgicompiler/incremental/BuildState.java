@@ -0,0 +1,92 @@
+package org.codehaus.tycho.osgicompiler.incremental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent state of incremental compilation of one output folder, as of the last successful compilation.
+ */
+class BuildState implements Serializable {
+
+	private static final long serialVersionUID = 2L;
+
+	static class SourceState implements Serializable {
+		private static final long serialVersionUID = 2L;
+
+		long lastModified;
+
+		long length;
+
+		/** internal names of types compiled from the source and their API fingerprints */
+		Map<String, String> types = new LinkedHashMap<String, String>();
+
+		boolean constants;
+
+		/** internal names of referenced types */
+		Set<String> dependencies = new HashSet<String>();
+
+		/** direct supertypes of the types compiled from the source, by internal type name */
+		Map<String, Set<String>> supertypes = new HashMap<String, Set<String>>();
+	}
+
+	static class ClasspathEntryState implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		String stamp;
+
+		/** fingerprint of compile time constants declared by all types of the entry */
+		String constants;
+
+		/** API fingerprints of the types of the entry referenced by compiled sources */
+		Map<String, String> types = new LinkedHashMap<String, String>();
+	}
+
+	/** compiler configuration, any change invalidates the state */
+	String configuration;
+
+	Map<String, SourceState> sources = new LinkedHashMap<String, SourceState>();
+
+	Map<String, ClasspathEntryState> classpath = new LinkedHashMap<String, ClasspathEntryState>();
+
+	/** referenced types not found on the classpath, i.e. types provided by the JRE */
+	Set<String> unresolved = new HashSet<String>();
+
+	static BuildState load(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			ObjectInputStream is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				return (BuildState) is.readObject();
+			} finally {
+				is.close();
+			}
+		} catch (Exception e) {
+			// corrupt or incompatible state, fall back to full build
+			return null;
+		}
+	}
+
+	void save(File file) throws IOException {
+		file.getParentFile().mkdirs();
+		ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			os.writeObject(this);
+		} finally {
+			os.close();
+		}
+	}
+}
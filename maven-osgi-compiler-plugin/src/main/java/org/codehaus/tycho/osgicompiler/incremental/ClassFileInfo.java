@@ -0,0 +1,362 @@
+package org.codehaus.tycho.osgicompiler.incremental;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Minimal class file reader which extracts what incremental compilation needs to know about a compiled type: the
+ * types it references, its direct supertypes, the source file it was compiled from and a fingerprint of its API. Private
+ * members and method bodies are not part of the API fingerprint, generic signatures and values of compile time
+ * constants are, the latter because they are inlined by the compiler.
+ */
+public class ClassFileInfo {
+
+	private static final int ACC_PRIVATE = 0x0002;
+
+	private static final int ACC_STATIC = 0x0008;
+
+	private static final int ACC_FINAL = 0x0010;
+
+	/** access flags which do not affect clients, ACC_SUPER, ACC_SYNCHRONIZED, ACC_VOLATILE etc */
+	private static final int API_FLAGS = 0x7fff & ~(0x0020 | 0x0040 | 0x0080 | 0x0100 | 0x0800);
+
+	private static final int CONSTANT_Utf8 = 1;
+
+	private static final int CONSTANT_Integer = 3;
+
+	private static final int CONSTANT_Float = 4;
+
+	private static final int CONSTANT_Long = 5;
+
+	private static final int CONSTANT_Double = 6;
+
+	private static final int CONSTANT_Class = 7;
+
+	private static final int CONSTANT_String = 8;
+
+	private final String name;
+
+	private final String sourceFile;
+
+	private final Set<String> referencedTypes;
+
+	private final Set<String> supertypes;
+
+	private final String apiHash;
+
+	private final String constantsHash;
+
+	private ClassFileInfo(String name, String sourceFile, Set<String> referencedTypes, Set<String> supertypes,
+			String apiHash, String constantsHash) {
+		this.name = name;
+		this.sourceFile = sourceFile;
+		this.referencedTypes = referencedTypes;
+		this.supertypes = supertypes;
+		this.apiHash = apiHash;
+		this.constantsHash = constantsHash;
+	}
+
+	/**
+	 * Internal name of the type, i.e. <code>java/lang/Object</code>.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Path of the source file relative to the source root, derived from the SourceFile attribute or, if the class was
+	 * compiled without debug information, from the name of the top level type.
+	 */
+	public String getSourcePath() {
+		int idx = name.lastIndexOf('/');
+		String pkg = idx > 0 ? name.substring(0, idx + 1) : "";
+		if (sourceFile != null) {
+			return pkg + sourceFile;
+		}
+		String simpleName = name.substring(idx + 1);
+		int nested = simpleName.indexOf('$');
+		return pkg + (nested > 0 ? simpleName.substring(0, nested) : simpleName) + ".java";
+	}
+
+	/**
+	 * Internal names of all types referenced from the class file, excluding the type itself.
+	 */
+	public Set<String> getReferencedTypes() {
+		return referencedTypes;
+	}
+
+	/**
+	 * Internal names of the superclass, if any, and of the directly implemented interfaces.
+	 */
+	public Set<String> getSupertypes() {
+		return supertypes;
+	}
+
+	public String getApiHash() {
+		return apiHash;
+	}
+
+	/**
+	 * Whether the type declares compile time constants which may have been inlined into other types.
+	 */
+	public boolean hasConstants() {
+		return constantsHash != null;
+	}
+
+	/**
+	 * Fingerprint of names and values of compile time constants declared by the type, <code>null</code> if there are
+	 * none.
+	 */
+	public String getConstantsHash() {
+		return constantsHash;
+	}
+
+	public static ClassFileInfo read(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		if (in.readInt() != 0xCAFEBABE) {
+			throw new IOException("Not a class file");
+		}
+		in.readUnsignedShort(); // minor
+		in.readUnsignedShort(); // major
+
+		int count = in.readUnsignedShort();
+		Object[] pool = new Object[count];
+		int[] classes = new int[count];
+		int classCount = 0;
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case CONSTANT_Utf8:
+				pool[i] = in.readUTF();
+				break;
+			case CONSTANT_Integer:
+				pool[i] = Integer.valueOf(in.readInt());
+				break;
+			case CONSTANT_Float:
+				pool[i] = Float.valueOf(in.readFloat());
+				break;
+			case CONSTANT_Long:
+				pool[i] = Long.valueOf(in.readLong());
+				i++;
+				break;
+			case CONSTANT_Double:
+				pool[i] = Double.valueOf(in.readDouble());
+				i++;
+				break;
+			case CONSTANT_Class:
+				pool[i] = Integer.valueOf(in.readUnsignedShort());
+				classes[classCount++] = i;
+				break;
+			case CONSTANT_String:
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				pool[i] = Integer.valueOf(in.readUnsignedShort());
+				break;
+			case 15: // MethodHandle
+				in.readUnsignedByte();
+				in.readUnsignedShort();
+				break;
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				in.readInt();
+				break;
+			default:
+				throw new IOException("Unsupported constant pool tag " + tag);
+			}
+		}
+
+		int access = in.readUnsignedShort();
+		String name = getClassName(pool, in.readUnsignedShort());
+		int superIndex = in.readUnsignedShort();
+		String superName = superIndex != 0 ? getClassName(pool, superIndex) : null;
+		List<String> interfaces = new ArrayList<String>();
+		for (int i = in.readUnsignedShort(); i > 0; i--) {
+			interfaces.add(getClassName(pool, in.readUnsignedShort()));
+		}
+		Collections.sort(interfaces);
+
+		List<String> constants = new ArrayList<String>();
+		List<String> members = new ArrayList<String>();
+		for (int i = in.readUnsignedShort(); i > 0; i--) {
+			int fieldAccess = in.readUnsignedShort();
+			String fieldName = (String) pool[in.readUnsignedShort()];
+			String descriptor = (String) pool[in.readUnsignedShort()];
+			Object constant = null;
+			String signature = null;
+			for (int j = in.readUnsignedShort(); j > 0; j--) {
+				String attribute = (String) pool[in.readUnsignedShort()];
+				int length = in.readInt();
+				if ("ConstantValue".equals(attribute)) {
+					Object value = pool[in.readUnsignedShort()];
+					// CONSTANT_String refers to the Utf8 entry
+					constant = value instanceof Integer && "Ljava/lang/String;".equals(descriptor) ? pool[((Integer) value)
+							.intValue()] : value;
+				} else if ("Signature".equals(attribute)) {
+					signature = (String) pool[in.readUnsignedShort()];
+				} else {
+					skip(in, length);
+				}
+			}
+			if ((fieldAccess & ACC_PRIVATE) == 0) {
+				String field = "F " + (fieldAccess & API_FLAGS) + " " + fieldName + " " + descriptor + " " + signature
+						+ " " + constant;
+				if (constant != null && (fieldAccess & (ACC_STATIC | ACC_FINAL)) == (ACC_STATIC | ACC_FINAL)) {
+					constants.add(field);
+				}
+				members.add(field);
+			}
+		}
+		for (int i = in.readUnsignedShort(); i > 0; i--) {
+			int methodAccess = in.readUnsignedShort();
+			String methodName = (String) pool[in.readUnsignedShort()];
+			String descriptor = (String) pool[in.readUnsignedShort()];
+			List<String> exceptions = new ArrayList<String>();
+			String signature = null;
+			for (int j = in.readUnsignedShort(); j > 0; j--) {
+				String attribute = (String) pool[in.readUnsignedShort()];
+				int length = in.readInt();
+				if ("Exceptions".equals(attribute)) {
+					for (int k = in.readUnsignedShort(); k > 0; k--) {
+						exceptions.add(getClassName(pool, in.readUnsignedShort()));
+					}
+				} else if ("Signature".equals(attribute)) {
+					signature = (String) pool[in.readUnsignedShort()];
+				} else {
+					skip(in, length);
+				}
+			}
+			if ((methodAccess & ACC_PRIVATE) == 0) {
+				Collections.sort(exceptions);
+				members.add("M " + (methodAccess & API_FLAGS) + " " + methodName + descriptor + " " + signature + " "
+						+ exceptions);
+			}
+		}
+		Collections.sort(members);
+
+		String sourceFile = null;
+		String classSignature = null;
+		for (int i = in.readUnsignedShort(); i > 0; i--) {
+			String attribute = (String) pool[in.readUnsignedShort()];
+			int length = in.readInt();
+			if ("SourceFile".equals(attribute)) {
+				sourceFile = (String) pool[in.readUnsignedShort()];
+			} else if ("Signature".equals(attribute)) {
+				classSignature = (String) pool[in.readUnsignedShort()];
+			} else {
+				skip(in, length);
+			}
+		}
+
+		Set<String> referencedTypes = new HashSet<String>();
+		for (int i = 0; i < classCount; i++) {
+			addType(referencedTypes, getClassName(pool, classes[i]));
+		}
+		for (int i = 1; i < count; i++) {
+			if (pool[i] instanceof String) {
+				addDescriptorTypes(referencedTypes, (String) pool[i]);
+			}
+		}
+		referencedTypes.remove(name);
+
+		StringBuilder api = new StringBuilder();
+		api.append(access & API_FLAGS).append(' ').append(name).append(' ').append(superName).append(' ')
+				.append(interfaces).append(' ').append(classSignature).append('\n');
+		for (String member : members) {
+			api.append(member).append('\n');
+		}
+
+		String constantsHash = null;
+		if (!constants.isEmpty()) {
+			Collections.sort(constants);
+			constantsHash = digest(constants.toString());
+		}
+
+		Set<String> supertypes = new HashSet<String>(interfaces);
+		if (superName != null) {
+			supertypes.add(superName);
+		}
+
+		return new ClassFileInfo(name, sourceFile, referencedTypes, supertypes, digest(api.toString()), constantsHash);
+	}
+
+	private static String getClassName(Object[] pool, int index) {
+		return (String) pool[((Integer) pool[index]).intValue()];
+	}
+
+	private static void addType(Set<String> types, String name) {
+		if (name.startsWith("[")) {
+			addDescriptorTypes(types, name);
+		} else {
+			types.add(name);
+		}
+	}
+
+	/**
+	 * Collects object types from field and method descriptors and generic signatures. Other strings rarely contain
+	 * <code>L...;</code> sequences, the occasional false positive only makes incremental compilation more
+	 * conservative.
+	 */
+	private static void addDescriptorTypes(Set<String> types, String descriptor) {
+		if (descriptor.length() < 3) {
+			return;
+		}
+		char first = descriptor.charAt(0);
+		if (first != '(' && first != 'L' && first != '[' && first != '<') {
+			return;
+		}
+		int start = descriptor.indexOf('L');
+		while (start >= 0) {
+			int end = start + 1;
+			while (end < descriptor.length()) {
+				char c = descriptor.charAt(end);
+				if (c == ';' || c == '<' || c == '.') {
+					break;
+				}
+				end++;
+			}
+			if (end < descriptor.length() && end > start + 1) {
+				types.add(descriptor.substring(start + 1, end));
+			}
+			start = descriptor.indexOf('L', end);
+		}
+	}
+
+	private static void skip(DataInputStream in, int length) throws IOException {
+		while (length > 0) {
+			int skipped = in.skipBytes(length);
+			if (skipped <= 0) {
+				throw new IOException("Unexpected end of class file");
+			}
+			length -= skipped;
+		}
+	}
+
+	static String digest(String data) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			byte[] digest = md.digest(data.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0x0f, 16)).append(Character.forDigit(b & 0x0f, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
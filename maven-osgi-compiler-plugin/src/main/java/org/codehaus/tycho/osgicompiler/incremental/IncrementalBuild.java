@@ -0,0 +1,568 @@
+package org.codehaus.tycho.osgicompiler.incremental;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.tycho.osgicompiler.incremental.BuildState.ClasspathEntryState;
+import org.codehaus.tycho.osgicompiler.incremental.BuildState.SourceState;
+
+/**
+ * Incremental compilation of one output folder. Tracks types compiled from each source file, the types each source
+ * file depends on and API fingerprints of these types, both for types compiled from sources and types found on the
+ * classpath. A source file is recompiled when it changes, when its class files are missing or when API of a type it
+ * depends on changes. API changes of a type also affect sources depending on its subtypes, which inherit the changed
+ * members. Changes of compile time constants, which may have been inlined by the compiler without leaving any
+ * dependency in the class file, result in full recompilation.
+ * <p>
+ * Usage: {@link #getSourcesToCompile(List, Collection, List)}, compile returned sources, then call
+ * {@link #getAffectedSources()} and compile returned sources until there are none. Finally {@link #save()} the state.
+ */
+public class IncrementalBuild {
+
+	/** file systems with coarse timestamp granularity may truncate modification time of fresh class files */
+	private static final long TIMESTAMP_GRANULARITY = 2000L;
+
+	private final File stateFile;
+
+	private final File outputDirectory;
+
+	private final String configuration;
+
+	private final BuildState previousState;
+
+	private final BuildState state = new BuildState();
+
+	/** current source files by absolute path */
+	private final Map<String, File> sources = new LinkedHashMap<String, File>();
+
+	/** absolute source file paths by path relative to source root */
+	private final Map<String, String> sourcePaths = new HashMap<String, String>();
+
+	/** classpath locations, in classpath order */
+	private final List<String> classpath = new ArrayList<String>();
+
+	private final Set<String> compiled = new HashSet<String>();
+
+	private Set<String> compiling = Collections.emptySet();
+
+	private long compileStart;
+
+	private boolean fullBuild;
+
+	private final Map<String, ZipFile> jars = new HashMap<String, ZipFile>();
+
+	/** API fingerprints of classpath types including inherited API, by internal type name */
+	private final Map<String, String> inheritedApiHashes = new HashMap<String, String>();
+
+	/**
+	 * @param stateFile
+	 *            file the state of the previous build is loaded from and the state of this build is saved to
+	 * @param configuration
+	 *            compiler configuration, i.e. classpath, source and target levels, any change results in full build
+	 */
+	public IncrementalBuild(File stateFile, File outputDirectory, String configuration) {
+		this.stateFile = stateFile;
+		this.outputDirectory = outputDirectory;
+		this.configuration = configuration;
+		this.previousState = BuildState.load(stateFile);
+		this.state.configuration = configuration;
+	}
+
+	public boolean isFullBuild() {
+		return fullBuild;
+	}
+
+	/**
+	 * Returns source files that need to be compiled and deletes their class files as well as class files of deleted
+	 * source files.
+	 *
+	 * @param sourceRoots
+	 *            absolute paths of source roots
+	 * @param sourceFiles
+	 *            all source files of the output folder
+	 * @param classpathElements
+	 *            classpath locations, optionally followed by access rules in square brackets
+	 */
+	public Set<File> getSourcesToCompile(List<String> sourceRoots, Collection<File> sourceFiles,
+			List<String> classpathElements) throws IOException {
+		for (File file : sourceFiles) {
+			String path = file.getAbsolutePath();
+			sources.put(path, file);
+			String relativePath = getRelativePath(sourceRoots, path);
+			if (relativePath != null) {
+				sourcePaths.put(relativePath, path);
+			}
+		}
+		File output = outputDirectory.getAbsoluteFile();
+		for (String element : classpathElements) {
+			int idx = element.indexOf('[');
+			String location = idx >= 0 ? element.substring(0, idx) : element;
+			// classes of this output folder are tracked per source file
+			if (!output.equals(new File(location).getAbsoluteFile())) {
+				classpath.add(location);
+			}
+		}
+
+		if (previousState == null || !configuration.equals(previousState.configuration)) {
+			return fullBuild();
+		}
+
+		Set<String> changedTypes = new HashSet<String>();
+		Set<String> stale = new LinkedHashSet<String>();
+		for (Map.Entry<String, File> source : sources.entrySet()) {
+			SourceState sourceState = previousState.sources.get(source.getKey());
+			File file = source.getValue();
+			if (sourceState != null && sourceState.lastModified == file.lastModified()
+					&& sourceState.length == file.length() && classesExist(sourceState)) {
+				state.sources.put(source.getKey(), sourceState);
+			} else {
+				stale.add(source.getKey());
+			}
+		}
+		for (Map.Entry<String, SourceState> source : previousState.sources.entrySet()) {
+			if (!sources.containsKey(source.getKey())) {
+				SourceState sourceState = source.getValue();
+				if (sourceState.constants) {
+					return fullBuild();
+				}
+				deleteClasses(sourceState);
+				changedTypes.addAll(sourceState.types.keySet());
+			}
+		}
+
+		boolean classpathChanged = false;
+		for (String location : classpath) {
+			ClasspathEntryState previous = previousState.classpath.get(location);
+			ClasspathEntryState entry = new ClasspathEntryState();
+			entry.stamp = getStamp(location);
+			if (previous != null && entry.stamp.equals(previous.stamp)) {
+				entry.constants = previous.constants;
+			} else {
+				entry.constants = getConstantsHash(location);
+				if (previous == null || !equals(previous.constants, entry.constants)) {
+					// inlined constants leave no trace in class files
+					return fullBuild();
+				}
+				classpathChanged = true;
+			}
+			state.classpath.put(location, entry);
+		}
+		for (String location : classpath) {
+			Map<String, String> previousTypes = previousState.classpath.get(location).types;
+			ClasspathEntryState entry = state.classpath.get(location);
+			if (!classpathChanged) {
+				entry.types.putAll(previousTypes);
+				continue;
+			}
+			// types of unchanged entries may inherit from types of changed entries
+			for (Map.Entry<String, String> type : previousTypes.entrySet()) {
+				String apiHash = getClasspathApiHash(location, type.getKey());
+				if (!equals(type.getValue(), apiHash)) {
+					changedTypes.add(type.getKey());
+				}
+				if (apiHash != null) {
+					entry.types.put(type.getKey(), apiHash);
+				}
+			}
+		}
+		state.unresolved.addAll(previousState.unresolved);
+
+		addSubtypes(changedTypes, previousState.sources.values());
+		stale.addAll(getDependents(changedTypes, stale));
+		return compile(stale);
+	}
+
+	/**
+	 * Records results of compilation of the sources returned by the previous call of this method or of
+	 * {@link #getSourcesToCompile(List, Collection, List)} and returns sources affected by API changes of the compiled
+	 * types, which have not been compiled yet.
+	 */
+	public Set<File> getAffectedSources() throws IOException {
+		Map<String, SourceState> compiledSources = new HashMap<String, SourceState>();
+		for (String path : compiling) {
+			compiledSources.put(path, state.sources.get(path));
+		}
+		collectClasses(outputDirectory, compiledSources);
+
+		if (fullBuild) {
+			return compile(Collections.<String> emptySet());
+		}
+
+		Set<String> changedTypes = new HashSet<String>();
+		for (Map.Entry<String, SourceState> source : compiledSources.entrySet()) {
+			SourceState previous = previousState.sources.get(source.getKey());
+			SourceState current = source.getValue();
+			Map<String, String> previousTypes = previous != null ? previous.types : Collections.<String, String> emptyMap();
+			Set<String> types = new HashSet<String>(previousTypes.keySet());
+			types.addAll(current.types.keySet());
+			boolean changed = false;
+			for (String type : types) {
+				if (!equals(previousTypes.get(type), current.types.get(type))) {
+					changedTypes.add(type);
+					changed = true;
+				}
+			}
+			if (changed && (current.constants || (previous != null && previous.constants))) {
+				// inlined constants leave no trace in class files
+				Set<String> remaining = new LinkedHashSet<String>(sources.keySet());
+				remaining.removeAll(compiled);
+				return compile(remaining);
+			}
+		}
+
+		addSubtypes(changedTypes, state.sources.values());
+		return compile(getDependents(changedTypes, compiled));
+	}
+
+	/**
+	 * Saves the state of this build, must only be called after successful compilation of all sources returned by
+	 * {@link #getSourcesToCompile(List, Collection, List)} and {@link #getAffectedSources()}.
+	 */
+	public void save() throws IOException {
+		try {
+			Set<String> ownTypes = new HashSet<String>();
+			Set<String> dependencies = new HashSet<String>();
+			for (SourceState source : state.sources.values()) {
+				ownTypes.addAll(source.types.keySet());
+				dependencies.addAll(source.dependencies);
+			}
+			for (String location : classpath) {
+				if (!state.classpath.containsKey(location)) {
+					ClasspathEntryState entry = new ClasspathEntryState();
+					entry.stamp = getStamp(location);
+					entry.constants = getConstantsHash(location);
+					state.classpath.put(location, entry);
+				}
+			}
+			Set<String> resolved = new HashSet<String>();
+			for (ClasspathEntryState entry : state.classpath.values()) {
+				resolved.addAll(entry.types.keySet());
+			}
+			for (String type : dependencies) {
+				if (type.startsWith("java/") || ownTypes.contains(type) || resolved.contains(type)
+						|| state.unresolved.contains(type)) {
+					continue;
+				}
+				boolean found = false;
+				for (String location : classpath) {
+					String apiHash = getClasspathApiHash(location, type);
+					if (apiHash != null) {
+						state.classpath.get(location).types.put(type, apiHash);
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					state.unresolved.add(type);
+				}
+			}
+			state.save(stateFile);
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Releases classpath jars opened by this build, only needed if the build is abandoned without {@link #save()}.
+	 */
+	public void close() {
+		for (ZipFile jar : jars.values()) {
+			try {
+				jar.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		jars.clear();
+	}
+
+	private Set<File> fullBuild() {
+		fullBuild = true;
+		if (previousState != null) {
+			for (SourceState source : previousState.sources.values()) {
+				deleteClasses(source);
+			}
+		}
+		state.sources.clear();
+		state.classpath.clear();
+		state.unresolved.clear();
+		compiled.clear();
+		return compile(sources.keySet());
+	}
+
+	private Set<File> compile(Set<String> paths) {
+		Set<File> files = new LinkedHashSet<File>();
+		for (String path : paths) {
+			File file = sources.get(path);
+			SourceState previous = state.sources.get(path);
+			if (previous == null && previousState != null) {
+				previous = previousState.sources.get(path);
+			}
+			if (previous != null) {
+				deleteClasses(previous);
+			}
+			SourceState source = new SourceState();
+			source.lastModified = file.lastModified();
+			source.length = file.length();
+			state.sources.put(path, source);
+			files.add(file);
+		}
+		compiled.addAll(paths);
+		compiling = new HashSet<String>(paths);
+		compileStart = System.currentTimeMillis();
+		return files;
+	}
+
+	private Set<String> getDependents(Set<String> types, Set<String> exclude) {
+		Set<String> dependents = new LinkedHashSet<String>();
+		if (types.isEmpty()) {
+			return dependents;
+		}
+		for (Map.Entry<String, SourceState> source : state.sources.entrySet()) {
+			if (exclude.contains(source.getKey())) {
+				continue;
+			}
+			for (String dependency : source.getValue().dependencies) {
+				if (types.contains(dependency)) {
+					dependents.add(source.getKey());
+					break;
+				}
+			}
+		}
+		return dependents;
+	}
+
+	/**
+	 * Adds the types of the sources which directly or indirectly extend or implement any of the types, the members they
+	 * inherit change with their supertypes.
+	 */
+	private static void addSubtypes(Set<String> types, Collection<SourceState> sources) {
+		if (types.isEmpty()) {
+			return;
+		}
+		boolean added;
+		do {
+			added = false;
+			for (SourceState source : sources) {
+				for (Map.Entry<String, Set<String>> type : source.supertypes.entrySet()) {
+					if (!types.contains(type.getKey()) && !Collections.disjoint(types, type.getValue())) {
+						types.add(type.getKey());
+						added = true;
+					}
+				}
+			}
+		} while (added);
+	}
+
+	private void collectClasses(File dir, Map<String, SourceState> compiledSources) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				collectClasses(file, compiledSources);
+			} else if (file.getName().endsWith(".class") && file.lastModified() >= compileStart - TIMESTAMP_GRANULARITY) {
+				ClassFileInfo info = readClassFile(file);
+				String path = sourcePaths.get(info.getSourcePath());
+				SourceState source = compiledSources.get(path);
+				if (source != null) {
+					source.types.put(info.getName(), info.getApiHash());
+					source.dependencies.addAll(info.getReferencedTypes());
+					source.supertypes.put(info.getName(), new HashSet<String>(info.getSupertypes()));
+					source.constants |= info.hasConstants();
+				}
+			}
+		}
+	}
+
+	private boolean classesExist(SourceState source) {
+		for (String type : source.types.keySet()) {
+			if (!new File(outputDirectory, type + ".class").isFile()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void deleteClasses(SourceState source) {
+		for (String type : source.types.keySet()) {
+			new File(outputDirectory, type + ".class").delete();
+		}
+	}
+
+	private String getStamp(String location) {
+		File file = new File(location);
+		if (file.isDirectory()) {
+			long[] stamp = new long[3];
+			getStamp(file, stamp);
+			return stamp[0] + ":" + stamp[1] + ":" + stamp[2];
+		}
+		return file.lastModified() + ":" + file.length();
+	}
+
+	private void getStamp(File dir, long[] stamp) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				getStamp(file, stamp);
+			} else if (file.getName().endsWith(".class")) {
+				stamp[0]++;
+				stamp[1] = Math.max(stamp[1], file.lastModified());
+				stamp[2] += file.length();
+			}
+		}
+	}
+
+	private String getConstantsHash(String location) throws IOException {
+		List<String> constants = new ArrayList<String>();
+		File file = new File(location);
+		if (file.isDirectory()) {
+			getConstants(file, constants);
+		} else {
+			ZipFile jar = getJar(location);
+			if (jar != null) {
+				for (Enumeration<? extends ZipEntry> e = jar.entries(); e.hasMoreElements();) {
+					ZipEntry entry = e.nextElement();
+					if (entry.getName().endsWith(".class")) {
+						addConstants(constants, read(jar.getInputStream(entry)));
+					}
+				}
+			}
+		}
+		Collections.sort(constants);
+		return ClassFileInfo.digest(constants.toString());
+	}
+
+	private void getConstants(File dir, List<String> constants) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				getConstants(file, constants);
+			} else if (file.getName().endsWith(".class")) {
+				addConstants(constants, readClassFile(file));
+			}
+		}
+	}
+
+	private static void addConstants(List<String> constants, ClassFileInfo info) {
+		if (info.hasConstants()) {
+			constants.add(info.getName() + "=" + info.getConstantsHash());
+		}
+	}
+
+	/**
+	 * API fingerprint of a classpath type which includes the API of its supertypes, so that changes of inherited
+	 * members are noticed by sources which only reference the subtype. <code>null</code> if the type is not found at
+	 * the location.
+	 */
+	private String getClasspathApiHash(String location, String type) throws IOException {
+		ClassFileInfo info = readType(location, type);
+		if (info == null) {
+			return null;
+		}
+		List<String> supertypes = new ArrayList<String>(info.getSupertypes());
+		Collections.sort(supertypes);
+		StringBuilder api = new StringBuilder(info.getApiHash());
+		for (String supertype : supertypes) {
+			api.append(' ').append(getInheritedApiHash(supertype));
+		}
+		return ClassFileInfo.digest(api.toString());
+	}
+
+	private String getInheritedApiHash(String type) throws IOException {
+		if (type.startsWith("java/")) {
+			return type;
+		}
+		String hash = inheritedApiHashes.get(type);
+		if (hash == null) {
+			// guards against cycles of broken classpaths
+			inheritedApiHashes.put(type, type);
+			hash = type;
+			for (String location : classpath) {
+				String apiHash = getClasspathApiHash(location, type);
+				if (apiHash != null) {
+					hash = apiHash;
+					break;
+				}
+			}
+			inheritedApiHashes.put(type, hash);
+		}
+		return hash;
+	}
+
+	private ClassFileInfo readType(String location, String type) throws IOException {
+		File file = new File(location);
+		if (file.isDirectory()) {
+			File classFile = new File(file, type + ".class");
+			return classFile.isFile() ? readClassFile(classFile) : null;
+		}
+		ZipFile jar = getJar(location);
+		if (jar == null) {
+			return null;
+		}
+		ZipEntry entry = jar.getEntry(type + ".class");
+		return entry != null ? read(jar.getInputStream(entry)) : null;
+	}
+
+	private ZipFile getJar(String location) {
+		ZipFile jar = jars.get(location);
+		if (jar == null && !jars.containsKey(location)) {
+			try {
+				jar = new ZipFile(location);
+			} catch (IOException e) {
+				// not a jar, i.e. missing nested jar
+			}
+			jars.put(location, jar);
+		}
+		return jar;
+	}
+
+	private static ClassFileInfo readClassFile(File file) throws IOException {
+		return read(new BufferedInputStream(new FileInputStream(file)));
+	}
+
+	private static ClassFileInfo read(InputStream is) throws IOException {
+		try {
+			return ClassFileInfo.read(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	private static String getRelativePath(List<String> sourceRoots, String path) {
+		for (String root : sourceRoots) {
+			String prefix = new File(root).getAbsolutePath() + File.separator;
+			if (path.startsWith(prefix)) {
+				return path.substring(prefix.length()).replace(File.separatorChar, '/');
+			}
+		}
+		return null;
+	}
+
+	private static boolean equals(String a, String b) {
+		return a != null ? a.equals(b) : b == null;
+	}
+}
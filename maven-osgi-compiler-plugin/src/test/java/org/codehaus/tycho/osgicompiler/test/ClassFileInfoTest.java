@@ -0,0 +1,47 @@
+package org.codehaus.tycho.osgicompiler.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.codehaus.tycho.osgicompiler.incremental.ClassFileInfo;
+
+public class ClassFileInfoTest extends TestCase {
+
+	public static final String CONSTANT = "constant";
+
+	public void testRead() throws Exception {
+		ClassFileInfo info = read(ClassFileInfoTest.class);
+
+		assertEquals("org/codehaus/tycho/osgicompiler/test/ClassFileInfoTest", info.getName());
+		assertEquals("org/codehaus/tycho/osgicompiler/test/ClassFileInfoTest.java", info.getSourcePath());
+		assertTrue(info.getReferencedTypes().contains("junit/framework/TestCase"));
+		assertEquals(Collections.singleton("junit/framework/TestCase"), info.getSupertypes());
+		assertTrue(info.getReferencedTypes().contains("org/codehaus/tycho/osgicompiler/incremental/ClassFileInfo"));
+		assertTrue(info.getReferencedTypes().contains("java/io/InputStream"));
+		assertFalse(info.getReferencedTypes().contains(info.getName()));
+		assertTrue(info.hasConstants());
+	}
+
+	public void testApiHash() throws Exception {
+		ClassFileInfo info = read(ClassFileInfo.class);
+
+		assertEquals(info.getApiHash(), read(ClassFileInfo.class).getApiHash());
+		assertFalse(info.getApiHash().equals(read(ClassFileInfoTest.class).getApiHash()));
+		assertFalse(read(Nested.class).hasConstants());
+	}
+
+	static class Nested {
+	}
+
+	private static ClassFileInfo read(Class<?> type) throws IOException {
+		InputStream is = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class");
+		try {
+			return ClassFileInfo.read(is);
+		} finally {
+			is.close();
+		}
+	}
+}
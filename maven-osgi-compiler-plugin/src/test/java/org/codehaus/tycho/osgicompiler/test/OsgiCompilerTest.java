@@ -143,6 +143,21 @@ public class OsgiCompilerTest extends AbstractTychoMojoTestCase {
 		assertTrue(new File(project.getBasedir(), "target/library.jar-classes/src2/Src2.class").canRead());
 	}
 	
+	public void test_multipleOutputJarsWithDependencies() throws Exception {
+		File basedir = getBasedir("projects/multijar-dependencies");
+		List<MavenProject> projects = getSortedProjects(basedir, null);
+
+		MavenProject project = projects.get(0);
+		AbstractOsgiCompilerMojo mojo = getMojo(projects, project);
+		setVariableValueToObject(mojo, "outputJarThreads", Integer.valueOf(4));
+		mojo.execute();
+
+		assertTrue(new File(project.getBasedir(), "target/classes/dot/Dot.class").canRead());
+		assertTrue(new File(project.getBasedir(), "target/a.jar-classes/a/A.class").canRead());
+		assertTrue(new File(project.getBasedir(), "target/b.jar-classes/b/B.class").canRead());
+		assertTrue(new File(project.getBasedir(), "target/c.jar-classes/c/C.class").canRead());
+	}
+
 	public void testCopyResources() throws Exception { 
 		File basedir = getBasedir("projects/resources/p001");
 		List<MavenProject> projects = getSortedProjects(basedir, null);
@@ -152,6 +167,80 @@ public class OsgiCompilerTest extends AbstractTychoMojoTestCase {
 		assertTrue(new File(project.getBasedir(), "target/classes/testresources/test.properties").canRead());
 	}
 
+	public void testIncrementalCompilation() throws Exception {
+		File basedir = getBasedir("projects/incremental/p001");
+		List<MavenProject> projects = getSortedProjects(basedir, null);
+		MavenProject project = projects.get(0);
+
+		AbstractOsgiCompilerMojo mojo = getMojo(projects, project);
+		setVariableValueToObject(mojo, "incremental", Boolean.TRUE);
+		mojo.execute();
+		assertTrue(new File(project.getBasedir(), "target/incremental/classes.state").canRead());
+
+		File a = new File(project.getBasedir(), "target/classes/incremental/A.class");
+		File b = new File(project.getBasedir(), "target/classes/incremental/B.class");
+		File c = new File(project.getBasedir(), "target/classes/incremental/C.class");
+		a.setLastModified(1000L);
+		b.setLastModified(1000L);
+		c.setLastModified(1000L);
+
+		// nothing changed
+		mojo = getMojo(projects, project);
+		setVariableValueToObject(mojo, "incremental", Boolean.TRUE);
+		mojo.execute();
+		assertEquals(1000L, a.lastModified());
+		assertEquals(1000L, b.lastModified());
+		assertEquals(1000L, c.lastModified());
+
+		// API change of B, A depends on B
+		File source = new File(project.getBasedir(), "src/incremental/B.java");
+		FileUtils.fileWrite(source.getAbsolutePath(), "package incremental;\n\npublic class B {\n\tpublic void b() {\n\t}\n\n\tpublic void b2() {\n\t}\n}\n");
+		mojo = getMojo(projects, project);
+		setVariableValueToObject(mojo, "incremental", Boolean.TRUE);
+		mojo.execute();
+		assertTrue(a.lastModified() > 1000L);
+		assertTrue(b.lastModified() > 1000L);
+		assertEquals(1000L, c.lastModified());
+	}
+
+	public void testIncrementalInheritedApi() throws Exception {
+		File basedir = getBasedir("projects/incremental/p002");
+		List<MavenProject> projects = getSortedProjects(basedir, null);
+		MavenProject project = projects.get(0);
+
+		AbstractOsgiCompilerMojo mojo = getMojo(projects, project);
+		setVariableValueToObject(mojo, "incremental", Boolean.TRUE);
+		mojo.execute();
+
+		File[] classes = new File[5];
+		String[] names = { "S", "A", "B", "E", "C" };
+		for (int i = 0; i < names.length; i++) {
+			classes[i] = new File(project.getBasedir(), "target/classes/incremental/" + names[i] + ".class");
+			classes[i].setLastModified(1000L);
+		}
+
+		// B only calls the method A inherits from S
+		File source = new File(project.getBasedir(), "src/incremental/S.java");
+		FileUtils.fileWrite(source.getAbsolutePath(), "package incremental;\n\nimport java.util.List;\n\npublic class S {\n\tpublic int foo() {\n\t\treturn 0;\n\t}\n\n\tpublic List<String> list() {\n\t\treturn null;\n\t}\n}\n");
+		mojo = getMojo(projects, project);
+		setVariableValueToObject(mojo, "incremental", Boolean.TRUE);
+		mojo.execute();
+		assertTrue(classes[2].lastModified() > 1000L);
+		assertEquals(1000L, classes[4].lastModified());
+
+		for (File file : classes) {
+			file.setLastModified(1000L);
+		}
+
+		// only the generic signature changes
+		FileUtils.fileWrite(source.getAbsolutePath(), "package incremental;\n\nimport java.util.List;\n\npublic class S {\n\tpublic int foo() {\n\t\treturn 0;\n\t}\n\n\tpublic List<Integer> list() {\n\t\treturn null;\n\t}\n}\n");
+		mojo = getMojo(projects, project);
+		setVariableValueToObject(mojo, "incremental", Boolean.TRUE);
+		mojo.execute();
+		assertTrue(classes[3].lastModified() > 1000L);
+		assertEquals(1000L, classes[4].lastModified());
+	}
+
 	public void testExecutionEnvironment() throws Exception {
 		File basedir = getBasedir("projects/executionEnvironment");
 		List<MavenProject> projects = getSortedProjects(basedir, null);
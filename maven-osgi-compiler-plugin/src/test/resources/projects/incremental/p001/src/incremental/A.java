@@ -0,0 +1,7 @@
+package incremental;
+
+public class A {
+	public void a(B b) {
+		b.b();
+	}
+}
@@ -0,0 +1,6 @@
+package incremental;
+
+public class B {
+	public void b() {
+	}
+}
@@ -0,0 +1,7 @@
+package incremental;
+
+public class B {
+	public void b(A a) {
+		a.foo();
+	}
+}
@@ -0,0 +1,4 @@
+package incremental;
+
+public class C {
+}
@@ -0,0 +1,7 @@
+package incremental;
+
+public class E {
+	public Object e(S s) {
+		return s.list();
+	}
+}
@@ -0,0 +1,12 @@
+package incremental;
+
+import java.util.List;
+
+public class S {
+	public void foo() {
+	}
+
+	public List<String> list() {
+		return null;
+	}
+}
@@ -0,0 +1,5 @@
+package dot;
+
+public class Dot {
+
+}
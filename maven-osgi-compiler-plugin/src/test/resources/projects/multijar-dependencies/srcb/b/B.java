@@ -0,0 +1,10 @@
+package b;
+
+import a.A;
+import dot.Dot;
+
+public class B extends A {
+
+	Dot dot;
+
+}
@@ -0,0 +1,7 @@
+package c;
+
+import a.A;
+
+public class C extends A {
+
+}
@@ -0,0 +1,70 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import aQute.lib.osgi.Instruction;
+
+/**
+ * Export-Package instructions compiled into a single pattern. The first matching instruction decides, a package is
+ * exported if that instruction is not negated. Packages matching no instruction are not exported.
+ */
+class ExportPackageMatcher {
+
+	private final Pattern pattern;
+
+	/** capturing group of each instruction in the combined pattern */
+	private final int[] groups;
+
+	private final boolean[] negated;
+
+	private final Map<String, Boolean> decisions = new HashMap<String, Boolean>();
+
+	ExportPackageMatcher(List<Instruction> instructions) {
+		groups = new int[instructions.size()];
+		negated = new boolean[instructions.size()];
+		StringBuilder sb = new StringBuilder();
+		int group = 1;
+		for (int i = 0; i < instructions.size(); i++) {
+			Instruction instruction = instructions.get(i);
+			String regex = instruction.getPattern();
+			if (i > 0) {
+				sb.append('|');
+			}
+			sb.append('(').append(regex).append(')');
+			groups[i] = group;
+			negated[i] = instruction.isNegated();
+			group += 1 + Pattern.compile(regex).matcher("").groupCount();
+		}
+		pattern = instructions.isEmpty() ? null : Pattern.compile(sb.toString());
+	}
+
+	public boolean isExported(String pkg) {
+		Boolean exported = decisions.get(pkg);
+		if (exported == null) {
+			exported = Boolean.valueOf(match(pkg));
+			decisions.put(pkg, exported);
+		}
+		return exported.booleanValue();
+	}
+
+	private boolean match(String pkg) {
+		if (pattern == null) {
+			return false;
+		}
+		Matcher matcher = pattern.matcher(pkg);
+		if (!matcher.matches()) {
+			return false;
+		}
+		// alternatives are tried in order, so the first participating group is the first matching instruction
+		for (int i = 0; i < groups.length; i++) {
+			if (matcher.group(groups[i]) != null) {
+				return !negated[i];
+			}
+		}
+		return false;
+	}
+}
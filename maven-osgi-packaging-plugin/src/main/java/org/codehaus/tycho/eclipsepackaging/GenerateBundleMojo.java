@@ -9,7 +9,6 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -19,9 +18,6 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.ArtifactRepository;
@@ -39,7 +35,6 @@ import org.codehaus.plexus.archiver.jar.JarArchiver;
 import org.codehaus.plexus.context.Context;
 import org.codehaus.plexus.context.ContextException;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Contextualizable;
-import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.tycho.utils.MavenArtifactRef;
 
@@ -118,6 +113,9 @@ public class GenerateBundleMojo extends AbstractMojo implements Contextualizable
 	 */
 	private List<ArtifactRepository> remoteRepositories;
 
+	/** location of the package index relative to the local repository */
+	private static final String PACKAGE_INDEX_PATH = ".cache/tycho-packages";
+
 	private static final Maven2OsgiConverter mavenOsgi = new DefaultMaven2OsgiConverter();
 
     public void execute() throws MojoExecutionException {
@@ -325,16 +323,18 @@ public class GenerateBundleMojo extends AbstractMojo implements Contextualizable
 		while (st.hasMoreTokens()) {
 			instructions.add(Instruction.getPattern(st.nextToken().trim()));
 		}
+		ExportPackageMatcher matcher = new ExportPackageMatcher(instructions);
+		PackageIndex index = new PackageIndex(new File(localRepository.getBasedir(), PACKAGE_INDEX_PATH));
 
 		try {
 			File classes = new File(project.getBuild().getOutputDirectory());
 			if (classes.exists()) {
-				addExportedPackages(allpackages, instructions, classes);
+				addExportedPackages(allpackages, matcher, index.getPackages(classes));
 			}
 			for (Iterator<Artifact> i = getIncludedArtifacts().iterator(); i.hasNext(); ) {
 					Artifact a = (Artifact) i.next();
 					File f = a.getFile();
-					addExportedPackages(allpackages, instructions, f);
+					addExportedPackages(allpackages, matcher, index.getPackages(f));
 			}
 		} catch (IOException e) {
 			throw new MojoExecutionException(e.getMessage(), e);
@@ -349,57 +349,12 @@ public class GenerateBundleMojo extends AbstractMojo implements Contextualizable
 		return sb.length() > 0? sb.toString(): null;
 	}
 
-	private void addExportedPackages(Set allpackages, ArrayList instructions, File file) throws ZipException, IOException {
-		if (file.isDirectory()) {
-			DirectoryScanner ds = new DirectoryScanner();
-			ds.setBasedir(file);
-			ds.setIncludes(new String[] {"**"});
-			ds.scan();
-			String[] files = ds.getIncludedFiles();
-			for (int i = 0; i < files.length; i++) {
-				String pkg = getPackage(files[i]);
-				if (pkg != null && !excluded(instructions, pkg)) {
-					allpackages.add(pkg);
-				}
+	private void addExportedPackages(Set allpackages, ExportPackageMatcher matcher, Set<String> packages) {
+		for (String pkg : packages) {
+			if (matcher.isExported(pkg)) {
+				allpackages.add(pkg);
 			}
-		} else {
-			ZipFile zip = new ZipFile(file);
-			try {
-				Enumeration entries = zip.entries();
-				while (entries.hasMoreElements()) {
-					ZipEntry entry = (ZipEntry) entries.nextElement();
-					String pkg = getPackage(entry.getName());
-					if (pkg != null && !excluded(instructions, pkg)) {
-						allpackages.add(pkg);
-					}
-				}
-			} finally {
-				zip.close();
-			}
-		}
-	}
-
-	private boolean excluded(ArrayList instructions, String pkg) {
-		for (Iterator i = instructions.iterator(); i.hasNext(); ) {
-			Instruction f = (Instruction) i.next();
-			if (f.matches(pkg)) {
-				return f.isNegated();
-			}
-		}
-		return true;
-	}
-
-	private static String getPackage(String name) {
-		name = name.replace('\\', '/');
-		int idx = name.lastIndexOf('/');
-		if (idx <= 0 || name.endsWith("/")) {
-			return null;
-		}
-		String dirname = name.substring(0, idx);
-		if (dirname.indexOf('.')>-1) {
-			return null;
 		}
-		return dirname.replace('/', '.');
 	}
 
 	String getBundleClasspath() throws MojoExecutionException {
@@ -0,0 +1,190 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Copies files into assembled directory structures, skipping files that are already present with the same size and
+ * checksum. Copies of the same source file made through one instance are shared as hard links where the runtime and
+ * filesystem allow it. Safe for use by multiple threads.
+ */
+public class IncrementalFileCopier
+{
+
+    /** java.nio.file.Files.createLink( Path, Path ), only available on java 7 and newer */
+    private static final Method CREATE_LINK;
+
+    /** java.io.File.toPath() */
+    private static final Method TO_PATH;
+
+    static
+    {
+        Method createLink = null;
+        Method toPath = null;
+        try
+        {
+            Class<?> path = Class.forName( "java.nio.file.Path" );
+            createLink = Class.forName( "java.nio.file.Files" ).getMethod( "createLink", path, path );
+            toPath = File.class.getMethod( "toPath" );
+        }
+        catch ( Exception e )
+        {
+            // no hard link support, always copy
+        }
+        CREATE_LINK = createLink;
+        TO_PATH = toPath;
+    }
+
+    private final ConcurrentMap<File, Long> checksums = new ConcurrentHashMap<File, Long>();
+
+    private final ConcurrentMap<File, File> copies = new ConcurrentHashMap<File, File>();
+
+    private volatile boolean linkFailed = CREATE_LINK == null;
+
+    /**
+     * @return true if target was written, false if it was up to date
+     */
+    public boolean copyFile( File source, File target )
+        throws IOException
+    {
+        if ( target.isFile() && target.length() == source.length()
+            && getChecksum( source ) == checksum( target ) )
+        {
+            return false;
+        }
+
+        // target may be a hard link shared with other copies, never write through it
+        target.delete();
+        target.getParentFile().mkdirs();
+
+        File copy = copies.get( source );
+        if ( copy == null || copy.length() != source.length() || !link( copy, target ) )
+        {
+            FileUtils.copyFile( source, target );
+        }
+        copies.putIfAbsent( source, target );
+
+        return true;
+    }
+
+    public void copyDirectory( File source, File target )
+        throws IOException
+    {
+        File[] files = source.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        for ( File file : files )
+        {
+            if ( file.isDirectory() )
+            {
+                copyDirectory( file, new File( target, file.getName() ) );
+            }
+            else
+            {
+                copyFile( file, new File( target, file.getName() ) );
+            }
+        }
+    }
+
+    /**
+     * @return true if all file entries of the zip file are present in the directory with the same size and checksum
+     */
+    public boolean isExtracted( File zip, File directory )
+        throws IOException
+    {
+        if ( !directory.isDirectory() )
+        {
+            return false;
+        }
+
+        ZipFile zipFile = new ZipFile( zip );
+        try
+        {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while ( entries.hasMoreElements() )
+            {
+                ZipEntry entry = entries.nextElement();
+                if ( entry.isDirectory() )
+                {
+                    continue;
+                }
+                File file = new File( directory, entry.getName() );
+                if ( !file.isFile() || file.length() != entry.getSize() || checksum( file ) != entry.getCrc() )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    private long getChecksum( File file )
+        throws IOException
+    {
+        Long checksum = checksums.get( file );
+        if ( checksum == null )
+        {
+            checksum = Long.valueOf( checksum( file ) );
+            checksums.put( file, checksum );
+        }
+        return checksum.longValue();
+    }
+
+    private boolean link( File existing, File link )
+    {
+        if ( linkFailed )
+        {
+            return false;
+        }
+        try
+        {
+            CREATE_LINK.invoke( null, TO_PATH.invoke( link ), TO_PATH.invoke( existing ) );
+            return true;
+        }
+        catch ( Exception e )
+        {
+            // filesystem does not support hard links, do not try again
+            linkFailed = true;
+            return false;
+        }
+    }
+
+    static long checksum( File file )
+        throws IOException
+    {
+        CRC32 crc = new CRC32();
+        InputStream is = new BufferedInputStream( new FileInputStream( file ) );
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ( ( n = is.read( buffer ) ) != -1 )
+            {
+                crc.update( buffer, 0, n );
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,205 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Java packages contained in jars and directories. Packages of jars are stored in the index directory, one file per
+ * jar. Jars with a Maven repository <code>.sha1</code> file are identified by that checksum, other jars by path, size
+ * and timestamp, so jar content is never read just to look up the index.
+ */
+class PackageIndex {
+
+	private static final int MAX_CACHED_JARS = 1000;
+
+	/** packages of recently indexed jars, keyed by path, size and timestamp */
+	private static final Map<String, Set<String>> cache = Collections.synchronizedMap(new LinkedHashMap<String, Set<String>>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+			return size() > MAX_CACHED_JARS;
+		}
+	});
+
+	private final File indexDir;
+
+	PackageIndex(File indexDir) {
+		this.indexDir = indexDir;
+	}
+
+	public Set<String> getPackages(File file) throws IOException {
+		if (file.isDirectory()) {
+			DirectoryScanner ds = new DirectoryScanner();
+			ds.setBasedir(file);
+			ds.setIncludes(new String[] {"**"});
+			ds.scan();
+			Set<String> packages = new TreeSet<String>();
+			for (String name : ds.getIncludedFiles()) {
+				addPackage(packages, name);
+			}
+			return packages;
+		}
+
+		String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+		Set<String> packages = cache.get(key);
+		if (packages == null) {
+			File indexFile = new File(indexDir, getIndexName(file, key) + ".packages");
+			packages = read(indexFile);
+			if (packages == null) {
+				packages = getJarPackages(file);
+				write(indexFile, packages);
+			}
+			packages = Collections.unmodifiableSet(packages);
+			cache.put(key, packages);
+		}
+		return packages;
+	}
+
+	private static Set<String> getJarPackages(File file) throws IOException {
+		Set<String> packages = new TreeSet<String>();
+		ZipFile zip = new ZipFile(file);
+		try {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				addPackage(packages, entries.nextElement().getName());
+			}
+		} finally {
+			zip.close();
+		}
+		return packages;
+	}
+
+	private static void addPackage(Set<String> packages, String name) {
+		String pkg = getPackage(name);
+		if (pkg != null) {
+			packages.add(pkg);
+		}
+	}
+
+	static String getPackage(String name) {
+		name = name.replace('\\', '/');
+		int idx = name.lastIndexOf('/');
+		if (idx <= 0 || name.endsWith("/")) {
+			return null;
+		}
+		String dirname = name.substring(0, idx);
+		if (dirname.indexOf('.')>-1) {
+			return null;
+		}
+		return dirname.replace('/', '.');
+	}
+
+	private static Set<String> read(File indexFile) {
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+			try {
+				Set<String> packages = new TreeSet<String>();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.length() > 0) {
+						packages.add(line);
+					}
+				}
+				return packages;
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			// unreadable index file, index the jar again
+			return null;
+		}
+	}
+
+	private static void write(File indexFile, Set<String> packages) {
+		indexFile.getParentFile().mkdirs();
+		File tmp = new File(indexFile.getParentFile(), indexFile.getName() + "." + System.nanoTime() + ".tmp");
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+			try {
+				for (String pkg : packages) {
+					writer.write(pkg);
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+			// another build may have indexed the same jar meanwhile, either copy is fine
+			if (!tmp.renameTo(indexFile)) {
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			// the index is only an optimization
+			tmp.delete();
+		}
+	}
+
+	private static String getIndexName(File file, String key) {
+		String sha1 = readSha1(new File(file.getPath() + ".sha1"));
+		if (sha1 != null) {
+			return "sha1-" + sha1;
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+			digest.update(key.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Checksum from a Maven repository <code>.sha1</code> file, or <code>null</code> if there is no valid one.
+	 */
+	private static String readSha1(File sha1File) {
+		if (!sha1File.isFile()) {
+			return null;
+		}
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sha1File), "US-ASCII"));
+			try {
+				String line = reader.readLine();
+				if (line == null) {
+					return null;
+				}
+				// some tools append the file name
+				String sha1 = line.trim().split("\\s+")[0].toLowerCase();
+				return sha1.matches("[0-9a-f]{40}") ? sha1 : null;
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
@@ -1,12 +1,11 @@
 package org.codehaus.tycho.eclipsepackaging;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.codehaus.plexus.archiver.zip.ZipArchiver;
-import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.tycho.TargetEnvironment;
 import org.codehaus.tycho.TargetPlatformConfiguration;
 import org.codehaus.tycho.TychoConstants;
@@ -21,6 +20,13 @@ public class PackageProductExportMojo extends AbstractTychoPackagingMojo {
      */
     private boolean createProductArchive;
 
+    /**
+     * Number of threads compressing the product archive, 0 means number of available processors.
+     * 
+     * @parameter expression="${tycho.product.archiveThreads}" default-value="0"
+     */
+    private int archiveThreads;
+
     /**
      * If true (the default), produce separate directory structure for each supported runtime environment.
      * 
@@ -79,16 +85,6 @@ public class PackageProductExportMojo extends AbstractTychoPackagingMojo {
     private File createProductArchive( File target, String classifier )
     throws MojoExecutionException
 	{
-	    ZipArchiver zipper;
-	    try
-	    {
-	        zipper = (ZipArchiver) plexus.lookup( ZipArchiver.ROLE, "zip" );
-	    }
-	    catch ( ComponentLookupException e )
-	    {
-	        throw new MojoExecutionException( "Unable to resolve ZipArchiver", e );
-	    }
-
 	    StringBuilder filename = new StringBuilder( project.getBuild().getFinalName() );
 	    if ( separateEnvironments )
 	    {
@@ -98,16 +94,21 @@ public class PackageProductExportMojo extends AbstractTychoPackagingMojo {
 	
 	    File destFile = new File( project.getBuild().getDirectory(), filename.toString() );
 	
+	    ParallelZipArchiver zipper = new ParallelZipArchiver( archiveThreads );
+	    long start = System.currentTimeMillis();
 	    try
 	    {
-	        zipper.addDirectory( target );
-	        zipper.setDestFile( destFile );
-	        zipper.createArchive();
+	        zipper.createArchive( target, destFile );
 	    }
-	    catch ( Exception e )
+	    catch ( IOException e )
 	    {
 	        throw new MojoExecutionException( "Error packing product", e );
 	    }
+
+	    long millis = Math.max( System.currentTimeMillis() - start, 1 );
+	    getLog().info( "Packed " + zipper.getEntryCount() + " entries, " + ( zipper.getSize() >> 20 ) + " MB into "
+	        + destFile.getName() + " (" + ( zipper.getCompressedSize() >> 20 ) + " MB) in " + millis + " ms, "
+	        + ( zipper.getSize() * 1000 / millis >> 20 ) + " MB/s" );
 	    
 	    return destFile;
 	}
@@ -0,0 +1,581 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Zips a directory, compressing entries on multiple threads. Entries are written in sorted order and compressed
+ * independently, so the archive does not depend on the number of threads. Files that are already compressed, like
+ * nested jars, are stored without recompression.
+ * <p>
+ * The archive has no zip64 extensions, so it is limited to 65535 entries and 4GB.
+ */
+public class ParallelZipArchiver
+{
+
+    private static final Set<String> COMPRESSED_EXTENSIONS =
+        new HashSet<String>( Arrays.asList( "jar", "zip", "gz", "tgz", "bz2", "png", "gif", "jpg", "jpeg" ) );
+
+    /** entries larger than this are compressed to a temporary file instead of memory */
+    private static final long MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int METHOD_STORED = 0;
+
+    private static final int METHOD_DEFLATED = 8;
+
+    /** general purpose flag, entry names are UTF-8 encoded */
+    private static final int FLAG_UTF8 = 0x0800;
+
+    /** java.io.File.canExecute(), only available on java 6 and newer */
+    private static final Method CAN_EXECUTE;
+
+    static
+    {
+        Method canExecute = null;
+        try
+        {
+            canExecute = File.class.getMethod( "canExecute" );
+        }
+        catch ( Exception e )
+        {
+            // all files are archived as not executable
+        }
+        CAN_EXECUTE = canExecute;
+    }
+
+    private final int threads;
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    private int entryCount;
+
+    private long size;
+
+    private long compressedSize;
+
+    /**
+     * @param threads number of compressing threads, 0 means number of available processors
+     */
+    public ParallelZipArchiver( int threads )
+    {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setLevel( int level )
+    {
+        this.level = level;
+    }
+
+    public void createArchive( File basedir, File destFile )
+        throws IOException
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        addEntries( basedir, "", entries );
+        if ( entries.size() > 0xFFFF )
+        {
+            throw new IOException( "Too many entries for zip archive " + destFile + ": " + entries.size() );
+        }
+
+        entryCount = 0;
+        size = 0;
+        compressedSize = 0;
+
+        destFile.getParentFile().mkdirs();
+        ZipWriter writer = new ZipWriter( new BufferedOutputStream( new FileOutputStream( destFile ), BUFFER_SIZE ) );
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            // compress a bounded number of entries ahead of the writer
+            LinkedList<Future<Entry>> pending = new LinkedList<Future<Entry>>();
+            int next = 0;
+            while ( next < entries.size() || !pending.isEmpty() )
+            {
+                while ( next < entries.size() && pending.size() < threads * 2 )
+                {
+                    final Entry entry = entries.get( next++ );
+                    pending.add( executor.submit( new Callable<Entry>()
+                    {
+                        public Entry call()
+                            throws IOException
+                        {
+                            entry.compress( level );
+                            return entry;
+                        }
+                    } ) );
+                }
+
+                Entry entry = get( pending.removeFirst() );
+                try
+                {
+                    writer.write( entry );
+                }
+                finally
+                {
+                    entry.dispose();
+                }
+
+                entryCount++;
+                size += entry.size;
+                compressedSize += entry.compressedSize;
+            }
+
+            writer.finish();
+        }
+        finally
+        {
+            executor.shutdownNow();
+            writer.close();
+            // entries still being compressed after a failure create their temporary files late
+            awaitTermination( executor );
+            for ( Entry entry : entries )
+            {
+                entry.dispose();
+            }
+        }
+    }
+
+    /**
+     * Number of entries of the last created archive.
+     */
+    public int getEntryCount()
+    {
+        return entryCount;
+    }
+
+    /**
+     * Total uncompressed size of the entries of the last created archive.
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Total compressed size of the entries of the last created archive.
+     */
+    public long getCompressedSize()
+    {
+        return compressedSize;
+    }
+
+    private static void awaitTermination( ExecutorService executor )
+    {
+        try
+        {
+            while ( !executor.awaitTermination( 1, TimeUnit.SECONDS ) )
+            {
+                // compressing threads stop after their current entry
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Entry get( Future<Entry> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new IOException( "Interrupted" );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException( e.getCause() );
+        }
+    }
+
+    private static void addEntries( File dir, String prefix, List<Entry> entries )
+    {
+        File[] files = dir.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        Arrays.sort( files );
+        for ( File file : files )
+        {
+            if ( file.isDirectory() )
+            {
+                String name = prefix + file.getName() + "/";
+                entries.add( new Entry( name, file ) );
+                addEntries( file, name, entries );
+            }
+            else
+            {
+                entries.add( new Entry( prefix + file.getName(), file ) );
+            }
+        }
+    }
+
+    static boolean isCompressed( String name )
+    {
+        int idx = name.lastIndexOf( '.' );
+        return idx >= 0 && COMPRESSED_EXTENSIONS.contains( name.substring( idx + 1 ).toLowerCase() );
+    }
+
+    private static final class Entry
+    {
+        final String name;
+
+        final File file;
+
+        final boolean directory;
+
+        int method;
+
+        long crc;
+
+        long size;
+
+        long compressedSize;
+
+        /** compressed data, if kept in memory */
+        byte[] data;
+
+        /** compressed data, if written to a temporary file */
+        File temp;
+
+        Entry( String name, File file )
+        {
+            this.name = name;
+            this.file = file;
+            this.directory = name.endsWith( "/" );
+        }
+
+        void compress( int level )
+            throws IOException
+        {
+            if ( directory )
+            {
+                method = METHOD_STORED;
+                return;
+            }
+
+            CRC32 crc32 = new CRC32();
+            if ( isCompressed( name ) )
+            {
+                // stored entries are streamed from the file by the writer
+                method = METHOD_STORED;
+                size = copy( file, crc32, null );
+                compressedSize = size;
+            }
+            else
+            {
+                method = METHOD_DEFLATED;
+                OutputStream os;
+                ByteArrayOutputStream buffer = null;
+                if ( file.length() > MEMORY_THRESHOLD )
+                {
+                    temp = File.createTempFile( "zip", ".tmp" );
+                    os = new BufferedOutputStream( new FileOutputStream( temp ), BUFFER_SIZE );
+                }
+                else
+                {
+                    buffer = new ByteArrayOutputStream( (int) file.length() / 2 + 64 );
+                    os = buffer;
+                }
+
+                Deflater deflater = new Deflater( level, true );
+                boolean success = false;
+                try
+                {
+                    CountingOutputStream counter = new CountingOutputStream( os );
+                    DeflaterOutputStream dos = new DeflaterOutputStream( counter, deflater, BUFFER_SIZE );
+                    size = copy( file, crc32, dos );
+                    dos.finish();
+                    compressedSize = counter.count;
+                    success = true;
+                }
+                finally
+                {
+                    deflater.end();
+                    os.close();
+                    if ( !success )
+                    {
+                        dispose();
+                    }
+                }
+
+                if ( buffer != null )
+                {
+                    data = buffer.toByteArray();
+                }
+            }
+            crc = crc32.getValue();
+        }
+
+        void writeData( OutputStream os )
+            throws IOException
+        {
+            if ( directory )
+            {
+                return;
+            }
+            if ( data != null )
+            {
+                os.write( data );
+                return;
+            }
+            InputStream is = new FileInputStream( temp != null ? temp : file );
+            try
+            {
+                IOUtil.copy( is, os, BUFFER_SIZE );
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+
+        boolean isExecutable()
+        {
+            try
+            {
+                return CAN_EXECUTE != null && ( (Boolean) CAN_EXECUTE.invoke( file ) ).booleanValue();
+            }
+            catch ( Exception e )
+            {
+                return false;
+            }
+        }
+
+        void dispose()
+        {
+            data = null;
+            if ( temp != null )
+            {
+                temp.delete();
+                temp = null;
+            }
+        }
+
+        private static long copy( File file, CRC32 crc32, OutputStream os )
+            throws IOException
+        {
+            long length = 0;
+            InputStream is = new BufferedInputStream( new FileInputStream( file ), BUFFER_SIZE );
+            try
+            {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ( ( n = is.read( buffer ) ) != -1 )
+                {
+                    crc32.update( buffer, 0, n );
+                    if ( os != null )
+                    {
+                        os.write( buffer, 0, n );
+                    }
+                    length += n;
+                }
+            }
+            finally
+            {
+                is.close();
+            }
+            return length;
+        }
+    }
+
+    private static final class CountingOutputStream
+        extends FilterOutputStream
+    {
+        long count;
+
+        CountingOutputStream( OutputStream os )
+        {
+            super( os );
+        }
+
+        @Override
+        public void write( int b )
+            throws IOException
+        {
+            out.write( b );
+            count++;
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len )
+            throws IOException
+        {
+            out.write( b, off, len );
+            count += len;
+        }
+    }
+
+    /**
+     * Writes local headers and entry data as entries become available, and the central directory at the end.
+     */
+    private static final class ZipWriter
+    {
+        private final OutputStream os;
+
+        private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+        private final Calendar calendar = Calendar.getInstance();
+
+        private long offset;
+
+        private int entries;
+
+        ZipWriter( OutputStream os )
+        {
+            this.os = os;
+        }
+
+        void write( Entry entry )
+            throws IOException
+        {
+            byte[] name = entry.name.getBytes( "UTF-8" );
+            long time = toDosTime( entry.file.lastModified() );
+            int version = entry.method == METHOD_DEFLATED ? 20 : 10;
+            int mode = entry.directory || entry.isExecutable() ? 0755 : 0644;
+            int externalAttributes = ( ( entry.directory ? 0040000 : 0100000 ) | mode ) << 16;
+            if ( entry.directory )
+            {
+                externalAttributes |= 0x10; // MS-DOS directory attribute
+            }
+
+            if ( offset > 0xFFFFFFFFL || entry.compressedSize > 0xFFFFFFFFL || entry.size > 0xFFFFFFFFL )
+            {
+                throw new IOException( "Zip archive too large, entry " + entry.name );
+            }
+
+            // central directory record
+            writeInt( centralDirectory, 0x02014b50 );
+            writeShort( centralDirectory, ( 3 << 8 ) | 20 ); // made by unix
+            writeShort( centralDirectory, version );
+            writeShort( centralDirectory, FLAG_UTF8 );
+            writeShort( centralDirectory, entry.method );
+            writeInt( centralDirectory, time );
+            writeInt( centralDirectory, entry.crc );
+            writeInt( centralDirectory, entry.compressedSize );
+            writeInt( centralDirectory, entry.size );
+            writeShort( centralDirectory, name.length );
+            writeShort( centralDirectory, 0 ); // extra
+            writeShort( centralDirectory, 0 ); // comment
+            writeShort( centralDirectory, 0 ); // disk
+            writeShort( centralDirectory, 0 ); // internal attributes
+            writeInt( centralDirectory, externalAttributes & 0xFFFFFFFFL );
+            writeInt( centralDirectory, offset );
+            centralDirectory.write( name );
+
+            // local header
+            writeInt( os, 0x04034b50 );
+            writeShort( os, version );
+            writeShort( os, FLAG_UTF8 );
+            writeShort( os, entry.method );
+            writeInt( os, time );
+            writeInt( os, entry.crc );
+            writeInt( os, entry.compressedSize );
+            writeInt( os, entry.size );
+            writeShort( os, name.length );
+            writeShort( os, 0 ); // extra
+            os.write( name );
+
+            entry.writeData( os );
+
+            offset += 30 + name.length + entry.compressedSize;
+            entries++;
+        }
+
+        void finish()
+            throws IOException
+        {
+            if ( offset > 0xFFFFFFFFL )
+            {
+                throw new IOException( "Zip archive too large" );
+            }
+
+            centralDirectory.writeTo( os );
+
+            writeInt( os, 0x06054b50 );
+            writeShort( os, 0 ); // disk
+            writeShort( os, 0 ); // disk with central directory
+            writeShort( os, entries );
+            writeShort( os, entries );
+            writeInt( os, centralDirectory.size() );
+            writeInt( os, offset );
+            writeShort( os, 0 ); // comment
+            os.flush();
+        }
+
+        void close()
+            throws IOException
+        {
+            os.close();
+        }
+
+        private long toDosTime( long time )
+        {
+            calendar.setTimeInMillis( time );
+            int year = calendar.get( Calendar.YEAR );
+            if ( year < 1980 )
+            {
+                return ( 1 << 21 ) | ( 1 << 16 );
+            }
+            return ( ( year - 1980 ) << 25 ) | ( ( calendar.get( Calendar.MONTH ) + 1 ) << 21 )
+                | ( calendar.get( Calendar.DAY_OF_MONTH ) << 16 ) | ( calendar.get( Calendar.HOUR_OF_DAY ) << 11 )
+                | ( calendar.get( Calendar.MINUTE ) << 5 ) | ( calendar.get( Calendar.SECOND ) >> 1 );
+        }
+
+        private static void writeShort( OutputStream os, int value )
+            throws IOException
+        {
+            os.write( value & 0xFF );
+            os.write( ( value >>> 8 ) & 0xFF );
+        }
+
+        private static void writeInt( OutputStream os, long value )
+            throws IOException
+        {
+            os.write( (int) ( value & 0xFF ) );
+            os.write( (int) ( ( value >>> 8 ) & 0xFF ) );
+            os.write( (int) ( ( value >>> 16 ) & 0xFF ) );
+            os.write( (int) ( ( value >>> 24 ) & 0xFF ) );
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -23,6 +24,11 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -128,6 +134,14 @@ public class ProductExportMojo
      */
     private boolean forcePackedDependencies;
 
+    /**
+     * Maximum number of target environments assembled in parallel if separateEnvironments is true, 0 means number of
+     * available processors.
+     * 
+     * @parameter expression="${tycho.product.threads}" default-value="0"
+     */
+    private int threads;
+
     /**
      * @component
      */
@@ -162,28 +176,12 @@ public class ProductExportMojo
  
         if ( separateEnvironments )
         {
-        	List<TargetEnvironment> environments = getEnvironments();
-            for ( TargetEnvironment environment : getEnvironments() )
+            List<TargetEnvironment> environments = getEnvironments();
+            List<File> targets = assembleEnvironments( environments );
+            for ( int i = 0; i < environments.size(); i++ )
             {
-                File target = getTarget( environment );
-                File targetEclipse = new File( target, "eclipse" );
-                targetEclipse.mkdirs();
-
-                generateDotEclipseProduct( targetEclipse );
-                includeRootFiles( environment, targetEclipse );
-
-                ProductAssembler assembler = new ProductAssembler( session, manifestReader, targetEclipse, environment );
-                assembler.setIncludeSources( includeSources );
-                getDependencyWalker( environment ).walk( assembler );
-
-                generateConfigIni( environment, targetEclipse );
-                generateLauncherIni( environment, targetEclipse );
+                File targetEclipse = targets.get( i );
 
-                if ( productConfiguration.includeLaunchers() )
-                {
-                    copyExecutable( environment, targetEclipse );
-                }
-                
                 //in the "expanded" product file specify the config.ini file
                 //otherwise p2's ProductPublisher does not read the config.ini
                 //file and does not generate the bundles.info.
@@ -192,15 +190,14 @@ public class ProductExportMojo
                 {
                 	productConfiguration.setConfigIni(
                 		targetEclipse.getCanonicalPath() + "/configuration/config.ini",
-                		environment.getWs());
+                		environments.get( i ).getWs());
                 }
                 catch (IOException ioe)
                 {
                 	productConfiguration.setConfigIni(
                     		targetEclipse.getAbsolutePath() + "/configuration/config.ini",
-                    		environment.getWs());
+                    		environments.get( i ).getWs());
                 }
-
             }
         }
         else
@@ -265,6 +262,108 @@ public class ProductExportMojo
         
     }
 
+    /**
+     * Assembles the environments concurrently, plugin files identical across environments are shared.
+     * 
+     * @return the eclipse directory of each environment
+     */
+    private List<File> assembleEnvironments( List<TargetEnvironment> environments )
+        throws MojoExecutionException, MojoFailureException
+    {
+        final IncrementalFileCopier copier = new IncrementalFileCopier();
+
+        int threads = this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors();
+        threads = Math.max( 1, Math.min( threads, environments.size() ) );
+
+        List<Future<File>> tasks = new ArrayList<Future<File>>();
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            for ( final TargetEnvironment environment : environments )
+            {
+                tasks.add( executor.submit( new Callable<File>()
+                {
+                    public File call()
+                        throws Exception
+                    {
+                        return assembleEnvironment( environment, copier );
+                    }
+                } ) );
+            }
+
+            List<File> targets = new ArrayList<File>();
+            Throwable failure = null;
+            for ( int i = 0; i < tasks.size(); i++ )
+            {
+                try
+                {
+                    targets.add( tasks.get( i ).get() );
+                }
+                catch ( ExecutionException e )
+                {
+                    if ( failure == null )
+                    {
+                        failure = e.getCause();
+                    }
+                    else
+                    {
+                        getLog().error( "Could not assemble " + toString( environments.get( i ) ) + ": "
+                                            + e.getCause().getMessage() );
+                    }
+                }
+            }
+
+            if ( failure instanceof MojoExecutionException )
+            {
+                throw (MojoExecutionException) failure;
+            }
+            else if ( failure instanceof MojoFailureException )
+            {
+                throw (MojoFailureException) failure;
+            }
+            else if ( failure != null )
+            {
+                throw new MojoExecutionException( "Could not assemble product", failure );
+            }
+
+            return targets;
+        }
+        catch ( InterruptedException e )
+        {
+            throw new MojoExecutionException( "Interrupted", e );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private File assembleEnvironment( TargetEnvironment environment, IncrementalFileCopier copier )
+        throws MojoExecutionException, MojoFailureException
+    {
+        File target = getTarget( environment );
+        File targetEclipse = new File( target, "eclipse" );
+        targetEclipse.mkdirs();
+
+        generateDotEclipseProduct( targetEclipse );
+        includeRootFiles( environment, targetEclipse );
+
+        ProductAssembler assembler = new ProductAssembler( session, manifestReader, targetEclipse, environment );
+        assembler.setIncludeSources( includeSources );
+        assembler.setFileCopier( copier );
+        getDependencyWalker( environment ).walk( assembler );
+
+        generateConfigIni( environment, targetEclipse );
+        generateLauncherIni( environment, targetEclipse );
+
+        if ( productConfiguration.includeLaunchers() )
+        {
+            copyExecutable( environment, targetEclipse );
+        }
+
+        return targetEclipse;
+    }
+
     private ArtifactDependencyWalker getDependencyWalker( TargetEnvironment environment )
     {
         return getTychoProjectFacet( TychoProject.ECLIPSE_APPLICATION ).getDependencyWalker( project, environment );
@@ -938,7 +1037,11 @@ public class ProductExportMojo
                             pos++;
                         }
 
-                        IconExe.main( args );
+                        // IconExe keeps state in static fields
+                        synchronized ( IconExe.class )
+                        {
+                            IconExe.main( args );
+                        }
                     }
                     catch ( Exception e )
                     {
@@ -18,7 +18,6 @@ import org.codehaus.plexus.archiver.gzip.GZipCompressor;
 import org.codehaus.plexus.archiver.zip.ZipArchiver;
 import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
-import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.tycho.ArtifactDependencyVisitor;
 import org.codehaus.tycho.FeatureDescription;
@@ -63,6 +62,8 @@ public class UpdateSiteAssembler
      * feature jars.
      */
     private boolean unpackFeatures;
+
+    private IncrementalFileCopier copier = new IncrementalFileCopier();
     
     protected final BundleReader manifestReader;
 
@@ -272,6 +273,18 @@ public class UpdateSiteAssembler
 
     private void unpackJar( File location, File outputJar )
     {
+        try
+        {
+            if ( copier.isExtracted( location, outputJar ) )
+            {
+                return;
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Could not read jar", e );
+        }
+
         ZipUnArchiver unzip;
         try
         {
@@ -306,7 +319,7 @@ public class UpdateSiteAssembler
     {
         try
         {
-            FileUtils.copyDirectoryStructure( location, outputJar );
+            copier.copyDirectory( location, outputJar );
         }
         catch ( IOException e )
         {
@@ -347,7 +360,7 @@ public class UpdateSiteAssembler
     {
         try
         {
-            FileUtils.copyFile( source, destination );
+            copier.copyFile( source, destination );
         }
         catch ( IOException e )
         {
@@ -435,4 +448,12 @@ public class UpdateSiteAssembler
     {
         this.unpackFeatures = unpack;
     }
+
+    /**
+     * Sets the copier used for plugin and feature files, to share copies between assemblers.
+     */
+    public void setFileCopier( IncrementalFileCopier copier )
+    {
+        this.copier = copier;
+    }
 }
@@ -0,0 +1,82 @@
+package org.codehaus.tycho.buildnumber.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.eclipsepackaging.IncrementalFileCopier;
+
+public class IncrementalFileCopierTest
+    extends TestCase
+{
+
+    private File basedir;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/copier" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        basedir.mkdirs();
+    }
+
+    public void testCopyFile()
+        throws Exception
+    {
+        IncrementalFileCopier copier = new IncrementalFileCopier();
+
+        File source = new File( basedir, "source.jar" );
+        FileUtils.fileWrite( source.getAbsolutePath(), "content" );
+
+        File target1 = new File( basedir, "env1/plugins/source.jar" );
+        File target2 = new File( basedir, "env2/plugins/source.jar" );
+
+        assertTrue( copier.copyFile( source, target1 ) );
+        assertTrue( copier.copyFile( source, target2 ) );
+        assertEquals( "content", FileUtils.fileRead( target2 ) );
+
+        // up to date
+        assertFalse( new IncrementalFileCopier().copyFile( source, target1 ) );
+
+        // same size, different content
+        FileUtils.fileWrite( source.getAbsolutePath(), "changed" );
+        assertTrue( new IncrementalFileCopier().copyFile( source, target1 ) );
+        assertEquals( "changed", FileUtils.fileRead( target1 ) );
+        assertEquals( "content", FileUtils.fileRead( target2 ) );
+    }
+
+    public void testIsExtracted()
+        throws Exception
+    {
+        IncrementalFileCopier copier = new IncrementalFileCopier();
+
+        File zip = new File( basedir, "bundle.jar" );
+        ZipOutputStream os = new ZipOutputStream( new FileOutputStream( zip ) );
+        try
+        {
+            os.putNextEntry( new ZipEntry( "dir/" ) );
+            os.putNextEntry( new ZipEntry( "dir/file.txt" ) );
+            os.write( "content".getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            os.close();
+        }
+
+        File directory = new File( basedir, "bundle" );
+        assertFalse( copier.isExtracted( zip, directory ) );
+
+        File file = new File( directory, "dir/file.txt" );
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite( file.getAbsolutePath(), "changed" );
+        assertFalse( copier.isExtracted( zip, directory ) );
+
+        FileUtils.fileWrite( file.getAbsolutePath(), "content" );
+        assertTrue( copier.isExtracted( zip, directory ) );
+    }
+}
@@ -0,0 +1,97 @@
+package org.codehaus.tycho.buildnumber.test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.tycho.eclipsepackaging.ParallelZipArchiver;
+
+public class ParallelZipArchiverTest
+    extends TestCase
+{
+
+    private File basedir;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/ziparchiver" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+
+        File product = new File( basedir, "product/eclipse" );
+        new File( product, "plugins/bundle_1.0.0" ).mkdirs();
+        new File( product, "configuration" ).mkdirs();
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            sb.append( "osgi.bundles=bundle_1.0.0\n" );
+        }
+        FileUtils.fileWrite( new File( product, "configuration/config.ini" ).getAbsolutePath(), sb.toString() );
+        FileUtils.fileWrite( new File( product, "plugins/bundle_1.0.0/plugin.xml" ).getAbsolutePath(), "<plugin/>" );
+        FileUtils.fileWrite( new File( product, "plugins/other_1.0.0.jar" ).getAbsolutePath(), "not really a jar" );
+    }
+
+    public void testCreateArchive()
+        throws Exception
+    {
+        File archive = new File( basedir, "product.zip" );
+        ParallelZipArchiver archiver = new ParallelZipArchiver( 4 );
+        archiver.createArchive( new File( basedir, "product" ), archive );
+
+        assertEquals( 7, archiver.getEntryCount() );
+
+        ZipFile zip = new ZipFile( archive );
+        try
+        {
+            ZipEntry config = zip.getEntry( "eclipse/configuration/config.ini" );
+            assertEquals( ZipEntry.DEFLATED, config.getMethod() );
+            assertTrue( config.getCompressedSize() < config.getSize() );
+            assertEquals( FileUtils.fileRead( new File( basedir, "product/eclipse/configuration/config.ini" ) ),
+                          read( zip, config ) );
+
+            ZipEntry jar = zip.getEntry( "eclipse/plugins/other_1.0.0.jar" );
+            assertEquals( ZipEntry.STORED, jar.getMethod() );
+            assertEquals( "not really a jar", read( zip, jar ) );
+
+            assertTrue( zip.getEntry( "eclipse/plugins/bundle_1.0.0/" ).isDirectory() );
+            assertEquals( "<plugin/>", read( zip, zip.getEntry( "eclipse/plugins/bundle_1.0.0/plugin.xml" ) ) );
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    public void testDeterministic()
+        throws Exception
+    {
+        File archive1 = new File( basedir, "product1.zip" );
+        File archive2 = new File( basedir, "product2.zip" );
+        new ParallelZipArchiver( 1 ).createArchive( new File( basedir, "product" ), archive1 );
+        new ParallelZipArchiver( 8 ).createArchive( new File( basedir, "product" ), archive2 );
+
+        assertTrue( Arrays.equals( FileUtils.fileRead( archive1, "ISO-8859-1" ).getBytes( "ISO-8859-1" ),
+                                   FileUtils.fileRead( archive2, "ISO-8859-1" ).getBytes( "ISO-8859-1" ) ) );
+    }
+
+    private static String read( ZipFile zip, ZipEntry entry )
+        throws Exception
+    {
+        InputStream is = zip.getInputStream( entry );
+        try
+        {
+            return IOUtil.toString( is, "UTF-8" );
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import aQute.lib.osgi.Instruction;
+
+public class ExportPackageMatcherTest
+    extends TestCase
+{
+    private static final String[] PACKAGES = { "com", "com.foo", "com.foo.bar", "com.foo.internal",
+        "com.foo.internal.impl", "com.foobar", "org.bar", "org.bar.baz", "net.other" };
+
+    public void testNegationBeforeWildcard()
+    {
+        assertSameAsInstructions( "!com.foo.internal.*", "com.foo.*" );
+        ExportPackageMatcher matcher = newMatcher( "!com.foo.internal.*", "com.foo.*" );
+        assertTrue( matcher.isExported( "com.foo" ) );
+        assertTrue( matcher.isExported( "com.foo.bar" ) );
+        assertFalse( matcher.isExported( "com.foo.internal" ) );
+        assertFalse( matcher.isExported( "com.foo.internal.impl" ) );
+    }
+
+    public void testWildcardBeforeNegation()
+    {
+        // first matching instruction wins, the negation is never reached
+        assertSameAsInstructions( "com.foo.*", "!com.foo.internal.*" );
+        assertTrue( newMatcher( "com.foo.*", "!com.foo.internal.*" ).isExported( "com.foo.internal" ) );
+    }
+
+    public void testOverlappingPatterns()
+    {
+        assertSameAsInstructions( "com.*", "!com.foo.*", "org.bar" );
+        assertSameAsInstructions( "!org.bar", "org.*", "com.foo*" );
+        assertSameAsInstructions( "com.foo", "!com.foo.*", "*" );
+        assertSameAsInstructions( "*" );
+
+        ExportPackageMatcher matcher = newMatcher( "!org.bar", "org.*", "com.foo*" );
+        assertFalse( matcher.isExported( "org.bar" ) );
+        assertTrue( matcher.isExported( "org.bar.baz" ) );
+        assertTrue( matcher.isExported( "com.foobar" ) );
+    }
+
+    public void testNoMatch()
+    {
+        assertSameAsInstructions( "org.bar", "!com.foo" );
+        assertSameAsInstructions();
+
+        assertFalse( newMatcher( "org.bar" ).isExported( "net.other" ) );
+        assertFalse( newMatcher().isExported( "org.bar" ) );
+        // only negated instructions
+        assertFalse( newMatcher( "!com.*" ).isExported( "org.bar" ) );
+    }
+
+    private static ExportPackageMatcher newMatcher( String... instructions )
+    {
+        return new ExportPackageMatcher( getInstructions( instructions ) );
+    }
+
+    private static List<Instruction> getInstructions( String... instructions )
+    {
+        List<Instruction> result = new ArrayList<Instruction>();
+        for ( String instruction : instructions )
+        {
+            result.add( Instruction.getPattern( instruction ) );
+        }
+        return result;
+    }
+
+    /**
+     * Matcher decisions must be the same as matching each instruction in turn.
+     */
+    private static void assertSameAsInstructions( String... instructions )
+    {
+        List<Instruction> list = getInstructions( instructions );
+        ExportPackageMatcher matcher = new ExportPackageMatcher( list );
+        for ( String pkg : PACKAGES )
+        {
+            assertEquals( Arrays.asList( instructions ) + " " + pkg, isExported( list, pkg ), matcher.isExported( pkg ) );
+            // cached decision
+            assertEquals( isExported( list, pkg ), matcher.isExported( pkg ) );
+        }
+    }
+
+    private static boolean isExported( List<Instruction> instructions, String pkg )
+    {
+        for ( Instruction instruction : instructions )
+        {
+            if ( instruction.matches( pkg ) )
+            {
+                return !instruction.isNegated();
+            }
+        }
+        return false;
+    }
+}
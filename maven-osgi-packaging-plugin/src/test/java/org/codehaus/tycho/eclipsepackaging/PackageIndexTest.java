@@ -0,0 +1,138 @@
+package org.codehaus.tycho.eclipsepackaging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class PackageIndexTest
+    extends TestCase
+{
+    private static final String[] ENTRIES = { "Toplevel.class", "a/A.class", "a/b/B.class", "a/b/c/d/D.class",
+        "a/b/c/d/resource.txt", "a/b.c/Invalid.class", "META-INF/MANIFEST.MF", "empty/" };
+
+    private static final Set<String> PACKAGES =
+        new HashSet<String>( Arrays.asList( "a", "a.b", "a.b.c.d", "META-INF" ) );
+
+    private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    private File basedir;
+
+    private File indexDir;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/packageindex" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        indexDir = new File( basedir, "index" );
+    }
+
+    public void testDirectory()
+        throws Exception
+    {
+        File dir = new File( basedir, "classes" );
+        for ( String entry : ENTRIES )
+        {
+            File file = new File( dir, entry );
+            if ( entry.endsWith( "/" ) )
+            {
+                file.mkdirs();
+            }
+            else
+            {
+                file.getParentFile().mkdirs();
+                file.createNewFile();
+            }
+        }
+
+        assertEquals( PACKAGES, new PackageIndex( indexDir ).getPackages( dir ) );
+
+        // directories are not indexed, they change between builds
+        new File( dir, "a/b/c/C.class" ).createNewFile();
+        Set<String> packages = new PackageIndex( indexDir ).getPackages( dir );
+        assertTrue( packages.contains( "a.b.c" ) );
+        assertFalse( indexDir.exists() );
+    }
+
+    public void testJar()
+        throws Exception
+    {
+        File jar = new File( basedir, "test.jar" );
+        writeJar( jar );
+
+        assertEquals( PACKAGES, new PackageIndex( indexDir ).getPackages( jar ) );
+        assertEquals( 1, indexDir.listFiles().length );
+
+        // changed jar is indexed again
+        writeJar( jar, "b/B.class" );
+        jar.setLastModified( jar.lastModified() + 2000 );
+        assertTrue( new PackageIndex( indexDir ).getPackages( jar ).contains( "b" ) );
+        assertEquals( 2, indexDir.listFiles().length );
+    }
+
+    public void testRepositoryChecksum()
+        throws Exception
+    {
+        File jar = new File( basedir, "repository/test.jar" );
+        writeJar( jar );
+        FileUtils.fileWrite( jar.getAbsolutePath() + ".sha1", SHA1 + "  test.jar\n" );
+
+        assertEquals( PACKAGES, new PackageIndex( indexDir ).getPackages( jar ) );
+
+        File indexFile = new File( indexDir, "sha1-" + SHA1 + ".packages" );
+        assertTrue( indexFile.isFile() );
+
+        // same jar in another repository is looked up in the index
+        FileUtils.fileAppend( indexFile.getAbsolutePath(), "from.index\n" );
+        File copy = new File( basedir, "other/test.jar" );
+        FileUtils.copyFile( jar, copy );
+        FileUtils.copyFile( new File( jar.getAbsolutePath() + ".sha1" ), new File( copy.getAbsolutePath() + ".sha1" ) );
+
+        Set<String> packages = new PackageIndex( indexDir ).getPackages( copy );
+        assertTrue( packages.contains( "from.index" ) );
+        assertTrue( packages.containsAll( PACKAGES ) );
+    }
+
+    public void testGetPackage()
+    {
+        assertEquals( "a.b", PackageIndex.getPackage( "a/b/C.class" ) );
+        assertEquals( "a.b", PackageIndex.getPackage( "a\\b\\C.class" ) );
+        assertNull( PackageIndex.getPackage( "C.class" ) );
+        assertNull( PackageIndex.getPackage( "a/b/" ) );
+        assertNull( PackageIndex.getPackage( "a/b.c/D.class" ) );
+    }
+
+    private static void writeJar( File file, String... extraEntries )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        JarOutputStream os = new JarOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            for ( String entry : ENTRIES )
+            {
+                os.putNextEntry( new ZipEntry( entry ) );
+                os.closeEntry();
+            }
+            for ( String entry : extraEntries )
+            {
+                os.putNextEntry( new ZipEntry( entry ) );
+                os.closeEntry();
+            }
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+}
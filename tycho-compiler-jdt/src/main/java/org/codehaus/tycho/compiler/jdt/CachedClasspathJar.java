@@ -0,0 +1,43 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
+import org.eclipse.jdt.internal.compiler.env.AccessRuleSet;
+
+/**
+ * Classpath jar backed by a shared, already opened zip file and package index. The zip file is left open when the
+ * compilation completes, {@link #release()} hands it back to the cache.
+ */
+public class CachedClasspathJar extends ClasspathJar {
+
+	private final ClasspathJarCache.Jar jar;
+
+	private boolean released;
+
+	CachedClasspathJar(File file, ClasspathJarCache.Jar jar, AccessRuleSet accessRuleSet, String destinationPath) {
+		super(file, false, accessRuleSet, destinationPath);
+		this.jar = jar;
+		this.zipFile = jar.zipFile;
+	}
+
+	public void initialize() throws IOException {
+		this.zipFile = jar.zipFile;
+	}
+
+	public boolean isPackage(String qualifiedPackageName) {
+		return jar.isPackage(qualifiedPackageName);
+	}
+
+	public void reset() {
+		// shared zip file and package index outlive the compilation
+	}
+
+	void release() {
+		if (!released) {
+			released = true;
+			jar.release();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import org.eclipse.jdt.internal.compiler.batch.Main;
+
+/**
+ * Batch compiler that takes classpath jars from the build-scoped {@link ClasspathJarCache} instead of opening and
+ * indexing them for every compilation.
+ */
+public class CachingMain extends Main {
+
+	private final ClasspathJarCache jarCache;
+
+	private final List<CachedClasspathJar> cachedJars = new ArrayList<CachedClasspathJar>();
+
+	public CachingMain(PrintWriter outWriter, PrintWriter errWriter, ClasspathJarCache jarCache) {
+		super(outWriter, errWriter, false);
+		this.jarCache = jarCache;
+	}
+
+	public boolean compile(String[] argv) {
+		try {
+			return super.compile(argv);
+		} finally {
+			for (CachedClasspathJar jar : cachedJars) {
+				jar.release();
+			}
+			cachedJars.clear();
+		}
+	}
+
+	public FileSystem getLibraryAccess() {
+		FileSystem.Classpath[] classpaths = new FileSystem.Classpath[this.checkedClasspaths.length];
+		for (int i = 0; i < classpaths.length; i++) {
+			FileSystem.Classpath classpath = this.checkedClasspaths[i];
+			if (classpath instanceof ClasspathJar && !(classpath instanceof CachedClasspathJar)) {
+				ClasspathJar jar = (ClasspathJar) classpath;
+				CachedClasspathJar cached = jarCache.getClasspathJar(new File(jar.getPath()), jar.accessRuleSet,
+						jar.destinationPath);
+				if (cached != null) {
+					cachedJars.add(cached);
+					classpath = cached;
+				}
+			}
+			classpaths[i] = classpath;
+		}
+		return new FileSystem(classpaths, this.filenames) {
+			// FileSystem constructor is not public
+		};
+	}
+}
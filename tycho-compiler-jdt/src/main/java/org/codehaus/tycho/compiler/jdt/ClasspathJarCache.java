@@ -0,0 +1,149 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.component.annotations.Component;
+import org.eclipse.jdt.internal.compiler.env.AccessRuleSet;
+
+/**
+ * Build-scoped cache of classpath jars opened by the in-process compiler. Each jar is opened and its packages are
+ * indexed once per build and shared, read-only, by all compilations that have the jar on their classpath. Access
+ * rules are not part of the cache, they are applied per compilation. Cached jars are reopened when their timestamp or
+ * size changes, replaced and cleared jars are closed once no compilation uses them.
+ */
+@Component( role = ClasspathJarCache.class )
+public class ClasspathJarCache {
+
+	private final Map<File, Jar> jars = new HashMap<File, Jar>();
+
+	private int hits;
+
+	private int misses;
+
+	static class Jar {
+		final ZipFile zipFile;
+
+		final long lastModified;
+
+		final long length;
+
+		private Set<String> packages;
+
+		private int users;
+
+		private boolean evicted;
+
+		Jar(File file) throws IOException {
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+			this.zipFile = new ZipFile(file);
+		}
+
+		boolean isCurrent(File file) {
+			return lastModified == file.lastModified() && length == file.length();
+		}
+
+		synchronized void acquire() {
+			users++;
+		}
+
+		synchronized void release() {
+			users--;
+			closeIfUnused();
+		}
+
+		synchronized void evict() {
+			evicted = true;
+			closeIfUnused();
+		}
+
+		private void closeIfUnused() {
+			if (evicted && users <= 0) {
+				try {
+					zipFile.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		synchronized boolean isPackage(String qualifiedPackageName) {
+			if (packages == null) {
+				packages = indexPackages(zipFile);
+			}
+			return packages.contains(qualifiedPackageName);
+		}
+
+		private static Set<String> indexPackages(ZipFile zipFile) {
+			Set<String> packages = new HashSet<String>();
+			// the default package
+			packages.add("");
+			for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+				String fileName = e.nextElement().getName();
+				// add the package name & all of its parent packages
+				int last = fileName.lastIndexOf('/');
+				while (last > 0) {
+					// extract the package name
+					String packageName = fileName.substring(0, last);
+					if (!packages.add(packageName)) {
+						break;
+					}
+					last = packageName.lastIndexOf('/');
+				}
+			}
+			return packages;
+		}
+	}
+
+	/**
+	 * Returns classpath entry for the jar with the provided access rules, or <code>null</code> if the jar cannot be
+	 * opened. The entry must be released when the compilation completes.
+	 */
+	public CachedClasspathJar getClasspathJar(File file, AccessRuleSet accessRuleSet, String destinationPath) {
+		Jar jar = getJar(file);
+		return jar != null ? new CachedClasspathJar(file, jar, accessRuleSet, destinationPath) : null;
+	}
+
+	synchronized Jar getJar(File file) {
+		file = file.getAbsoluteFile();
+		Jar jar = jars.get(file);
+		if (jar != null && jar.isCurrent(file)) {
+			hits++;
+			jar.acquire();
+			return jar;
+		}
+
+		// stale jars may still be in use by concurrent compilations, they are closed when released
+		misses++;
+		if (jar != null) {
+			jars.remove(file).evict();
+		}
+		try {
+			jar = new Jar(file);
+		} catch (IOException e) {
+			return null;
+		}
+		jars.put(file, jar);
+		jar.acquire();
+		return jar;
+	}
+
+	public synchronized void clear() {
+		for (Jar jar : jars.values()) {
+			jar.evict();
+		}
+		jars.clear();
+	}
+
+	public synchronized String toString() {
+		return "jars=" + jars.size() + ", hits=" + hits + ", misses=" + misses;
+	}
+}
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -21,6 +22,7 @@ import org.codehaus.plexus.compiler.CompilerError;
 import org.codehaus.plexus.compiler.CompilerException;
 import org.codehaus.plexus.compiler.CompilerOutputStyle;
 import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
@@ -49,15 +51,17 @@ public class JDTCompiler extends AbstractCompiler {
 
 	private static final char[] ADAPTER_ACCESS = "ACCESS#".toCharArray(); //$NON-NLS-1$
 
+	/**
+	 * Custom compiler argument which limits number of reported warnings, not passed to the compiler.
+	 */
+	public static final String MAX_WARNINGS = "-maxWarnings";
+
 	String logFileName;
 
 	Map customDefaultOptions;
 
-	private Map fileEncodings = null;
-
-	private Map dirEncodings = null;
-
-	private List accessRules = null;
+	@Requirement
+	private ClasspathJarCache jarCache;
 
 	public JDTCompiler() {
 		super(CompilerOutputStyle.ONE_OUTPUT_FILE_PER_INPUT_FILE, ".java",
@@ -85,8 +89,6 @@ public class JDTCompiler extends AbstractCompiler {
 				+ "source file" + (sourceFiles.length == 1 ? "" : "s") + " to "
 				+ destinationDir.getAbsolutePath());
 
-		checkCompilerArgs(config.getCustomCompilerArguments());
-
 		String[] args = buildCompilerArguments(config, sourceFiles);
 
 		List messages;
@@ -101,7 +103,7 @@ public class JDTCompiler extends AbstractCompiler {
 			messages = compileOutOfProcess(config.getWorkingDirectory(),
 					executable, args);
 		} else {
-			messages = compileInProcess(args);
+			messages = compileInProcess(args, getMaxWarnings(config.getCustomCompilerArguments()));
 		}
 
 		return messages;
@@ -116,6 +118,8 @@ public class JDTCompiler extends AbstractCompiler {
 			String[] sourceFiles) {
 		List args = new ArrayList();
 
+		AdapterArguments adapterArgs = checkCompilerArgs(config.getCustomCompilerArguments());
+
 		// ----------------------------------------------------------------------
 		// Set output
 		// ----------------------------------------------------------------------
@@ -134,7 +138,7 @@ public class JDTCompiler extends AbstractCompiler {
 		if (classpathEntries != null && !classpathEntries.isEmpty()) {
 			args.add("-classpath");
 
-			String cp = createClasspathArgument(classpathEntries);
+			String cp = createClasspathArgument(classpathEntries, adapterArgs.accessRules);
 
 			args.add(cp);
 		}
@@ -214,7 +218,7 @@ public class JDTCompiler extends AbstractCompiler {
 
 			String key = (String) entry.getKey();
 
-			if (StringUtils.isEmpty(key) || key.startsWith("@")) {
+			if (StringUtils.isEmpty(key) || key.startsWith("@") || MAX_WARNINGS.equals(key)) {
 				continue;
 			}
 
@@ -232,6 +236,18 @@ public class JDTCompiler extends AbstractCompiler {
 		return (String[]) args.toArray(new String[args.size()]);
 	}
 
+	private static int getMaxWarnings(Map customCompilerArguments) throws CompilerException {
+		String value = (String) customCompilerArguments.get(MAX_WARNINGS);
+		if (StringUtils.isEmpty(value)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new CompilerException("Invalid " + MAX_WARNINGS + " value " + value);
+		}
+	}
+
 	private static boolean suppressSource(CompilerConfiguration config) {
 		return "1.3".equals(config.getCompilerVersion());
 	}
@@ -306,31 +322,68 @@ public class JDTCompiler extends AbstractCompiler {
 	 * @param args
 	 *            arguments for the compiler as they would be used in the
 	 *            command line javac
+	 * @param maxWarnings
+	 *            maximum number of reported warnings, negative for no limit
 	 * @return List of CompilerError objects with the errors encountered.
 	 * @throws CompilerException
 	 */
-	List compileInProcess(String[] args) throws CompilerException {
-
-		List messages;
+	List compileInProcess(String[] args, int maxWarnings) throws CompilerException {
 
-		StringWriter out = new StringWriter();
+		// problems are collected as they are found, the writers only receive
+		// other messages like classpath warnings
+		PrintWriter out = new PrintWriter(new NullWriter());
 		StringWriter err = new StringWriter();
+		PrintWriter errWriter = new PrintWriter(err);
 
-		Main compiler = new Main(new PrintWriter(out), new PrintWriter(err), false);
+		Main compiler;
+		if (jarCache != null) {
+			compiler = new CachingMain(out, errWriter, jarCache);
+		} else {
+			compiler = new Main(out, errWriter, false);
+		}
+		ProblemCollector problems = new ProblemCollector(compiler, out, errWriter, maxWarnings);
+		compiler.logger = problems;
 		compiler.options.put(CompilerOptions.OPTION_ReportForbiddenReference, CompilerOptions.ERROR);
-		compiler.compile(args);
+		boolean success = compiler.compile(args);
 
-		try {
-			String output = err.toString();
-			System.out.println(output);
-			messages = parseModernStream(new BufferedReader(new StringReader(
-					output)));
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+		if (jarCache != null && getLogger().isDebugEnabled()) {
+			getLogger().debug("Classpath jar cache " + jarCache);
+		}
+
+		List messages = problems.getMessages();
+
+		String output = err.toString().trim();
+		if (output.length() > 0) {
+			getLogger().warn(output);
+		}
+
+		if (!success && !hasErrors(messages)) {
+			messages.add(new CompilerError("Failure executing JDT compiler:" + EOL + output, true));
 		}
+
 		return messages;
 	}
 
+	private static boolean hasErrors(List messages) {
+		for (Iterator i = messages.iterator(); i.hasNext();) {
+			if (((CompilerError) i.next()).isError()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class NullWriter extends Writer {
+		public void write(char[] cbuf, int off, int len) {
+		}
+
+		public void flush() {
+		}
+
+		public void close() {
+		}
+	}
+
 	/**
 	 * Parse the output from the compiler into a list of CompilerError objects
 	 * 
@@ -409,8 +462,10 @@ public class JDTCompiler extends AbstractCompiler {
 	 *            the given command line
 	 * @param classpath
 	 *            the given classpath entry
+	 * @param accessRules
+	 *            path and access rule pairs, or <code>null</code>
 	 */
-	private String createClasspathArgument(List classpath) {
+	private String createClasspathArgument(List classpath, List accessRules) {
 		final String[] pathElements = (String[]) classpath
 				.toArray(new String[classpath.size()]);
 
@@ -491,8 +546,12 @@ public class JDTCompiler extends AbstractCompiler {
 	 * be interpreted by us.
 	 * @param args
 	 *            compiler arguments to process
+	 * @return information of the adapter lines, per compilation as compilations may run concurrently
 	 */
-	private void checkCompilerArgs(Map args) {
+	private AdapterArguments checkCompilerArgs(Map args) {
+		Map fileEncodings = null;
+		Map dirEncodings = null;
+		List accessRules = null;
 		for (Iterator iterator = args.keySet().iterator(); iterator.hasNext();) {
 			String arg = (String) iterator.next();
 			if (arg.charAt(0) == '@') {
@@ -568,6 +627,21 @@ public class JDTCompiler extends AbstractCompiler {
 			}
 		}
 
+		return new AdapterArguments(fileEncodings, dirEncodings, accessRules);
+	}
+
+	private static class AdapterArguments {
+		final Map fileEncodings;
+
+		final Map dirEncodings;
+
+		final List accessRules;
+
+		AdapterArguments(Map fileEncodings, Map dirEncodings, List accessRules) {
+			this.fileEncodings = fileEncodings;
+			this.dirEncodings = dirEncodings;
+			this.accessRules = accessRules;
+		}
 	}
 
 }
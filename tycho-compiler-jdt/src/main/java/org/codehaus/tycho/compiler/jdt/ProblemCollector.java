@@ -0,0 +1,164 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.plexus.compiler.CompilerError;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.internal.compiler.batch.Main;
+
+/**
+ * Batch compiler logger that turns problems into {@link CompilerError}s as compilation units are completed, instead of
+ * formatting them as text. Warnings beyond the configured maximum are only counted. Other messages, i.e. classpath
+ * warnings and configuration errors, are still printed to the provided writers. When a -log file is configured, problems
+ * are also written to it by the batch compiler logger, without repeating them on the error writer.
+ */
+public class ProblemCollector extends Main.Logger {
+
+	private final List<CompilerError> messages = new ArrayList<CompilerError>();
+
+	private final int maxWarnings;
+
+	private final MutableWriter err;
+
+	private int warnings;
+
+	private boolean logging;
+
+	public ProblemCollector(Main main, PrintWriter out, PrintWriter err, int maxWarnings) {
+		this(main, out, new MutableWriter(err), maxWarnings);
+	}
+
+	private ProblemCollector(Main main, PrintWriter out, MutableWriter err, int maxWarnings) {
+		super(main, out, new PrintWriter(err));
+		this.err = err;
+		this.maxWarnings = maxWarnings;
+	}
+
+	public void setLog(String logFileName) {
+		super.setLog(logFileName);
+		logging = true;
+	}
+
+	public int logProblems(CategorizedProblem[] problems, char[] unitSource, Main currentMain) {
+		if (logging) {
+			collect(problems, unitSource, null);
+			err.muted = true;
+			try {
+				// also counts the problems
+				return super.logProblems(problems, unitSource, currentMain);
+			} finally {
+				err.muted = false;
+			}
+		}
+		return collect(problems, unitSource, currentMain);
+	}
+
+	/**
+	 * @param currentMain
+	 *            compiler whose problem counts are updated, or <code>null</code>
+	 */
+	private int collect(CategorizedProblem[] problems, char[] unitSource, Main currentMain) {
+		int errors = 0;
+		for (int i = 0; i < problems.length; i++) {
+			CategorizedProblem problem = problems[i];
+			if (problem == null) {
+				continue;
+			}
+			if (currentMain != null) {
+				currentMain.globalProblemsCount++;
+			}
+			if (problem.isError()) {
+				errors++;
+				if (currentMain != null) {
+					currentMain.globalErrorsCount++;
+				}
+				messages.add(toCompilerError(problem, unitSource));
+			} else if (problem.getID() == IProblem.Task) {
+				if (currentMain != null) {
+					currentMain.globalTasksCount++;
+				}
+			} else {
+				if (currentMain != null) {
+					currentMain.globalWarningsCount++;
+				}
+				if (maxWarnings < 0 || warnings < maxWarnings) {
+					messages.add(toCompilerError(problem, unitSource));
+				}
+				warnings++;
+			}
+		}
+		return errors;
+	}
+
+	public void logProblemsSummary(int globalProblemsCount, int globalErrorsCount, int globalWarningsCount,
+			int globalTasksCount) {
+		// problems are reported by the caller
+		if (logging) {
+			err.muted = true;
+			try {
+				super.logProblemsSummary(globalProblemsCount, globalErrorsCount, globalWarningsCount, globalTasksCount);
+			} finally {
+				err.muted = false;
+			}
+		}
+	}
+
+	/**
+	 * Errors and, up to the configured maximum, warnings reported so far.
+	 */
+	public List<CompilerError> getMessages() {
+		List<CompilerError> result = new ArrayList<CompilerError>(messages);
+		if (maxWarnings >= 0 && warnings > maxWarnings) {
+			result.add(new CompilerError((warnings - maxWarnings) + " more warnings not reported, " + warnings
+					+ " warnings in total", false));
+		}
+		return result;
+	}
+
+	private static CompilerError toCompilerError(CategorizedProblem problem, char[] unitSource) {
+		char[] fileName = problem.getOriginatingFileName();
+		int line = problem.getSourceLineNumber();
+		int start = problem.getSourceStart();
+		int column = 0;
+		if (unitSource != null && start >= 0 && start <= unitSource.length) {
+			for (int i = start - 1; i >= 0 && unitSource[i] != '\n' && unitSource[i] != '\r'; i--) {
+				column++;
+			}
+		}
+		int length = Math.max(problem.getSourceEnd() - start + 1, 0);
+		return new CompilerError(fileName != null ? new String(fileName) : null, problem.isError(), line, column,
+				line, column + length, problem.getMessage());
+	}
+
+	/**
+	 * Error writer that can be muted, so the batch compiler logger writes problems to the -log file only.
+	 */
+	private static class MutableWriter extends Writer {
+		private final Writer writer;
+
+		boolean muted;
+
+		MutableWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			if (!muted) {
+				writer.write(cbuf, off, len);
+			}
+		}
+
+		public void flush() throws IOException {
+			writer.flush();
+		}
+
+		public void close() throws IOException {
+			writer.close();
+		}
+	}
+}
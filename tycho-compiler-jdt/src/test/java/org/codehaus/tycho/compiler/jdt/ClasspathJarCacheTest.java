@@ -0,0 +1,115 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+public class ClasspathJarCacheTest
+    extends TestCase
+{
+    private File basedir;
+
+    private ClasspathJarCache cache;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/jarcache" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        basedir.mkdirs();
+        cache = new ClasspathJarCache();
+    }
+
+    public void testReuse()
+        throws Exception
+    {
+        File file = newJar( "library.jar", "a/A.class" );
+
+        ClasspathJarCache.Jar jar = cache.getJar( file );
+        jar.release();
+
+        assertSame( jar, cache.getJar( file ) );
+        assertTrue( jar.isPackage( "a" ) );
+        assertFalse( jar.isPackage( "b" ) );
+    }
+
+    public void testInvalidation()
+        throws Exception
+    {
+        File file = newJar( "library.jar", "a/A.class" );
+
+        ClasspathJarCache.Jar jar = cache.getJar( file );
+
+        // rebuilt jar replaces the old one
+        File rebuilt = newJar( "rebuilt.jar", "a/A.class", "b/B.class" );
+        rebuilt.setLastModified( file.lastModified() + 2000 );
+        assertTrue( rebuilt.renameTo( file ) );
+
+        ClasspathJarCache.Jar changed = cache.getJar( file );
+        assertNotSame( jar, changed );
+        assertTrue( changed.isPackage( "b" ) );
+
+        // still used by the first compilation
+        assertOpen( jar );
+        jar.release();
+        assertClosed( jar );
+        assertOpen( changed );
+    }
+
+    public void testClear()
+        throws Exception
+    {
+        ClasspathJarCache.Jar jar = cache.getJar( newJar( "library.jar", "a/A.class" ) );
+        jar.release();
+
+        cache.clear();
+
+        assertClosed( jar );
+    }
+
+    private static void assertOpen( ClasspathJarCache.Jar jar )
+    {
+        assertNotNull( jar.zipFile.getEntry( "a/A.class" ) );
+    }
+
+    private static void assertClosed( ClasspathJarCache.Jar jar )
+    {
+        try
+        {
+            jar.zipFile.getEntry( "a/A.class" );
+            fail();
+        }
+        catch ( IllegalStateException e )
+        {
+            // zip file closed
+        }
+    }
+
+    private File newJar( String name, String... entries )
+        throws IOException
+    {
+        File file = new File( basedir, name );
+        ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            for ( String entry : entries )
+            {
+                zos.putNextEntry( new ZipEntry( entry ) );
+                zos.write( entry.getBytes( "UTF-8" ) );
+                zos.closeEntry();
+            }
+        }
+        finally
+        {
+            zos.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,118 @@
+package org.codehaus.tycho.compiler.jdt;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.compiler.CompilerConfiguration;
+import org.codehaus.plexus.compiler.CompilerError;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+
+public class JDTCompilerTest
+    extends TestCase
+{
+    /** three unused imports and one type mismatch */
+    private static final String SOURCE =
+        "package sample;\n" + "import java.util.List;\n" + "import java.util.Map;\n" + "import java.util.Set;\n"
+            + "public class Sample {\n" + "    int value = \"text\";\n" + "}\n";
+
+    private File basedir;
+
+    private CompilerConfiguration config;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        basedir = new File( "target/jdt" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+
+        File sourceDir = new File( basedir, "src" );
+        File source = new File( sourceDir, "sample/Sample.java" );
+        source.getParentFile().mkdirs();
+        FileUtils.fileWrite( source.getAbsolutePath(), SOURCE );
+
+        config = new CompilerConfiguration();
+        config.addSourceLocation( sourceDir.getAbsolutePath() );
+        config.setOutputLocation( new File( basedir, "classes" ).getAbsolutePath() );
+        config.setSourceVersion( "1.5" );
+        config.setTargetVersion( "1.5" );
+        config.setShowWarnings( true );
+    }
+
+    public void testProblems()
+        throws Exception
+    {
+        List<CompilerError> messages = compile();
+
+        assertEquals( 1, getErrors( messages ).size() );
+        assertTrue( getErrors( messages ).get( 0 ).getFile().endsWith( "Sample.java" ) );
+        assertEquals( 6, getErrors( messages ).get( 0 ).getStartLine() );
+        assertEquals( 3, getWarnings( messages ).size() );
+    }
+
+    public void testMaxWarnings()
+        throws Exception
+    {
+        config.addCompilerCustomArgument( JDTCompiler.MAX_WARNINGS, "2" );
+
+        List<CompilerError> messages = compile();
+
+        assertEquals( 1, getErrors( messages ).size() );
+        List<CompilerError> warnings = getWarnings( messages );
+        assertEquals( 3, warnings.size() );
+        assertTrue( warnings.get( 2 ).getMessage().startsWith( "1 more warnings not reported" ) );
+    }
+
+    public void testLogFile()
+        throws Exception
+    {
+        File log = new File( basedir, "compile.log" );
+        config.addCompilerCustomArgument( JDTCompiler.MAX_WARNINGS, "2" );
+        config.addCompilerCustomArgument( "-log", log.getAbsolutePath() );
+
+        List<CompilerError> messages = compile();
+
+        assertEquals( 1, getErrors( messages ).size() );
+        // all problems are logged
+        String content = FileUtils.fileRead( log );
+        assertTrue( content.contains( "java.util.List" ) );
+        assertTrue( content.contains( "java.util.Set" ) );
+        assertTrue( content.contains( "Type mismatch" ) );
+    }
+
+    private List<CompilerError> compile()
+        throws Exception
+    {
+        JDTCompiler compiler = new JDTCompiler();
+        compiler.enableLogging( new ConsoleLogger( Logger.LEVEL_WARN, "test" ) );
+        return compiler.compile( config );
+    }
+
+    private static List<CompilerError> getErrors( List<CompilerError> messages )
+    {
+        return filter( messages, true );
+    }
+
+    private static List<CompilerError> getWarnings( List<CompilerError> messages )
+    {
+        return filter( messages, false );
+    }
+
+    private static List<CompilerError> filter( List<CompilerError> messages, boolean error )
+    {
+        List<CompilerError> result = new ArrayList<CompilerError>();
+        for ( CompilerError message : messages )
+        {
+            if ( message.isError() == error )
+            {
+                result.add( message );
+            }
+        }
+        return result;
+    }
+}
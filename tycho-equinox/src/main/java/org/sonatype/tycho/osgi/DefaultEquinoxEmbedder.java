@@ -2,18 +2,30 @@ package org.sonatype.tycho.osgi;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Configuration;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.util.FileUtils;
 import org.eclipse.core.runtime.adaptor.EclipseStarter;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.packageadmin.ExportedPackage;
 import org.osgi.service.packageadmin.PackageAdmin;
 
 @Component( role = EquinoxEmbedder.class )
@@ -23,6 +35,22 @@ public class DefaultEquinoxEmbedder
 {
     private static final String SYSPROP_EQUINOX_RUNTIMELOCATION = "equinox-runtimeLocation";
 
+    /** set to false to activate all bundles on startup */
+    private static final String SYSPROP_LAZY_START = "tycho.equinox.lazyStart";
+
+    /** maximum number of configuration areas, i.e. concurrent builds, per runtime */
+    private static final int MAX_CONFIGURATION_AREAS = 16;
+
+    private static final String CONFIGURATION_LOCK = ".tycho.lock";
+
+    private static final String CONFIGURATION_STAMP = ".tycho.runtime";
+
+    /** install-time configuration of the runtime copied to configuration areas */
+    private static final String[] CONFIGURATION_FILES = { "config.ini", "org.eclipse.equinox.simpleconfigurator" };
+
+    /** bundles which are always activated, they act on other bundles without being used by them */
+    private static final Set<String> EAGER_BUNDLES = Collections.singleton( "org.eclipse.equinox.ds" );
+
     @Configuration( value = "${equinox-runtimeLocation}" )
     private File runtimeLocation;
 
@@ -33,6 +61,14 @@ public class DefaultEquinoxEmbedder
 
     private String[] nonFrameworkArgs;
 
+    private PackageAdmin packageAdmin;
+
+    /** exclusive lock of the configuration area used by this build */
+    private FileLock configurationLock;
+
+    /** bundle activation times in milliseconds, by bundle symbolic name */
+    private final Map<String, Long> startTimes = new LinkedHashMap<String, Long>();
+
     public synchronized void start()
         throws Exception
     {
@@ -69,7 +105,7 @@ public class DefaultEquinoxEmbedder
         Map<String, String> properties = new HashMap<String, String>();
         properties.put( "osgi.install.area", p2RuntimeLocation );
         properties.put( "osgi.syspath", p2RuntimeLocation + "/plugins" );
-        properties.put( "osgi.configuration.area", p2RuntimeLocation + "/configuration" );
+        properties.put( "osgi.configuration.area", getConfigurationArea( getRuntimeLocation() ).getAbsolutePath() );
 
         // this tells framework to use our classloader as parent, so it can see classes that we see
         properties.put( "osgi.parentClassloader", "fwk" );
@@ -86,15 +122,16 @@ public class DefaultEquinoxEmbedder
 
         EclipseStarter.setInitialProperties( properties );
 
+        long start = System.currentTimeMillis();
+
         EclipseStarter.startup( nonFrameworkArgs != null ? nonFrameworkArgs : new String[0], null );
 
-        frameworkContext = EclipseStarter.getSystemBundleContext();
+        BundleContext context = EclipseStarter.getSystemBundleContext();
 
-        PackageAdmin packageAdmin = null;
-        ServiceReference packageAdminRef = frameworkContext.getServiceReference( PackageAdmin.class.getName() );
+        ServiceReference packageAdminRef = context.getServiceReference( PackageAdmin.class.getName() );
         if ( packageAdminRef != null )
         {
-            packageAdmin = (PackageAdmin) frameworkContext.getService( packageAdminRef );
+            packageAdmin = (PackageAdmin) context.getService( packageAdminRef );
         }
 
         if ( packageAdmin == null )
@@ -102,22 +139,175 @@ public class DefaultEquinoxEmbedder
             throw new IllegalStateException( "Could not obtain PackageAdmin service" );
         }
 
-        for ( Bundle bundle : frameworkContext.getBundles() )
+        // bundles with lazy activation policy are only activated when their classes or services are used
+        boolean lazy = !"false".equals( System.getProperty( SYSPROP_LAZY_START ) );
+        for ( Bundle bundle : context.getBundles() )
         {
             if ( ( packageAdmin.getBundleType( bundle ) & PackageAdmin.BUNDLE_TYPE_FRAGMENT ) == 0 )
             {
-                try
+                boolean eager = !lazy || EAGER_BUNDLES.contains( bundle.getSymbolicName() );
+                startBundle( bundle, eager ? 0 : Bundle.START_ACTIVATION_POLICY );
+            }
+        }
+
+        frameworkContext = context;
+
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( "Started Equinox in " + ( System.currentTimeMillis() - start ) + " ms" );
+            logStartTimes();
+        }
+    }
+
+    private void startBundle( Bundle bundle, int options )
+    {
+        long start = System.currentTimeMillis();
+        try
+        {
+            bundle.start( options );
+        }
+        catch ( BundleException e )
+        {
+            getLogger().warn( "Could not start bundle " + bundle.getSymbolicName(), e );
+        }
+        if ( bundle.getState() == Bundle.ACTIVE )
+        {
+            startTimes.put( bundle.getSymbolicName(), Long.valueOf( System.currentTimeMillis() - start ) );
+        }
+    }
+
+    private void logStartTimes()
+    {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>( startTimes.entrySet() );
+        Collections.sort( entries, new Comparator<Map.Entry<String, Long>>()
+        {
+            public int compare( Map.Entry<String, Long> a, Map.Entry<String, Long> b )
+            {
+                return b.getValue().compareTo( a.getValue() );
+            }
+        } );
+        for ( Map.Entry<String, Long> entry : entries )
+        {
+            getLogger().debug( "  " + entry.getKey() + " activated in " + entry.getValue() + " ms" );
+        }
+    }
+
+    /**
+     * Each build uses its own configuration area, so the framework state cached in it is reused by later builds
+     * without being modified concurrently. Areas are kept next to the runtime and are reset when the runtime changes.
+     * Falls back to the configuration directory of the runtime if no area can be used.
+     */
+    private File getConfigurationArea( File runtimeLocation )
+    {
+        File runtimeConfiguration = new File( runtimeLocation, "configuration" );
+        File areas = new File( runtimeLocation.getParentFile(), runtimeLocation.getName() + ".configuration" );
+        String stamp = runtimeLocation.getAbsolutePath() + ":" + runtimeLocation.lastModified() + ":"
+            + new File( runtimeConfiguration, "config.ini" ).lastModified();
+
+        for ( int i = 0; i < MAX_CONFIGURATION_AREAS; i++ )
+        {
+            File area = new File( areas, Integer.toString( i ) );
+            try
+            {
+                if ( !lockConfigurationArea( area ) )
                 {
-                    bundle.start();
+                    continue; // used by another build
                 }
-                catch ( BundleException e )
+                File stampFile = new File( area, CONFIGURATION_STAMP );
+                if ( !stampFile.isFile() || !stamp.equals( FileUtils.fileRead( stampFile ) ) )
                 {
-                    getLogger().warn( "Could not start bundle " + bundle.getSymbolicName(), e );
+                    getLogger().debug( "Initializing Equinox configuration area " + area );
+                    resetConfigurationArea( area, runtimeConfiguration );
+                    FileUtils.fileWrite( stampFile.getAbsolutePath(), stamp );
                 }
+                return area;
+            }
+            catch ( IOException e )
+            {
+                getLogger().debug( "Could not use Equinox configuration area " + area, e );
+                releaseConfigurationArea();
+            }
+        }
+
+        getLogger().warn( "Could not use an Equinox configuration area in " + areas
+            + ", using the configuration area of the runtime " + runtimeConfiguration );
+        return runtimeConfiguration;
+    }
+
+    private boolean lockConfigurationArea( File area )
+        throws IOException
+    {
+        area.mkdirs();
+        // the lock is held until the build JVM exits
+        RandomAccessFile file = new RandomAccessFile( new File( area, CONFIGURATION_LOCK ), "rw" );
+        FileLock lock = null;
+        try
+        {
+            lock = file.getChannel().tryLock();
+        }
+        catch ( OverlappingFileLockException e )
+        {
+            // used by another embedder in this JVM
+        }
+        finally
+        {
+            if ( lock == null )
+            {
+                file.close();
             }
         }
+        if ( lock == null )
+        {
+            return false;
+        }
+        configurationLock = lock;
+        return true;
+    }
+
+    private void releaseConfigurationArea()
+    {
+        if ( configurationLock == null )
+        {
+            return;
+        }
+        try
+        {
+            configurationLock.release();
+            configurationLock.channel().close();
+        }
+        catch ( IOException e )
+        {
+            getLogger().debug( "Could not release Equinox configuration area lock", e );
+        }
+        configurationLock = null;
+    }
 
-        frameworkContext.ungetService( packageAdminRef );
+    private static void resetConfigurationArea( File area, File runtimeConfiguration )
+        throws IOException
+    {
+        File[] files = area.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                if ( !CONFIGURATION_LOCK.equals( file.getName() ) )
+                {
+                    FileUtils.forceDelete( file );
+                }
+            }
+        }
+        for ( String name : CONFIGURATION_FILES )
+        {
+            File file = new File( runtimeConfiguration, name );
+            if ( file.isDirectory() )
+            {
+                FileUtils.copyDirectoryStructure( file, new File( area, name ) );
+            }
+            else if ( file.isFile() )
+            {
+                FileUtils.copyFile( file, new File( area, name ) );
+            }
+        }
     }
 
     public File getRuntimeLocation()
@@ -177,6 +367,11 @@ public class DefaultEquinoxEmbedder
         // TODO technically, we're leaking service references here
         ServiceReference serviceReference = frameworkContext.getServiceReference( clazz.getName() );
 
+        if ( serviceReference == null )
+        {
+            serviceReference = activateServiceBundles( clazz.getName() );
+        }
+
         if ( serviceReference == null )
         {
             throw new IllegalStateException( "Service is not registered " + clazz );
@@ -185,6 +380,57 @@ public class DefaultEquinoxEmbedder
         return clazz.cast( frameworkContext.getService( serviceReference ) );
     }
 
+    /**
+     * Activates the lazily started bundles that may register the service, the bundles exporting or using the service
+     * package first, then all others.
+     */
+    private synchronized ServiceReference activateServiceBundles( String className )
+    {
+        int idx = className.lastIndexOf( '.' );
+        String packageName = idx > 0 ? className.substring( 0, idx ) : "";
+
+        Set<Bundle> candidates = new LinkedHashSet<Bundle>();
+        ExportedPackage[] exports = packageAdmin.getExportedPackages( packageName );
+        if ( exports != null )
+        {
+            for ( ExportedPackage export : exports )
+            {
+                candidates.add( export.getExportingBundle() );
+                Bundle[] importers = export.getImportingBundles();
+                if ( importers != null )
+                {
+                    Collections.addAll( candidates, importers );
+                }
+            }
+        }
+        activateBundles( candidates.toArray( new Bundle[candidates.size()] ) );
+
+        ServiceReference serviceReference = frameworkContext.getServiceReference( className );
+        if ( serviceReference == null )
+        {
+            activateBundles( frameworkContext.getBundles() );
+            serviceReference = frameworkContext.getServiceReference( className );
+        }
+        return serviceReference;
+    }
+
+    private void activateBundles( Bundle[] bundles )
+    {
+        for ( Bundle bundle : bundles )
+        {
+            if ( bundle.getState() == Bundle.STARTING )
+            {
+                // lazily started, activate without changing the persistent activation policy
+                startBundle( bundle, Bundle.START_TRANSIENT );
+                if ( getLogger().isDebugEnabled() && startTimes.containsKey( bundle.getSymbolicName() ) )
+                {
+                    getLogger().debug( "Activated " + bundle.getSymbolicName() + " in "
+                        + startTimes.get( bundle.getSymbolicName() ) + " ms" );
+                }
+            }
+        }
+    }
+
     public void setNonFrameworkArgs( String[] args )
     {
         nonFrameworkArgs = args;
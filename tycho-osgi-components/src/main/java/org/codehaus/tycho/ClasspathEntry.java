@@ -30,6 +30,11 @@ public interface ClasspathEntry
             AccessRule other = (AccessRule) obj;
             return discouraged == other.discouraged && path.equals( other.path );
         }
+
+        public int hashCode()
+        {
+            return path.hashCode() * 31 + ( discouraged ? 1 : 0 );
+        }
     }
 
     public ArtifactKey getArtifactKey();
@@ -39,6 +39,7 @@ import org.codehaus.tycho.model.Target;
 import org.codehaus.tycho.osgitools.AbstractTychoProject;
 import org.codehaus.tycho.osgitools.BundleReader;
 import org.codehaus.tycho.osgitools.DefaultBundleReader;
+import org.codehaus.tycho.osgitools.EquinoxResolver;
 import org.codehaus.tycho.osgitools.targetplatform.LocalTargetPlatformResolver;
 import org.codehaus.tycho.utils.PlatformPropertiesUtils;
 import org.codehaus.tycho.utils.TychoVersion;
@@ -74,6 +75,9 @@ public class TychoMavenLifecycleParticipant
     @Requirement
     private BundleReader bundleReader;
 
+    @Requirement
+    private EquinoxResolver equinoxResolver;
+
     public void afterProjectsRead( MavenSession session )
         throws MavenExecutionException
     {
@@ -91,6 +95,7 @@ public class TychoMavenLifecycleParticipant
 
         File localRepository = new File( session.getLocalRepository().getBasedir() );
         ( (DefaultBundleReader) bundleReader ).setLocationRepository( localRepository );
+        equinoxResolver.setLocationRepository( localRepository );
 
         File p2Directory = resolveEquinoxRuntime( session );
         if ( p2Directory != null )
@@ -4,8 +4,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.jar.Attributes;
@@ -33,93 +34,179 @@ public class DefaultBundleReader
 {
     public static final String CACHE_PATH = ".cache/tycho";
 
+    public static final String MANIFEST_INDEX_PATH = ".cache/tycho-manifests.idx";
+
+    private static final int MAX_CACHED_MANIFESTS = 2000;
+
     private File cacheDir;
 
-    private static final Map<File, Manifest> manifestCache = new HashMap<File, Manifest>();
+    private ManifestIndex manifestIndex;
+
+    private static final Map<File, CachedManifest> manifestCache =
+        Collections.synchronizedMap( new LinkedHashMap<File, CachedManifest>( 256, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<File, CachedManifest> eldest )
+            {
+                return size() > MAX_CACHED_MANIFESTS;
+            }
+        } );
+
+    private static class CachedManifest
+    {
+        final Manifest manifest;
+
+        final long length;
+
+        final long lastModified;
+
+        CachedManifest( File location, Manifest manifest )
+        {
+            this.manifest = manifest;
+            this.length = location.length();
+            this.lastModified = location.lastModified();
+        }
+
+        boolean isCurrent( File location )
+        {
+            return length == location.length() && lastModified == location.lastModified();
+        }
+    }
 
     public Manifest loadManifest( File bundleLocation )
     {
-        Manifest manifest = manifestCache.get( bundleLocation );
-        if ( manifest == null )
+        CachedManifest cached = manifestCache.get( bundleLocation );
+        if ( cached != null && ( bundleLocation.isDirectory() || cached.isCurrent( bundleLocation ) ) )
+        {
+            return cached.manifest;
+        }
+
+        // unreadable or broken bundles are not cached, they may be fixed during the build
+        if ( !bundleLocation.isDirectory() && !bundleLocation.canRead() )
+        {
+            return null;
+        }
+
+        Manifest manifest;
+        try
+        {
+            if ( manifestIndex != null && isJar( bundleLocation ) )
+            {
+                manifest = loadIndexedManifest( bundleLocation );
+            }
+            else
+            {
+                manifest = doLoadManifest( bundleLocation );
+            }
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Exception reading bundle manifest in " + bundleLocation.getAbsolutePath(), e );
+            return null;
+        }
+        catch ( PluginConversionException e )
         {
-            manifest = doLoadManifest( bundleLocation );
-            manifestCache.put( bundleLocation, manifest );
+            getLogger().warn( "Exception reading bundle manifest in " + bundleLocation.getAbsolutePath() + ": "
+                                  + e.getMessage() );
+            return null;
         }
+        manifestCache.put( bundleLocation, new CachedManifest( bundleLocation, manifest ) );
         return manifest;
     }
 
-    private Manifest doLoadManifest( File bundleLocation )
+    private Manifest loadIndexedManifest( File bundleLocation )
+        throws IOException, PluginConversionException
     {
         try
         {
-            if ( bundleLocation.isDirectory() )
+            ManifestIndex.IndexedManifest indexed = manifestIndex.get( bundleLocation );
+            if ( indexed != null )
             {
-                File m = new File( bundleLocation, JarFile.MANIFEST_NAME );
-                if ( m.canRead() )
-                {
-                    return loadManifestFile( m );
-                }
-                m = convertPluginManifest( bundleLocation );
-                if ( m != null && m.canRead() )
-                {
-                    return loadManifestFile( m );
-                }
-                return null;
+                return indexed.getManifest();
             }
+        }
+        catch ( IOException e )
+        {
+            getLogger().debug( "Could not read manifest index " + e.getMessage() );
+        }
 
-            // it's a file, make sure we can read it
-            if ( !bundleLocation.canRead() )
+        Manifest manifest = doLoadManifest( bundleLocation );
+
+        try
+        {
+            manifestIndex.put( bundleLocation, manifest );
+        }
+        catch ( IOException e )
+        {
+            getLogger().debug( "Could not update manifest index " + e.getMessage() );
+        }
+
+        return manifest;
+    }
+
+    private static boolean isJar( File location )
+    {
+        return location.isFile() && location.getName().toLowerCase().endsWith( ".jar" );
+    }
+
+    private Manifest doLoadManifest( File bundleLocation )
+        throws IOException, PluginConversionException
+    {
+        if ( bundleLocation.isDirectory() )
+        {
+            File m = new File( bundleLocation, JarFile.MANIFEST_NAME );
+            if ( m.canRead() )
             {
-                return null;
+                return loadManifestFile( m );
             }
-
-            // file but not a jar, assume it is MANIFEST.MF
-            if ( !bundleLocation.getName().toLowerCase().endsWith( ".jar" ) )
+            m = convertPluginManifest( bundleLocation );
+            if ( m != null && m.canRead() )
             {
-                return loadManifestFile( bundleLocation );
+                return loadManifestFile( m );
             }
+            return null;
+        }
 
-            // it is a jar, lets see if it has OSGi bundle manifest
-            ZipFile jar = new ZipFile( bundleLocation, ZipFile.OPEN_READ );
-            try
+        // file but not a jar, assume it is MANIFEST.MF
+        if ( !bundleLocation.getName().toLowerCase().endsWith( ".jar" ) )
+        {
+            return loadManifestFile( bundleLocation );
+        }
+
+        // it is a jar, lets see if it has OSGi bundle manifest
+        ZipFile jar = new ZipFile( bundleLocation, ZipFile.OPEN_READ );
+        try
+        {
+            ZipEntry me = jar.getEntry( JarFile.MANIFEST_NAME );
+            if ( me != null )
             {
-                ZipEntry me = jar.getEntry( JarFile.MANIFEST_NAME );
-                if ( me != null )
+                InputStream is = jar.getInputStream( me );
+                try
                 {
-                    InputStream is = jar.getInputStream( me );
-                    try
+                    Manifest mf = new Manifest( is );
+                    if ( mf.getMainAttributes().getValue( Constants.BUNDLE_SYMBOLICNAME ) != null )
                     {
-                        Manifest mf = new Manifest( is );
-                        if ( mf.getMainAttributes().getValue( Constants.BUNDLE_SYMBOLICNAME ) != null )
-                        {
-                            return mf;
-                        }
-                    }
-                    finally
-                    {
-                        is.close();
+                        return mf;
                     }
                 }
-            }
-            finally
-            {
-                jar.close();
-            }
-
-            // it is a jar, does not have OSGi bundle manifest, lets try plugin.xml/fragment.xml
-            File m = convertPluginManifest( bundleLocation );
-            if ( m != null && m.canRead() )
-            {
-                return loadManifestFile( m );
+                finally
+                {
+                    is.close();
+                }
             }
         }
-        catch ( IOException e )
+        finally
         {
-            getLogger().warn( "Exception reading bundle manifest in " + bundleLocation.getAbsolutePath(), e );
+            jar.close();
         }
-        catch ( PluginConversionException e )
+
+        // it is a jar, does not have OSGi bundle manifest, lets try plugin.xml/fragment.xml
+        File m = convertPluginManifest( bundleLocation );
+        if ( m != null && m.canRead() )
         {
-            getLogger().warn( "Exception reading bundle manifest in " + bundleLocation.getAbsolutePath() + ": " + e.getMessage() );
+            return loadManifestFile( m );
         }
 
         // not a bundle
@@ -167,6 +254,7 @@ public class DefaultBundleReader
     public void setLocationRepository( File basedir )
     {
         this.cacheDir = new File( basedir, CACHE_PATH );
+        this.manifestIndex = new ManifestIndex( new File( basedir, MANIFEST_INDEX_PATH ) );
     }
 
     public Properties toProperties( Manifest mf )
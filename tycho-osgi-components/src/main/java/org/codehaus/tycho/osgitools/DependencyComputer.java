@@ -1,10 +1,13 @@
 package org.codehaus.tycho.osgitools;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.codehaus.plexus.component.annotations.Component;
@@ -25,6 +28,9 @@ import org.eclipse.osgi.service.resolver.StateHelper;
  * 
  * Note that some functionality, namely SecondaryDependencies,
  * ExtraClasspathEntries and isPatchFragment, has been removed due to time constraints.
+ * 
+ * Unlike PDE, access rules and classpath entries are collected in insertion-ordered
+ * sets, so bundles that see thousands of packages are handled in linear time.
  */
 @Component( role = DependencyComputer.class )
 public class DependencyComputer {
@@ -46,17 +52,21 @@ public class DependencyComputer {
 				return false;
 			}
 			DependencyEntry other = (DependencyEntry) obj;
-            return desc.equals(other.desc) && rules.equals(other.rules);
+            return desc.equals(other.desc) && (rules == null ? other.rules == null : rules.equals(other.rules));
+		}
+
+		public int hashCode() {
+			return desc.hashCode();
 		}
 	}
 
 	public List<DependencyEntry> computeDependencies(StateHelper helper, BundleDescription desc) {
-		ArrayList<DependencyEntry> entries = new ArrayList<DependencyEntry>();
-
 		if (desc == null)
-			return entries;
+			return new ArrayList<DependencyEntry>();
 
-		Map<BundleDescription, ArrayList<AccessRule>> map = retrieveVisiblePackagesFromState(helper, desc);
+		LinkedHashSet<DependencyEntry> entries = new LinkedHashSet<DependencyEntry>();
+
+		Map<BundleDescription, List<AccessRule>> map = retrieveVisiblePackagesFromState(helper, desc);
 
 		HashSet<BundleDescription> added = new HashSet<BundleDescription>();
 
@@ -92,18 +102,24 @@ public class DependencyComputer {
 //			System.err.println(i + "\t" + entries.get(i).desc);
 //		}
 
-		return entries;
+		return new ArrayList<DependencyEntry>(entries);
 	}
 
-	private Map<BundleDescription, ArrayList<AccessRule>> retrieveVisiblePackagesFromState(StateHelper helper, BundleDescription desc) {
-		Map<BundleDescription, ArrayList<AccessRule>> visiblePackages = new HashMap<BundleDescription, ArrayList<AccessRule>>();
+	private Map<BundleDescription, List<AccessRule>> retrieveVisiblePackagesFromState(StateHelper helper, BundleDescription desc) {
+		Map<BundleDescription, Set<AccessRule>> visiblePackages = new HashMap<BundleDescription, Set<AccessRule>>();
 		addVisiblePackagesFromState(helper, desc, visiblePackages);
 		if (desc.getHost() != null)
 			addVisiblePackagesFromState(helper, (BundleDescription) desc.getHost().getSupplier(), visiblePackages);
-		return visiblePackages;
+
+		// rules of an exporter are shared by all classpath entries of the exporter
+		Map<BundleDescription, List<AccessRule>> result = new HashMap<BundleDescription, List<AccessRule>>();
+		for (Map.Entry<BundleDescription, Set<AccessRule>> entry : visiblePackages.entrySet()) {
+			result.put(entry.getKey(), new ArrayList<AccessRule>(entry.getValue()));
+		}
+		return result;
 	}
 
-	private void addVisiblePackagesFromState(StateHelper helper, BundleDescription desc, Map<BundleDescription, ArrayList<AccessRule>> visiblePackages) {
+	private void addVisiblePackagesFromState(StateHelper helper, BundleDescription desc, Map<BundleDescription, Set<AccessRule>> visiblePackages) {
 		if (desc == null)
 			return;
 		ExportPackageDescription[] exports = helper.getVisiblePackages(desc);
@@ -111,24 +127,23 @@ public class DependencyComputer {
 			BundleDescription exporter = exports[i].getExporter();
 			if (exporter == null)
 				continue;
-			ArrayList<AccessRule> list = visiblePackages.get(exporter);
-			if (list == null)
-				list = new ArrayList<AccessRule>();
-			AccessRule rule = getRule(helper, desc, exports[i]);
-			if (!list.contains(rule))
-				list.add(rule);
-			visiblePackages.put(exporter, list);
+			Set<AccessRule> rules = visiblePackages.get(exporter);
+			if (rules == null) {
+				rules = new LinkedHashSet<AccessRule>();
+				visiblePackages.put(exporter, rules);
+			}
+			rules.add(getRule(helper, desc, exports[i]));
 		}
 	}
 
 	private AccessRule getRule(StateHelper helper, BundleDescription desc, ExportPackageDescription export) {
 		boolean discouraged = helper.getAccessCode(desc, export) == StateHelper.ACCESS_DISCOURAGED;
 		String name = export.getName();
-		String path = (name.equals(".")) ? "*" : name.replaceAll("\\.", "/") + "/*";
+		String path = (name.equals(".")) ? "*" : name.replace('.', '/') + "/*";
 		return new AccessRule(path, discouraged);
 	}
 
-	protected void addDependencyViaImportPackage(BundleDescription desc, HashSet<BundleDescription> added, Map<BundleDescription, ArrayList<AccessRule>> map, ArrayList<DependencyEntry> entries) {
+	protected void addDependencyViaImportPackage(BundleDescription desc, HashSet<BundleDescription> added, Map<BundleDescription, List<AccessRule>> map, Set<DependencyEntry> entries) {
 		if (desc == null || !added.add(desc))
 			return;
 
@@ -143,11 +158,11 @@ public class DependencyComputer {
 		}
 	}
 
-	private void addDependency(BundleDescription desc, HashSet<BundleDescription> added, Map<BundleDescription, ArrayList<AccessRule>> map, ArrayList<DependencyEntry> entries) {
+	private void addDependency(BundleDescription desc, HashSet<BundleDescription> added, Map<BundleDescription, List<AccessRule>> map, Set<DependencyEntry> entries) {
 		addDependency(desc, added, map, entries, true);
 	}
 
-	private void addDependency(BundleDescription desc, HashSet<BundleDescription> added, Map<BundleDescription, ArrayList<AccessRule>> map, ArrayList<DependencyEntry> entries, boolean useInclusion) {
+	private void addDependency(BundleDescription desc, HashSet<BundleDescription> added, Map<BundleDescription, List<AccessRule>> map, Set<DependencyEntry> entries, boolean useInclusion) {
 		if (desc == null || !added.add(desc))
 			return;
 
@@ -181,29 +196,27 @@ public class DependencyComputer {
 		return false; // TODO
 	}
 
-	private boolean addPlugin(BundleDescription desc, boolean useInclusions, Map<BundleDescription, ArrayList<AccessRule>> map, ArrayList<DependencyEntry> entries) {
+	private boolean addPlugin(BundleDescription desc, boolean useInclusions, Map<BundleDescription, List<AccessRule>> map, Set<DependencyEntry> entries) {
 	    if (EquinoxResolver.SYSTEM_BUNDLE_SYMBOLIC_NAME.equals(desc.getSymbolicName())) {
 	        return false;
 	    }
 		List<AccessRule> rules = useInclusions ? getInclusions(map, desc) : null;
-		DependencyEntry entry = new DependencyEntry(desc, rules);
-		if (!entries.contains(entry))
-			entries.add(entry);
+		entries.add(new DependencyEntry(desc, rules));
 		return true;
 	}
 
-	private List<AccessRule> getInclusions(Map<BundleDescription, ArrayList<AccessRule>> map, BundleDescription desc) {
-		ArrayList<AccessRule> rules;
+	private List<AccessRule> getInclusions(Map<BundleDescription, List<AccessRule>> map, BundleDescription desc) {
+		List<AccessRule> rules;
 
 		if (desc.getHost() != null)
 			rules = map.get((BundleDescription) desc.getHost().getSupplier());
 		else
 			rules = map.get(desc);
 
-		return rules != null? rules : new ArrayList<AccessRule>();
+		return rules != null? rules : Collections.<AccessRule>emptyList();
 	}
 
-	private void addHostPlugin(HostSpecification hostSpec, HashSet<BundleDescription> added, Map<BundleDescription, ArrayList<AccessRule>> map, ArrayList<DependencyEntry> entries) {
+	private void addHostPlugin(HostSpecification hostSpec, HashSet<BundleDescription> added, Map<BundleDescription, List<AccessRule>> map, Set<DependencyEntry> entries) {
 		BaseDescription desc = hostSpec.getSupplier();
 
 		if (desc instanceof BundleDescription) {
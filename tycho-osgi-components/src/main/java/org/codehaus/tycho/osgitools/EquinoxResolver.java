@@ -1,18 +1,29 @@
 package org.codehaus.tycho.osgitools;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.tycho.ArtifactDescription;
 import org.codehaus.tycho.TargetEnvironment;
 import org.codehaus.tycho.TargetPlatform;
@@ -36,6 +47,28 @@ public class EquinoxResolver
 {
     public static final String SYSTEM_BUNDLE_SYMBOLIC_NAME = "system.bundle";
 
+    /**
+     * When set to <code>true</code>, OSGi state of target platform bundles is built once per target platform,
+     * environment and execution environment profile, persisted in the local repository and reused by all projects.
+     */
+    public static final String PROP_STATE_CACHE = "tycho.resolver.stateCache";
+
+    public static final String STATE_CACHE_PATH = ".cache/tycho-states";
+
+    private static final int MAX_CACHED_STATES = 4;
+
+    /**
+     * Least recently used persisted states beyond this number are deleted.
+     */
+    static final int MAX_PERSISTED_STATES = 8;
+
+    /**
+     * Platform properties that affect target platform part of the state.
+     */
+    private static final String[] STATE_PROPERTIES = { PlatformPropertiesUtils.OSGI_OS, PlatformPropertiesUtils.OSGI_WS,
+        PlatformPropertiesUtils.OSGI_ARCH, PlatformPropertiesUtils.OSGI_NL, Constants.FRAMEWORK_SYSTEMPACKAGES,
+        Constants.FRAMEWORK_EXECUTIONENVIRONMENT, org.eclipse.osgi.framework.internal.core.Constants.OSGI_RESOLVER_MODE };
+
     private static StateObjectFactory factory = StateObjectFactory.defaultFactory;
 
     @Requirement
@@ -44,12 +77,38 @@ public class EquinoxResolver
     @Requirement
     private Logger logger;
 
+    private File stateCacheDir;
+
+    private final Map<String, State> platformStates = new LinkedHashMap<String, State>( 8, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, State> eldest )
+        {
+            return size() > MAX_CACHED_STATES;
+        }
+    };
+
+    public void setLocationRepository( File basedir )
+    {
+        this.stateCacheDir = new File( basedir, STATE_CACHE_PATH );
+    }
+
     public State newResolvedState( MavenProject project, TargetPlatform platform )
         throws BundleException
     {
         Properties properties = getPlatformProperties( project );
 
-        State state = newState( platform, properties );
+        State state;
+        if ( Boolean.parseBoolean( properties.getProperty( PROP_STATE_CACHE ) ) )
+        {
+            state = newStateFromPlatformState( platform, properties );
+        }
+        else
+        {
+            state = newState( platform, properties );
+        }
 
         resolveState( state );
 
@@ -134,6 +193,68 @@ public class EquinoxResolver
 
     protected State newState( TargetPlatform platform, Properties properties )
         throws BundleException
+    {
+        List<File> platformBundles = new ArrayList<File>();
+        List<File> projects = new ArrayList<File>();
+        getBundleLocations( platform, platformBundles, projects );
+
+        State state = newPlatformState( platformBundles, properties );
+
+        long id = state.getHighestBundleId() + 1;
+
+        // make sure reactor projects override anything from target platform
+        // that has the same bundle symbolic name
+        for ( File location : projects )
+        {
+            addBundle( state, id++, location, true );
+        }
+        return state;
+    }
+
+    /**
+     * Same as {@link #newState(TargetPlatform, Properties)}, but target platform bundles are taken from a copy of
+     * cached state.
+     */
+    protected State newStateFromPlatformState( TargetPlatform platform, Properties properties )
+        throws BundleException
+    {
+        List<File> platformBundles = new ArrayList<File>();
+        List<File> projects = new ArrayList<File>();
+        getBundleLocations( platform, platformBundles, projects );
+
+        State state = factory.createState( getPlatformState( platformBundles, properties ) );
+
+        // copies have no resolver, take the one of a new state
+        state.setResolver( factory.createState( true ).getResolver() );
+
+        state.setPlatformProperties( properties );
+
+        long id = state.getHighestBundleId() + 1;
+
+        for ( File location : projects )
+        {
+            addBundle( state, id++, location, true );
+        }
+        return state;
+    }
+
+    private void getBundleLocations( TargetPlatform platform, List<File> platformBundles, List<File> projects )
+    {
+        for ( ArtifactDescription artifact : platform.getArtifacts( TychoProject.ECLIPSE_PLUGIN ) )
+        {
+            if ( artifact.getMavenProject() != null )
+            {
+                projects.add( artifact.getLocation() );
+            }
+            else
+            {
+                platformBundles.add( artifact.getLocation() );
+            }
+        }
+    }
+
+    private State newPlatformState( List<File> platformBundles, Properties properties )
+        throws BundleException
     {
         State state = factory.createState( true );
 
@@ -144,27 +265,177 @@ public class EquinoxResolver
 
         long id = 1;
 
-        // make sure reactor projects override anything from target platform
-        // that has the same bundle symbolic name
-        ArrayList<ArtifactDescription> projects = new ArrayList<ArtifactDescription>();
-        for ( ArtifactDescription artifact : platform.getArtifacts( TychoProject.ECLIPSE_PLUGIN ) )
+        for ( File location : platformBundles )
         {
-            if ( artifact.getMavenProject() != null )
+            addBundle( state, id++, location, false );
+        }
+        return state;
+    }
+
+    private synchronized State getPlatformState( List<File> platformBundles, Properties properties )
+        throws BundleException
+    {
+        String fingerprint = getFingerprint( platformBundles, properties );
+
+        State state = platformStates.get( fingerprint );
+        if ( state != null )
+        {
+            logger.debug( "Reusing target platform OSGi state " + fingerprint );
+            return state;
+        }
+
+        File stateDir = stateCacheDir != null ? new File( stateCacheDir, fingerprint ) : null;
+
+        if ( stateDir != null && stateDir.isDirectory() )
+        {
+            try
             {
-                projects.add( artifact );
+                // copy to avoid lazy loading from files other builds may replace
+                state = factory.createState( factory.readState( stateDir ) );
+                stateDir.setLastModified( System.currentTimeMillis() );
+                logger.debug( "Loaded target platform OSGi state from " + stateDir );
             }
-            else
+            catch ( IOException e )
+            {
+                logger.debug( "Could not read target platform OSGi state from " + stateDir + ": " + e.getMessage() );
+                deletePlatformState( stateDir );
+            }
+            catch ( RuntimeException e )
             {
-                addBundle( state, id++, artifact.getLocation(), false );
+                // truncated or partially written by a crashed build
+                logger.debug( "Could not read target platform OSGi state from " + stateDir + ": " + e.toString() );
+                deletePlatformState( stateDir );
             }
         }
-        for ( ArtifactDescription artifact : projects )
+
+        if ( state == null )
         {
-            addBundle( state, id++, artifact.getLocation(), true );
+            state = newPlatformState( platformBundles, properties );
+
+            if ( stateDir != null )
+            {
+                writePlatformState( state, stateDir );
+                prunePlatformStates();
+            }
         }
+
+        platformStates.put( fingerprint, state );
+
         return state;
     }
 
+    /**
+     * Discards states from memory, persisted states are kept.
+     */
+    synchronized void clearPlatformStates()
+    {
+        platformStates.clear();
+    }
+
+    private void prunePlatformStates()
+    {
+        File[] stateDirs = stateCacheDir.listFiles();
+        if ( stateDirs == null || stateDirs.length <= MAX_PERSISTED_STATES )
+        {
+            return;
+        }
+        Arrays.sort( stateDirs, new Comparator<File>()
+        {
+            public int compare( File a, File b )
+            {
+                long diff = b.lastModified() - a.lastModified();
+                return diff > 0 ? 1 : ( diff < 0 ? -1 : 0 );
+            }
+        } );
+        for ( int i = MAX_PERSISTED_STATES; i < stateDirs.length; i++ )
+        {
+            deletePlatformState( stateDirs[i] );
+        }
+    }
+
+    private void deletePlatformState( File stateDir )
+    {
+        try
+        {
+            FileUtils.deleteDirectory( stateDir );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Could not delete target platform OSGi state " + stateDir + ": " + e.getMessage() );
+        }
+    }
+
+    private void writePlatformState( State state, File stateDir )
+    {
+        File tmpDir = new File( stateDir.getParentFile(), stateDir.getName() + "." + System.nanoTime() + ".tmp" );
+        try
+        {
+            tmpDir.mkdirs();
+            factory.writeState( state, tmpDir );
+            if ( !tmpDir.renameTo( stateDir ) )
+            {
+                // another build has written the same state concurrently
+                FileUtils.deleteDirectory( tmpDir );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Could not write target platform OSGi state to " + stateDir + ": " + e.getMessage() );
+        }
+    }
+
+    private String getFingerprint( List<File> platformBundles, Properties properties )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( "MD5" );
+            for ( String key : STATE_PROPERTIES )
+            {
+                digest.update( ( key + "=" + properties.getProperty( key ) + "\n" ).getBytes( "UTF-8" ) );
+            }
+            for ( File location : platformBundles )
+            {
+                File manifest = getManifestFile( location );
+                String entry = location.getAbsolutePath() + ":" + manifest.length() + ":" + manifest.lastModified();
+                digest.update( ( entry + "\n" ).getBytes( "UTF-8" ) );
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for ( byte b : digest.digest() )
+            {
+                sb.append( Integer.toHexString( ( b & 0xff ) | 0x100 ).substring( 1 ) );
+            }
+            return sb.toString();
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * File the bundle manifest is read from, the bundle itself unless it is a directory.
+     */
+    private static File getManifestFile( File location )
+    {
+        if ( !location.isDirectory() )
+        {
+            return location;
+        }
+        File manifest = new File( location, JarFile.MANIFEST_NAME );
+        if ( !manifest.isFile() )
+        {
+            // manifest is generated from plugin.xml or fragment.xml
+            File pluginXml = new File( location, "plugin.xml" );
+            manifest = pluginXml.isFile() ? pluginXml : new File( location, "fragment.xml" );
+        }
+        return manifest;
+    }
+
     public void addBundle( State state, long id, File bundleLocation, boolean override )
         throws BundleException
     {
@@ -0,0 +1,376 @@
+package org.codehaus.tycho.osgitools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.jar.Manifest;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Persistent index of bundle jar manifests, shared by all builds that use the same local repository.
+ * <p>
+ * Index file is an append-only sequence of records keyed by (path, size, lastModified). Only record offsets are kept
+ * in memory, manifest bytes are read from disk on demand. Records of changed or deleted jars become stale and are
+ * dropped when the index is compacted on open. Records are appended under an exclusive file lock.
+ */
+public class ManifestIndex
+{
+    private static final int MAGIC = 0x54594d46; // TYMF
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_LENGTH = 8;
+
+    private static final int NOT_A_BUNDLE = -1;
+
+    private static final int MAX_MANIFEST_LENGTH = 4 * 1024 * 1024;
+
+    /** file locks are held by the JVM, threads using different index instances must not overlap */
+    private static final Object FILE_LOCK = new Object();
+
+    private final File indexFile;
+
+    private Map<String, Record> records;
+
+    private int staleRecords;
+
+    private static class Record
+    {
+        final long length;
+
+        final long lastModified;
+
+        final long offset;
+
+        final int manifestLength;
+
+        Record( long length, long lastModified, long offset, int manifestLength )
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.offset = offset;
+            this.manifestLength = manifestLength;
+        }
+
+        boolean isCurrent( File file )
+        {
+            return length == file.length() && lastModified == file.lastModified();
+        }
+    }
+
+    /**
+     * Result of index lookup, manifest is <code>null</code> for jars that are known not to be bundles.
+     */
+    public static class IndexedManifest
+    {
+        private final Manifest manifest;
+
+        IndexedManifest( Manifest manifest )
+        {
+            this.manifest = manifest;
+        }
+
+        public Manifest getManifest()
+        {
+            return manifest;
+        }
+    }
+
+    public ManifestIndex( File indexFile )
+    {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Returns indexed manifest of the file or <code>null</code> if the file is not indexed or was changed since it
+     * was indexed.
+     */
+    public synchronized IndexedManifest get( File file )
+        throws IOException
+    {
+        Record record = getRecords().get( file.getAbsolutePath() );
+        if ( record == null || !record.isCurrent( file ) )
+        {
+            return null;
+        }
+
+        if ( record.manifestLength == NOT_A_BUNDLE )
+        {
+            return new IndexedManifest( null );
+        }
+
+        byte[] bytes = new byte[record.manifestLength];
+        RandomAccessFile raf = new RandomAccessFile( indexFile, "r" );
+        try
+        {
+            raf.seek( record.offset );
+            // the index may have been compacted by another build, make sure the record is still there
+            if ( !file.getAbsolutePath().equals( raf.readUTF() ) || raf.readLong() != record.length
+                || raf.readLong() != record.lastModified || raf.readInt() != record.manifestLength )
+            {
+                records = null;
+                return null;
+            }
+            raf.readFully( bytes );
+        }
+        catch ( EOFException e )
+        {
+            records = null;
+            return null;
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        return new IndexedManifest( new Manifest( new ByteArrayInputStream( bytes ) ) );
+    }
+
+    public synchronized void put( File file, Manifest manifest )
+        throws IOException
+    {
+        byte[] bytes = null;
+        if ( manifest != null )
+        {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            manifest.write( buf );
+            bytes = buf.toByteArray();
+        }
+
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        Map<String, Record> records = getRecords();
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( buf );
+        out.writeUTF( path );
+        out.writeLong( length );
+        out.writeLong( lastModified );
+        out.writeInt( bytes != null ? bytes.length : NOT_A_BUNDLE );
+        if ( bytes != null )
+        {
+            out.write( bytes );
+        }
+        out.flush();
+
+        indexFile.getParentFile().mkdirs();
+        long offset;
+        synchronized ( FILE_LOCK )
+        {
+            FileOutputStream os = new FileOutputStream( indexFile, true );
+            try
+            {
+                // other builds may create the index or append to it at the same time
+                FileLock lock = os.getChannel().lock();
+                try
+                {
+                    offset = os.getChannel().size();
+                    if ( offset < HEADER_LENGTH )
+                    {
+                        os.getChannel().truncate( 0 );
+                        os.write( newHeader() );
+                        offset = HEADER_LENGTH;
+                    }
+                    os.write( buf.toByteArray() );
+                }
+                finally
+                {
+                    lock.release();
+                }
+            }
+            finally
+            {
+                os.close();
+            }
+        }
+
+        Record record =
+            new Record( length, lastModified, offset, bytes != null ? bytes.length : NOT_A_BUNDLE );
+        if ( records.put( path, record ) != null )
+        {
+            staleRecords++;
+        }
+    }
+
+    public synchronized int size()
+        throws IOException
+    {
+        return getRecords().size();
+    }
+
+    private Map<String, Record> getRecords()
+        throws IOException
+    {
+        if ( records == null )
+        {
+            records = new HashMap<String, Record>();
+            staleRecords = 0;
+            if ( indexFile.canRead() )
+            {
+                read();
+                for ( Iterator<String> paths = records.keySet().iterator(); paths.hasNext(); )
+                {
+                    if ( !new File( paths.next() ).exists() )
+                    {
+                        paths.remove();
+                        staleRecords++;
+                    }
+                }
+                if ( staleRecords > records.size() )
+                {
+                    compact();
+                }
+            }
+        }
+        return records;
+    }
+
+    private void read()
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) );
+        try
+        {
+            if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION )
+            {
+                // unknown format, start from scratch
+                indexFile.delete();
+                return;
+            }
+            long position = HEADER_LENGTH;
+            while ( true )
+            {
+                long offset = position;
+                String path = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                int manifestLength = in.readInt();
+                if ( manifestLength < NOT_A_BUNDLE || manifestLength > MAX_MANIFEST_LENGTH )
+                {
+                    // corrupted record, ignore the rest of the file
+                    break;
+                }
+                // utf length prefix, two longs and an int
+                position += 2 + utfLength( path ) + 8 + 8 + 4;
+                if ( manifestLength > 0 )
+                {
+                    in.readFully( new byte[manifestLength] );
+                }
+                position += Math.max( manifestLength, 0 );
+                if ( records.put( path, new Record( length, lastModified, offset, manifestLength ) ) != null )
+                {
+                    staleRecords++;
+                }
+            }
+        }
+        catch ( EOFException e )
+        {
+            // end of index or partially written last record
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    private void compact()
+        throws IOException
+    {
+        File tmp = new File( indexFile.getParentFile(), indexFile.getName() + ".tmp" );
+        Map<String, Record> compacted = new HashMap<String, Record>();
+        RandomAccessFile raf = new RandomAccessFile( indexFile, "r" );
+        DataOutputStream out = new DataOutputStream( new FileOutputStream( tmp ) );
+        try
+        {
+            out.write( newHeader() );
+            for ( Map.Entry<String, Record> entry : records.entrySet() )
+            {
+                Record record = entry.getValue();
+                long offset = out.size();
+                out.writeUTF( entry.getKey() );
+                out.writeLong( record.length );
+                out.writeLong( record.lastModified );
+                out.writeInt( record.manifestLength );
+                if ( record.manifestLength > 0 )
+                {
+                    byte[] bytes = new byte[record.manifestLength];
+                    raf.seek( record.offset + 2 + utfLength( entry.getKey() ) + 8 + 8 + 4 );
+                    raf.readFully( bytes );
+                    out.write( bytes );
+                }
+                compacted.put( entry.getKey(), new Record( record.length, record.lastModified, offset,
+                                                           record.manifestLength ) );
+            }
+        }
+        finally
+        {
+            raf.close();
+            out.close();
+        }
+
+        if ( indexFile.delete() && tmp.renameTo( indexFile ) )
+        {
+            records = compacted;
+            staleRecords = 0;
+        }
+        else
+        {
+            // another build is using the index, try again next time
+            tmp.delete();
+            records.clear();
+            staleRecords = 0;
+            if ( indexFile.canRead() )
+            {
+                read();
+            }
+        }
+    }
+
+    private static byte[] newHeader()
+        throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( buf );
+        out.writeInt( MAGIC );
+        out.writeInt( FORMAT_VERSION );
+        out.flush();
+        return buf.toByteArray();
+    }
+
+    private static int utfLength( String str )
+    {
+        int length = 0;
+        for ( int i = 0; i < str.length(); i++ )
+        {
+            char c = str.charAt( i );
+            if ( c >= 0x0001 && c <= 0x007F )
+            {
+                length++;
+            }
+            else if ( c > 0x07FF )
+            {
+                length += 3;
+            }
+            else
+            {
+                length += 2;
+            }
+        }
+        return length;
+    }
+}
@@ -46,6 +46,11 @@ public abstract class AbstractTargetPlatformResolver
         }
 
         platform.addSite( parentDir );
+
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( "Target platform artifact caches " + DefaultTargetPlatform.getCacheStatistics() );
+        }
     }
 
 }
@@ -4,14 +4,13 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.WeakHashMap;
 
 import org.apache.maven.project.MavenProject;
 import org.codehaus.tycho.ArtifactDescription;
@@ -19,6 +18,7 @@ import org.codehaus.tycho.ArtifactKey;
 import org.codehaus.tycho.TargetPlatform;
 import org.codehaus.tycho.TychoProject;
 import org.codehaus.tycho.osgitools.DefaultArtifactDescription;
+import org.codehaus.tycho.utils.WeakInterner;
 import org.osgi.framework.Version;
 
 public class DefaultTargetPlatform
@@ -26,27 +26,49 @@ public class DefaultTargetPlatform
 {
     private static final Version VERSION_0_0_0 = new Version( "0.0.0" );
 
-    private static final WeakHashMap<ArtifactKey, ArtifactKey> KEY_CACHE = new WeakHashMap<ArtifactKey, ArtifactKey>();
+    /**
+     * Highest version first
+     */
+    private static final Comparator<Version> DESCENDING = new Comparator<Version>()
+    {
+        public int compare( Version o1, Version o2 )
+        {
+            return -o1.compareTo( o2 );
+        };
+    };
 
-    private static final WeakHashMap<ArtifactKey, ArtifactDescription> ARTIFACT_CACHE =
-        new WeakHashMap<ArtifactKey, ArtifactDescription>();
+    /**
+     * Artifact keys and descriptions are shared by target platforms of all projects, possibly built concurrently
+     */
+    private static final WeakInterner<ArtifactKey, ArtifactKey> KEY_CACHE = new WeakInterner<ArtifactKey, ArtifactKey>();
+
+    private static final WeakInterner<ArtifactKey, ArtifactDescription> ARTIFACT_CACHE =
+        new WeakInterner<ArtifactKey, ArtifactDescription>();
 
     protected Map<ArtifactKey, ArtifactDescription> artifacts = new LinkedHashMap<ArtifactKey, ArtifactDescription>();
 
     protected Map<File, ArtifactDescription> locations = new LinkedHashMap<File, ArtifactDescription>();
 
+    /**
+     * Artifacts by type, in the order they were added
+     */
+    private final Map<String, Map<ArtifactKey, ArtifactDescription>> typeIndex =
+        new HashMap<String, Map<ArtifactKey, ArtifactDescription>>();
+
+    /**
+     * Artifacts by type and id, highest version first
+     */
+    private final Map<String, Map<String, SortedMap<Version, ArtifactDescription>>> idIndex =
+        new HashMap<String, Map<String, SortedMap<Version, ArtifactDescription>>>();
+
     public List<ArtifactDescription> getArtifacts( String type )
     {
-        ArrayList<ArtifactDescription> result = new ArrayList<ArtifactDescription>();
-        for ( Map.Entry<ArtifactKey, ArtifactDescription> entry : artifacts.entrySet() )
+        Map<ArtifactKey, ArtifactDescription> typeArtifacts = typeIndex.get( type );
+        if ( typeArtifacts == null )
         {
-            if ( type.equals( entry.getKey().getType() ) )
-            {
-                result.add( entry.getValue() );
-            }
+            return new ArrayList<ArtifactDescription>();
         }
-
-        return result;
+        return new ArrayList<ArtifactDescription>( typeArtifacts.values() );
     }
 
     public void addArtifactFile( ArtifactKey key, File location )
@@ -56,17 +78,7 @@ public class DefaultTargetPlatform
 
     public void addArtifact( ArtifactDescription artifact )
     {
-        ArtifactKey key = normalizeKey( artifact.getKey() );
-
-        ArtifactKey cachedKey = KEY_CACHE.get( key );
-        if ( cachedKey != null )
-        {
-            key = cachedKey;
-        }
-        else
-        {
-            KEY_CACHE.put( key, key );
-        }
+        ArtifactKey key = WeakInterner.intern( KEY_CACHE, normalizeKey( artifact.getKey() ) );
 
         artifact = normalizeArtifact( artifact );
 
@@ -81,10 +93,51 @@ public class DefaultTargetPlatform
             ARTIFACT_CACHE.put( key, artifact );
         }
 
-        artifacts.put( key, artifact );
+        putArtifact( key, artifact );
         locations.put( artifact.getLocation(), artifact );
     }
 
+    /**
+     * Adds artifact with already normalized key to the artifact map and lookup indexes.
+     */
+    protected void putArtifact( ArtifactKey key, ArtifactDescription artifact )
+    {
+        artifacts.put( key, artifact );
+
+        Map<ArtifactKey, ArtifactDescription> typeArtifacts = typeIndex.get( key.getType() );
+        if ( typeArtifacts == null )
+        {
+            typeArtifacts = new LinkedHashMap<ArtifactKey, ArtifactDescription>();
+            typeIndex.put( key.getType(), typeArtifacts );
+        }
+        typeArtifacts.put( key, artifact );
+
+        Version version;
+        try
+        {
+            version = Version.parseVersion( key.getVersion() );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // not an OSGi version, cannot be matched by version
+            return;
+        }
+
+        Map<String, SortedMap<Version, ArtifactDescription>> ids = idIndex.get( key.getType() );
+        if ( ids == null )
+        {
+            ids = new HashMap<String, SortedMap<Version, ArtifactDescription>>();
+            idIndex.put( key.getType(), ids );
+        }
+        SortedMap<Version, ArtifactDescription> versions = ids.get( key.getId() );
+        if ( versions == null )
+        {
+            versions = new TreeMap<Version, ArtifactDescription>( DESCENDING );
+            ids.put( key.getId(), versions );
+        }
+        versions.put( version, artifact );
+    }
+
     private ArtifactDescription normalizeArtifact( ArtifactDescription artifact )
     {
         try
@@ -118,6 +171,14 @@ public class DefaultTargetPlatform
         return a != null ? a.equals( b ) : b == null;
     }
 
+    /**
+     * Returns hit rate and size of artifact key and description caches shared by all target platforms.
+     */
+    public static String getCacheStatistics()
+    {
+        return "keys: " + KEY_CACHE + "; artifacts: " + ARTIFACT_CACHE;
+    }
+
     /**
      * @deprecated get rid of me, I am not used for anything
      */
@@ -146,26 +207,10 @@ public class DefaultTargetPlatform
             return null;
         }
 
-        // features with matching id, sorted by version, highest version first
-        SortedMap<Version, ArtifactDescription> relevantArtifacts =
-            new TreeMap<Version, ArtifactDescription>( new Comparator<Version>()
-            {
-                public int compare( Version o1, Version o2 )
-                {
-                    return -o1.compareTo( o2 );
-                };
-            } );
-
-        for ( Map.Entry<ArtifactKey, ArtifactDescription> entry : this.artifacts.entrySet() )
-        {
-            ArtifactKey key = entry.getKey();
-            if ( type.equals( key.getType() ) && id.equals( key.getId() ) )
-            {
-                relevantArtifacts.put( Version.parseVersion( key.getVersion() ), entry.getValue() );
-            }
-        }
+        // artifacts with matching id, sorted by version, highest version first
+        SortedMap<Version, ArtifactDescription> relevantArtifacts = getVersions( type, id );
 
-        if ( relevantArtifacts.isEmpty() )
+        if ( relevantArtifacts == null || relevantArtifacts.isEmpty() )
         {
             return null;
         }
@@ -199,6 +244,12 @@ public class DefaultTargetPlatform
         return relevantArtifacts.get( parsedVersion );
     }
 
+    private SortedMap<Version, ArtifactDescription> getVersions( String type, String id )
+    {
+        Map<String, SortedMap<Version, ArtifactDescription>> ids = idIndex.get( type );
+        return ids != null ? ids.get( id ) : null;
+    }
+
     private static boolean baseVersionEquals( Version v1, Version v2 )
     {
         return v1.getMajor() == v2.getMajor() && v1.getMinor() == v2.getMinor() && v1.getMicro() == v2.getMicro();
@@ -236,14 +287,25 @@ public class DefaultTargetPlatform
 
     public void removeAll( String type, String id )
     {
-        Iterator<Entry<ArtifactKey, ArtifactDescription>> iter = artifacts.entrySet().iterator();
-        while ( iter.hasNext() )
+        Map<ArtifactKey, ArtifactDescription> typeArtifacts = typeIndex.get( type );
+        if ( typeArtifacts != null )
         {
-            ArtifactKey key = iter.next().getKey();
-            if ( key.getType().equals( type ) && key.getId().equals( id ) )
+            Iterator<ArtifactKey> iter = typeArtifacts.keySet().iterator();
+            while ( iter.hasNext() )
             {
-                iter.remove();
+                ArtifactKey key = iter.next();
+                if ( key.getId().equals( id ) )
+                {
+                    iter.remove();
+                    artifacts.remove( key );
+                }
             }
         }
+
+        Map<String, SortedMap<Version, ArtifactDescription>> ids = idIndex.get( type );
+        if ( ids != null )
+        {
+            ids.remove( id );
+        }
     }
 }
@@ -3,6 +3,8 @@ package org.codehaus.tycho.osgitools.targetplatform;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.codehaus.tycho.ArtifactDescription;
+import org.codehaus.tycho.ArtifactKey;
 import org.codehaus.tycho.TargetEnvironment;
 import org.codehaus.tycho.TargetPlatform;
 
@@ -15,7 +17,10 @@ public class MultiEnvironmentTargetPlatform
     {
         platforms.put( environment, platform );
 
-        artifacts.putAll( platform.artifacts );
+        for ( Map.Entry<ArtifactKey, ArtifactDescription> entry : platform.artifacts.entrySet() )
+        {
+            putArtifact( entry.getKey(), entry.getValue() );
+        }
         locations.putAll( platform.locations );
     }
 
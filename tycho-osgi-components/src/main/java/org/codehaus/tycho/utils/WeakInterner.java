@@ -0,0 +1,147 @@
+package org.codehaus.tycho.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe map with weakly referenced keys and values, meant for canonicalization of immutable objects shared by
+ * many target platforms. Entries are spread over independently locked segments, so concurrent reactor builds do not
+ * serialize on a single lock.
+ */
+public class WeakInterner<K, V>
+{
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class Segment<K, V>
+    {
+        final Map<K, WeakReference<V>> map = new WeakHashMap<K, WeakReference<V>>();
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public WeakInterner()
+    {
+        segments = new Segment[SEGMENTS];
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            segments[i] = new Segment<K, V>();
+        }
+    }
+
+    /**
+     * Returns canonical instance equal to the provided one, registering provided instance if there is none yet.
+     */
+    public static <T> T intern( WeakInterner<T, T> interner, T value )
+    {
+        T result = interner.putIfAbsent( value, value );
+        return result != null ? result : value;
+    }
+
+    public V get( K key )
+    {
+        Segment<K, V> segment = getSegment( key );
+        V value;
+        synchronized ( segment )
+        {
+            value = dereference( segment.map.get( key ) );
+        }
+        count( value != null );
+        return value;
+    }
+
+    public void put( K key, V value )
+    {
+        Segment<K, V> segment = getSegment( key );
+        synchronized ( segment )
+        {
+            segment.map.put( key, new WeakReference<V>( value ) );
+        }
+    }
+
+    /**
+     * Associates the value with the key unless the key already has a value.
+     *
+     * @return previous value of the key or <code>null</code> if the provided value was associated with the key
+     */
+    public V putIfAbsent( K key, V value )
+    {
+        Segment<K, V> segment = getSegment( key );
+        V result;
+        synchronized ( segment )
+        {
+            result = dereference( segment.map.get( key ) );
+            if ( result == null )
+            {
+                segment.map.put( key, new WeakReference<V>( value ) );
+            }
+        }
+        count( result != null );
+        return result;
+    }
+
+    /**
+     * Number of entries, including entries with values reclaimed by garbage collector but not yet expunged.
+     */
+    public int size()
+    {
+        int size = 0;
+        for ( Segment<K, V> segment : segments )
+        {
+            synchronized ( segment )
+            {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        long hits = this.hits.get();
+        long total = hits + misses.get();
+        long hitRate = total > 0 ? hits * 100 / total : 0;
+        return "size=" + size() + ", hits=" + hits + ", misses=" + misses.get() + ", hitRate=" + hitRate + "%";
+    }
+
+    private void count( boolean hit )
+    {
+        if ( hit )
+        {
+            hits.incrementAndGet();
+        }
+        else
+        {
+            misses.incrementAndGet();
+        }
+    }
+
+    private Segment<K, V> getSegment( K key )
+    {
+        int hash = key.hashCode();
+        // mix in high bits, hash codes of similar keys often differ in high bits only
+        return segments[( hash ^ ( hash >>> 16 ) ) & ( SEGMENTS - 1 )];
+    }
+
+    private static <V> V dereference( WeakReference<V> ref )
+    {
+        return ref != null ? ref.get() : null;
+    }
+}
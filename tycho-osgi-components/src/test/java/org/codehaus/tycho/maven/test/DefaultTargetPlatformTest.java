@@ -2,7 +2,9 @@ package org.codehaus.tycho.maven.test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
+import org.codehaus.tycho.ArtifactDescription;
 import org.codehaus.tycho.ArtifactKey;
 import org.codehaus.tycho.osgitools.targetplatform.DefaultTargetPlatform;
 import org.junit.Assert;
@@ -53,6 +55,29 @@ public class DefaultTargetPlatformTest
         Assert.assertNull( tp.getArtifact( type, id, "9.9.9.qualifier" ) );
     }
 
+    @Test
+    public void testRemoveAll()
+    {
+        DefaultTargetPlatform tp = new DefaultTargetPlatform();
+
+        addArtifact( tp, "foo", "a", "1.0.0" );
+        addArtifact( tp, "foo", "b", "1.0.0" );
+        addArtifact( tp, "foo", "a", "2.0.0" );
+        addArtifact( tp, "bar", "a", "1.0.0" );
+
+        Assert.assertEquals( 3, tp.getArtifacts( "foo" ).size() );
+        Assert.assertEquals( "2.0.0", tp.getArtifact( "foo", "a", null ).getKey().getVersion() );
+
+        tp.removeAll( "foo", "a" );
+
+        List<ArtifactDescription> artifacts = tp.getArtifacts( "foo" );
+        Assert.assertEquals( 1, artifacts.size() );
+        Assert.assertEquals( "b", artifacts.get( 0 ).getKey().getId() );
+        Assert.assertNull( tp.getArtifact( "foo", "a", null ) );
+        Assert.assertNull( tp.getArtifact( new ArtifactKey( "foo", "a", "1.0.0" ) ) );
+        Assert.assertNotNull( tp.getArtifact( "bar", "a", "1.0.0" ) );
+    }
+
     private void addArtifact( DefaultTargetPlatform tp, String type, String id, String version )
     {
         ArtifactKey key = new ArtifactKey( type, id, version );
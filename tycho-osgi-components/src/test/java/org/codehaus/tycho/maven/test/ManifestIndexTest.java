@@ -0,0 +1,191 @@
+package org.codehaus.tycho.maven.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.osgitools.DefaultBundleReader;
+import org.codehaus.tycho.osgitools.ManifestIndex;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManifestIndexTest
+{
+    private File basedir;
+
+    private File indexFile;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        basedir = new File( "target/manifestindex" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        basedir.mkdirs();
+        indexFile = new File( basedir, "index/manifests.idx" );
+    }
+
+    @Test
+    public void testPersistence()
+        throws IOException
+    {
+        File bundle = newFile( "bundle.jar", "bundle" );
+        File library = newFile( "library.jar", "library" );
+
+        ManifestIndex index = new ManifestIndex( indexFile );
+        Assert.assertNull( index.get( bundle ) );
+
+        index.put( bundle, newManifest( "bundle" ) );
+        index.put( library, null );
+
+        index = new ManifestIndex( indexFile );
+        Assert.assertEquals( 2, index.size() );
+        Assert.assertEquals( "bundle", getSymbolicName( index.get( bundle ).getManifest() ) );
+        Assert.assertNotNull( index.get( library ) );
+        Assert.assertNull( index.get( library ).getManifest() );
+    }
+
+    @Test
+    public void testInvalidation()
+        throws IOException
+    {
+        File bundle = newFile( "bundle.jar", "bundle" );
+
+        ManifestIndex index = new ManifestIndex( indexFile );
+        index.put( bundle, newManifest( "bundle" ) );
+
+        FileUtils.fileWrite( bundle.getAbsolutePath(), "changed bundle" );
+        Assert.assertNull( index.get( bundle ) );
+
+        index.put( bundle, newManifest( "changed" ) );
+
+        index = new ManifestIndex( indexFile );
+        Assert.assertEquals( 1, index.size() );
+        Assert.assertEquals( "changed", getSymbolicName( index.get( bundle ).getManifest() ) );
+    }
+
+    @Test
+    public void testCorruptedIndex()
+        throws IOException
+    {
+        File bundle = newFile( "bundle.jar", "bundle" );
+
+        ManifestIndex index = new ManifestIndex( indexFile );
+        index.put( bundle, newManifest( "bundle" ) );
+
+        // simulate partially written record
+        String content = FileUtils.fileRead( indexFile, "ISO-8859-1" );
+        FileUtils.fileWrite( indexFile.getAbsolutePath(), "ISO-8859-1", content + content.substring( 8, 20 ) );
+
+        index = new ManifestIndex( indexFile );
+        Assert.assertEquals( "bundle", getSymbolicName( index.get( bundle ).getManifest() ) );
+    }
+
+    @Test
+    public void testDeletedBundle()
+        throws IOException
+    {
+        File bundle = newFile( "bundle.jar", "bundle" );
+        File deleted = newFile( "deleted.jar", "deleted" );
+        File removed = newFile( "removed.jar", "removed" );
+
+        ManifestIndex index = new ManifestIndex( indexFile );
+        index.put( bundle, newManifest( "bundle" ) );
+        index.put( deleted, newManifest( "deleted" ) );
+        index.put( removed, null );
+        long length = indexFile.length();
+
+        // more stale than current records, the index is compacted on open
+        deleted.delete();
+        removed.delete();
+
+        index = new ManifestIndex( indexFile );
+        Assert.assertEquals( 1, index.size() );
+        Assert.assertTrue( indexFile.length() < length );
+    }
+
+    @Test
+    public void testConcurrentAppend()
+        throws Exception
+    {
+        final File[] bundles = new File[8];
+        Thread[] threads = new Thread[bundles.length];
+        final IOException[] errors = new IOException[bundles.length];
+        for ( int i = 0; i < bundles.length; i++ )
+        {
+            final int n = i;
+            bundles[n] = newFile( "bundle" + n + ".jar", "bundle" + n );
+            threads[n] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        // separate instances, same as separate builds
+                        new ManifestIndex( indexFile ).put( bundles[n], newManifest( "bundle" + n ) );
+                    }
+                    catch ( IOException e )
+                    {
+                        errors[n] = e;
+                    }
+                }
+            };
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        ManifestIndex index = new ManifestIndex( indexFile );
+        for ( int i = 0; i < bundles.length; i++ )
+        {
+            Assert.assertNull( errors[i] );
+            Assert.assertEquals( "bundle" + i, getSymbolicName( index.get( bundles[i] ).getManifest() ) );
+        }
+    }
+
+    @Test
+    public void testBrokenJarNotIndexed()
+        throws IOException
+    {
+        File bundle = newFile( "broken.jar", "not a zip file" );
+
+        DefaultBundleReader reader = new DefaultBundleReader();
+        reader.enableLogging( new ConsoleLogger( Logger.LEVEL_DISABLED, "test" ) );
+        reader.setLocationRepository( basedir );
+
+        Assert.assertNull( reader.loadManifest( bundle ) );
+        Assert.assertNull( new ManifestIndex( new File( basedir, DefaultBundleReader.MANIFEST_INDEX_PATH ) ).get( bundle ) );
+    }
+
+    private File newFile( String name, String content )
+        throws IOException
+    {
+        File file = new File( basedir, name );
+        FileUtils.fileWrite( file.getAbsolutePath(), content );
+        return file;
+    }
+
+    private static Manifest newManifest( String symbolicName )
+    {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        manifest.getMainAttributes().putValue( "Bundle-SymbolicName", symbolicName );
+        return manifest;
+    }
+
+    private static String getSymbolicName( Manifest manifest )
+    {
+        return manifest.getMainAttributes().getValue( "Bundle-SymbolicName" );
+    }
+}
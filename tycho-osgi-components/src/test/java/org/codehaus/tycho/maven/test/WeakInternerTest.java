@@ -0,0 +1,86 @@
+package org.codehaus.tycho.maven.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codehaus.tycho.ArtifactKey;
+import org.codehaus.tycho.utils.WeakInterner;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WeakInternerTest
+{
+    private static final int THREADS = 8;
+
+    private static final int KEYS = 2000;
+
+    @Test
+    public void testIntern()
+    {
+        WeakInterner<ArtifactKey, ArtifactKey> interner = new WeakInterner<ArtifactKey, ArtifactKey>();
+
+        ArtifactKey key = new ArtifactKey( "foo", "a", "1.0.0" );
+        Assert.assertSame( key, WeakInterner.intern( interner, key ) );
+        Assert.assertSame( key, WeakInterner.intern( interner, new ArtifactKey( "foo", "a", "1.0.0" ) ) );
+        Assert.assertEquals( 1, interner.getHits() );
+        Assert.assertEquals( 1, interner.getMisses() );
+    }
+
+    @Test
+    public void testConcurrentIntern()
+        throws Exception
+    {
+        final WeakInterner<ArtifactKey, ArtifactKey> interner = new WeakInterner<ArtifactKey, ArtifactKey>();
+        final CountDownLatch start = new CountDownLatch( 1 );
+
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        List<ArtifactKey[]> results = new ArrayList<ArtifactKey[]>();
+        try
+        {
+            List<Future<ArtifactKey[]>> futures = new ArrayList<Future<ArtifactKey[]>>();
+            for ( int t = 0; t < THREADS; t++ )
+            {
+                futures.add( executor.submit( new Callable<ArtifactKey[]>()
+                {
+                    public ArtifactKey[] call()
+                        throws Exception
+                    {
+                        start.await();
+                        ArtifactKey[] keys = new ArtifactKey[KEYS];
+                        for ( int i = 0; i < KEYS; i++ )
+                        {
+                            keys[i] = WeakInterner.intern( interner, new ArtifactKey( "foo", "id" + i, "1.0.0" ) );
+                        }
+                        return keys;
+                    }
+                } ) );
+            }
+            start.countDown();
+            for ( Future<ArtifactKey[]> future : futures )
+            {
+                results.add( future.get() );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        ArtifactKey[] first = results.get( 0 );
+        for ( ArtifactKey[] keys : results )
+        {
+            for ( int i = 0; i < KEYS; i++ )
+            {
+                Assert.assertSame( first[i], keys[i] );
+            }
+        }
+        Assert.assertEquals( KEYS, interner.size() );
+        Assert.assertEquals( KEYS, interner.getMisses() );
+        Assert.assertEquals( KEYS * ( THREADS - 1 ), interner.getHits() );
+    }
+}
@@ -0,0 +1,136 @@
+package org.codehaus.tycho.osgitools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionResult;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.TargetPlatform;
+import org.codehaus.tycho.TychoConstants;
+import org.codehaus.tycho.testing.AbstractTychoMojoTestCase;
+import org.codehaus.tycho.utils.MavenSessionUtils;
+import org.eclipse.osgi.service.resolver.BundleDescription;
+import org.eclipse.osgi.service.resolver.State;
+
+public class EquinoxResolverTest
+    extends AbstractTychoMojoTestCase
+{
+    private File cacheDir;
+
+    private EquinoxResolver resolver;
+
+    private MavenProject project;
+
+    private TargetPlatform platform;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        File basedir = getBasedir( "projects/exportpackage" );
+        MavenExecutionRequest request = newMavenExecutionRequest( new File( basedir, "pom.xml" ) );
+        request.getProjectBuildingRequest().setProcessPlugins( false );
+        MavenExecutionResult result = maven.execute( request );
+
+        Map<File, MavenProject> basedirMap = MavenSessionUtils.getBasedirMap( result.getTopologicallySortedProjects() );
+        project = basedirMap.get( new File( basedir, "bundle" ) );
+        platform = (TargetPlatform) project.getContextValue( TychoConstants.CTX_TARGET_PLATFORM );
+
+        Properties properties = (Properties) project.getContextValue( TychoConstants.CTX_MERGED_PROPERTIES );
+        properties.setProperty( EquinoxResolver.PROP_STATE_CACHE, "true" );
+
+        cacheDir = new File( "target/resolver-cache" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( cacheDir );
+
+        resolver = lookup( EquinoxResolver.class );
+        resolver.setLocationRepository( cacheDir );
+        resolver.clearPlatformStates();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        resolver.clearPlatformStates();
+        resolver = null;
+        project = null;
+        platform = null;
+        super.tearDown();
+    }
+
+    public void testCachedState()
+        throws Exception
+    {
+        assertResolved( resolver.newResolvedState( project, platform ) );
+
+        File[] states = getStateDirs();
+        assertEquals( 1, states.length );
+
+        // in memory
+        assertResolved( resolver.newResolvedState( project, platform ) );
+
+        // persisted
+        resolver.clearPlatformStates();
+        assertResolved( resolver.newResolvedState( project, platform ) );
+        assertEquals( 1, getStateDirs().length );
+    }
+
+    public void testCorruptCachedState()
+        throws Exception
+    {
+        assertResolved( resolver.newResolvedState( project, platform ) );
+
+        File stateDir = getStateDirs()[0];
+        for ( File file : stateDir.listFiles() )
+        {
+            FileOutputStream os = new FileOutputStream( file );
+            os.write( new byte[] { 1, 2, 3 } );
+            os.close();
+        }
+
+        resolver.clearPlatformStates();
+        assertResolved( resolver.newResolvedState( project, platform ) );
+
+        // rebuilt
+        resolver.clearPlatformStates();
+        assertResolved( resolver.newResolvedState( project, platform ) );
+    }
+
+    public void testPrunedStates()
+        throws Exception
+    {
+        File statesDir = new File( cacheDir, EquinoxResolver.STATE_CACHE_PATH );
+        for ( int i = 0; i < EquinoxResolver.MAX_PERSISTED_STATES; i++ )
+        {
+            File stateDir = new File( statesDir, "state" + i );
+            stateDir.mkdirs();
+            stateDir.setLastModified( System.currentTimeMillis() - ( i + 1 ) * 60000L );
+        }
+
+        assertResolved( resolver.newResolvedState( project, platform ) );
+
+        assertEquals( EquinoxResolver.MAX_PERSISTED_STATES, getStateDirs().length );
+        // least recently used
+        assertFalse( new File( statesDir, "state" + ( EquinoxResolver.MAX_PERSISTED_STATES - 1 ) ).exists() );
+        assertTrue( new File( statesDir, "state0" ).exists() );
+    }
+
+    private void assertResolved( State state )
+    {
+        BundleDescription bundle = state.getBundleByLocation( project.getBasedir().getAbsolutePath() );
+        assertNotNull( bundle );
+        assertTrue( bundle.isResolved() );
+    }
+
+    private File[] getStateDirs()
+    {
+        File[] states = new File( cacheDir, EquinoxResolver.STATE_CACHE_PATH ).listFiles();
+        return states != null ? states : new File[0];
+    }
+}
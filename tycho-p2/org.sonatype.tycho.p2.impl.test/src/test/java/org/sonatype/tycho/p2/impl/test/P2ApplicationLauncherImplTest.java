@@ -0,0 +1,92 @@
+package org.sonatype.tycho.p2.impl.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.tycho.p2.publisher.P2ApplicationLauncherImpl;
+
+public class P2ApplicationLauncherImplTest
+{
+    private static final String FEATURES_AND_BUNDLES_PUBLISHER =
+        "org.eclipse.equinox.p2.publisher.FeaturesAndBundlesPublisher";
+
+    private File repository;
+
+    @Before
+    public void initRepository()
+        throws Exception
+    {
+        repository = new File( "target/launcher/repository" ).getCanonicalFile();
+        delete( repository );
+    }
+
+    @Test
+    public void publisherInProcess()
+        throws Exception
+    {
+        String uri = repository.toURI().toString();
+        String[] args =
+            new String[] { "-metadataRepository", uri, "-artifactRepository", uri, "-bundles",
+                new File( "resources/generator/bundle" ).getCanonicalPath() };
+
+        int result = new P2ApplicationLauncherImpl().run( FEATURES_AND_BUNDLES_PUBLISHER, args );
+
+        Assert.assertEquals( 0, result );
+        File content = new File( repository, "content.xml" );
+        Assert.assertTrue( content.isFile() );
+        Assert.assertTrue( read( content ).contains( "org.sonatype.tycho.p2.impl.test.bundle" ) );
+    }
+
+    @Test
+    public void unknownApplication()
+        throws Exception
+    {
+        try
+        {
+            new P2ApplicationLauncherImpl().run( "org.sonatype.tycho.p2.impl.test.missing", new String[0] );
+            Assert.fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            Assert.assertTrue( e.getMessage().contains( "org.sonatype.tycho.p2.impl.test.missing" ) );
+        }
+    }
+
+    private static String read( File file )
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                sb.append( line ).append( '\n' );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return sb.toString();
+    }
+
+    private static void delete( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+}
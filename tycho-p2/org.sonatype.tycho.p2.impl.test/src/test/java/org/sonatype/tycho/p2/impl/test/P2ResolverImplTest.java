@@ -41,6 +41,34 @@ public class P2ResolverImplTest
         Assert.assertEquals( 2, result.getArtifacts().size() );
     }
 
+    @Test
+    public void sharedRepositoryCache()
+        throws Exception
+    {
+        P2RepositoryCache repositoryCache = new P2RepositoryCache();
+
+        File bundle = new File( "resources/resolver/bundle01" ).getCanonicalFile();
+
+        List<P2ResolutionResult> first = resolveBundle01( repositoryCache, bundle );
+        List<P2ResolutionResult> second = resolveBundle01( repositoryCache, bundle );
+
+        Assert.assertEquals( 1, second.size() );
+        Assert.assertEquals( first.get( 0 ).getArtifacts(), second.get( 0 ).getArtifacts() );
+    }
+
+    private List<P2ResolutionResult> resolveBundle01( P2RepositoryCache repositoryCache, File bundle )
+        throws Exception
+    {
+        P2ResolverImpl impl = new P2ResolverImpl();
+        impl.setRepositoryCache( repositoryCache );
+        impl.addP2Repository( new File( "resources/repositories/e342" ).getCanonicalFile().toURI() );
+        impl.setLocalRepositoryLocation( new File( "target/localrepo" ).getCanonicalFile() );
+        impl.setEnvironments( getEnvironments() );
+        impl.addMavenArtifact( bundle, P2Resolver.TYPE_ECLIPSE_PLUGIN, "org.sonatype.tycho.p2.impl.resolver.test.bundle01",
+                               "org.sonatype.tycho.p2.impl.resolver.test.bundle01", "1.0.0-SNAPSHOT" );
+        return impl.resolveProject( bundle );
+    }
+
     private List<Map<String, String>> getEnvironments()
     {
         ArrayList<Map<String, String>> environments = new ArrayList<Map<String, String>>();
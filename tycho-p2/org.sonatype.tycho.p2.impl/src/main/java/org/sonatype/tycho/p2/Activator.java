@@ -5,9 +5,11 @@ import org.eclipse.equinox.p2.core.IProvisioningAgentProvider;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
+import org.sonatype.tycho.p2.facade.P2ApplicationLauncher;
 import org.sonatype.tycho.p2.facade.P2Generator;
 import org.sonatype.tycho.p2.facade.internal.P2Resolver;
 import org.sonatype.tycho.p2.facade.internal.P2ResolverFactory;
+import org.sonatype.tycho.p2.publisher.P2ApplicationLauncherImpl;
 import org.sonatype.tycho.p2.publisher.P2GeneratorImpl;
 import org.sonatype.tycho.p2.resolver.P2ResolverImpl;
 
@@ -45,6 +47,7 @@ public class Activator
             }
         }, null );
         context.registerService( P2Generator.class.getName(), new P2GeneratorImpl( false ), null );
+        context.registerService( P2ApplicationLauncher.class.getName(), new P2ApplicationLauncherImpl(), null );
     }
 
     public void stop( BundleContext context )
@@ -0,0 +1,121 @@
+package org.sonatype.tycho.p2.publisher;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IExtension;
+import org.eclipse.core.runtime.IExtensionRegistry;
+import org.eclipse.core.runtime.RegistryFactory;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.osgi.framework.Bundle;
+import org.sonatype.tycho.p2.facade.P2ApplicationLauncher;
+
+/**
+ * Instantiates applications from the extension registry and runs them on the calling thread. Applications share the
+ * provisioning agent of the running framework, so only one application runs at a time.
+ */
+public class P2ApplicationLauncherImpl
+    implements P2ApplicationLauncher
+{
+    private static final String APPLICATIONS_EXTENSION_POINT = "org.eclipse.core.runtime.applications";
+
+    public synchronized int run( String applicationId, String[] args )
+        throws Exception
+    {
+        IExtensionRegistry registry = RegistryFactory.getRegistry();
+        if ( registry == null )
+        {
+            throw new IllegalStateException( "Extension registry is not available, cannot run application "
+                + applicationId );
+        }
+
+        IExtension extension = registry.getExtension( APPLICATIONS_EXTENSION_POINT, applicationId );
+        if ( extension == null )
+        {
+            throw new IllegalArgumentException( "Application " + applicationId + " is not available" );
+        }
+
+        IApplication application = null;
+        for ( IConfigurationElement element : extension.getConfigurationElements() )
+        {
+            for ( IConfigurationElement run : element.getChildren( "run" ) )
+            {
+                application = (IApplication) run.createExecutableExtension( "class" );
+            }
+        }
+        if ( application == null )
+        {
+            throw new IllegalArgumentException( "Application " + applicationId + " has no run element" );
+        }
+
+        // applications must not see maven classes through the context classloader
+        Thread thread = Thread.currentThread();
+        ClassLoader tccl = thread.getContextClassLoader();
+        thread.setContextClassLoader( application.getClass().getClassLoader() );
+        try
+        {
+            Object result = application.start( new ApplicationContext( args ) );
+            return result instanceof Integer ? ( (Integer) result ).intValue() : 0;
+        }
+        finally
+        {
+            thread.setContextClassLoader( tccl );
+        }
+    }
+
+    private static class ApplicationContext
+        implements IApplicationContext
+    {
+        private final Map<String, Object> arguments;
+
+        ApplicationContext( String[] args )
+        {
+            this.arguments = Collections.<String, Object> singletonMap( IApplicationContext.APPLICATION_ARGS, args );
+        }
+
+        public Map getArguments()
+        {
+            return arguments;
+        }
+
+        public void applicationRunning()
+        {
+        }
+
+        public String getBrandingApplication()
+        {
+            return null;
+        }
+
+        public String getBrandingName()
+        {
+            return null;
+        }
+
+        public String getBrandingDescription()
+        {
+            return null;
+        }
+
+        public String getBrandingId()
+        {
+            return null;
+        }
+
+        public String getBrandingProperty( String key )
+        {
+            return null;
+        }
+
+        public Bundle getBrandingBundle()
+        {
+            return null;
+        }
+
+        public void setResult( Object result, IApplication application )
+        {
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.sonatype.tycho.p2.resolver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+
+/**
+ * Installable units available from a list of remote p2 metadata repositories. Instances are shared by all resolvers
+ * of the build through P2RepositoryCache, so repository content is queried and copied only once.
+ */
+public class InstallableUnitUniverse
+{
+    private static final IInstallableUnit[] IU_ARRAY = new IInstallableUnit[0];
+
+    private final IInstallableUnit[] units;
+
+    private Set<String> excludedIds;
+
+    private IInstallableUnit[] filteredUnits;
+
+    public InstallableUnitUniverse( Collection<IInstallableUnit> units )
+    {
+        this.units = units.toArray( IU_ARRAY );
+    }
+
+    /**
+     * Returns units with ids other than the excluded ones. The ids of reactor projects are the same for all modules of
+     * the build, so the last result is remembered and reused.
+     */
+    public synchronized IInstallableUnit[] getUnits( Set<String> excludedIds )
+    {
+        if ( filteredUnits == null || !this.excludedIds.equals( excludedIds ) )
+        {
+            ArrayList<IInstallableUnit> result = new ArrayList<IInstallableUnit>( units.length );
+            for ( IInstallableUnit iu : units )
+            {
+                if ( !excludedIds.contains( iu.getId() ) )
+                {
+                    result.add( iu );
+                }
+            }
+            this.excludedIds = new HashSet<String>( excludedIds );
+            this.filteredUnits = result.toArray( IU_ARRAY );
+        }
+        return filteredUnits;
+    }
+
+    public int size()
+    {
+        return units.length;
+    }
+}
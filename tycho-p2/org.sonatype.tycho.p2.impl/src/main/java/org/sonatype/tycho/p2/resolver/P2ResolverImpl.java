@@ -11,6 +11,7 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -19,6 +20,11 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -58,7 +64,6 @@ import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
-import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 import org.eclipse.equinox.p2.repository.spi.AbstractRepository;
@@ -82,6 +87,7 @@ import org.sonatype.tycho.p2.maven.repository.LocalMetadataRepository;
 import org.sonatype.tycho.p2.maven.repository.MavenArtifactRepository;
 import org.sonatype.tycho.p2.maven.repository.MavenMetadataRepository;
 import org.sonatype.tycho.p2.maven.repository.MavenMirrorRequest;
+import org.sonatype.tycho.p2.maven.repository.ParallelArtifactMirror;
 import org.sonatype.tycho.p2.maven.repository.xmlio.MetadataIO;
 import org.sonatype.tycho.p2.publisher.P2GeneratorImpl;
 
@@ -92,10 +98,10 @@ public class P2ResolverImpl
 
     private static final IInstallableUnit[] IU_ARRAY = new IInstallableUnit[0];
 
-    private static final IArtifactRequest[] ARTIFACT_REQUEST_ARRAY = new IArtifactRequest[0];
-
     private static final IRequiredCapability[] REQUIRED_CAPABILITY_ARRAY = new IRequiredCapability[0];
 
+    private static final int MAX_RESOLUTION_THREADS = 4;
+
     private P2GeneratorImpl generator = new P2GeneratorImpl( true );
 
     private P2RepositoryCache repositoryCache;
@@ -121,6 +127,11 @@ public class P2ResolverImpl
      */
     private Map<File, Set<IInstallableUnit>> mavenArtifactIUs = new HashMap<File, Set<IInstallableUnit>>();
 
+    /**
+     * Maps installable unit to maven artifact location, reverse of {@link #mavenArtifactIUs}
+     */
+    private Map<IInstallableUnit, File> iuMavenArtifacts = new HashMap<IInstallableUnit, File>();
+
     /**
      * Maps maven artifact location (project basedir or local repo path) to project type
      */
@@ -182,7 +193,22 @@ public class P2ResolverImpl
 
         mavenArtifactTypes.put( location, type );
 
-        mavenArtifactIUs.put( location, units );
+        Set<IInstallableUnit> oldUnits = mavenArtifactIUs.put( location, units );
+        if ( oldUnits != null )
+        {
+            for ( IInstallableUnit iu : oldUnits )
+            {
+                if ( location.equals( iuMavenArtifacts.get( iu ) ) )
+                {
+                    iuMavenArtifacts.remove( iu );
+                }
+            }
+        }
+
+        for ( IInstallableUnit iu : units )
+        {
+            iuMavenArtifacts.put( iu, location );
+        }
 
         return units;
     }
@@ -212,6 +238,7 @@ public class P2ResolverImpl
             metadataRepositories.add( metadataRepository );
             artifactRepositories.add( artifactRepository );
 
+            // download concurrency is controlled by ParallelArtifactMirror, not by p2 download jobs
             forceSingleThreadedDownload( artifactRepositoryManager, artifactRepository );
 
             // processPartialIUs( metadataRepository, artifactRepository );
@@ -267,23 +294,100 @@ public class P2ResolverImpl
 
     public List<P2ResolutionResult> resolveProject( File projectLocation )
     {
-        ArrayList<P2ResolutionResult> results = new ArrayList<P2ResolutionResult>();
+        Set<IInstallableUnit> localIUs = gatherLocalInstallableUnits( monitor );
+
+        InstallableUnitUniverse universe = getRemoteInstallableUnits( monitor );
+
+        IInstallableUnit[] availableIUs = mergeInstallableUnits( localIUs, universe );
 
-        for ( Map<String, String> properties : environments )
+        // slices only depend on available units, project roots, additional requirements and selection context
+        List<Object> availableIUsKey = Arrays.<Object> asList( universe, localIUs );
+
+        List<Collection<IInstallableUnit>> solutions =
+            resolveEnvironments( projectLocation, availableIUs, availableIUsKey );
+
+        // artifact download and local repository updates are not thread safe, do them sequentially
+        ArrayList<P2ResolutionResult> results = new ArrayList<P2ResolutionResult>();
+        for ( Collection<IInstallableUnit> solution : solutions )
         {
             P2ResolutionResult result = new P2ResolutionResult();
-            resolveProject( result, projectLocation, properties );
+            if ( solution != null )
+            {
+                addSolution( result, solution );
+            }
             results.add( result );
         }
 
         return results;
     }
 
-    protected void resolveProject( P2ResolutionResult result, File projectLocation, Map<String, String> properties )
+    /**
+     * Resolves project dependencies for all target environments. Environments are independent from each other and are
+     * resolved concurrently. Returned solutions are in the same order as environments, <code>null</code> solution
+     * means the project could not be sliced for the corresponding environment.
+     */
+    protected List<Collection<IInstallableUnit>> resolveEnvironments( final File projectLocation,
+                                                                      final IInstallableUnit[] availableIUs,
+                                                                      final Object availableIUsKey )
     {
-        Map<String, String> newSelectionContext = SimplePlanner.createSelectionContext( properties );
+        List<Collection<IInstallableUnit>> solutions = new ArrayList<Collection<IInstallableUnit>>();
+
+        if ( environments.size() == 1 )
+        {
+            solutions.add( resolveEnvironment( projectLocation, availableIUs, availableIUsKey, environments.get( 0 ),
+                                               monitor ) );
+            return solutions;
+        }
 
-        IInstallableUnit[] availableIUs = gatherAvailableInstallableUnits( monitor );
+        int threads = Math.min( environments.size(), MAX_RESOLUTION_THREADS );
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            List<Future<Collection<IInstallableUnit>>> futures = new ArrayList<Future<Collection<IInstallableUnit>>>();
+            for ( final Map<String, String> properties : environments )
+            {
+                futures.add( executor.submit( new Callable<Collection<IInstallableUnit>>()
+                {
+                    public Collection<IInstallableUnit> call()
+                    {
+                        return resolveEnvironment( projectLocation, availableIUs, availableIUsKey, properties,
+                                                   new NullProgressMonitor() );
+                    }
+                } ) );
+            }
+
+            for ( Future<Collection<IInstallableUnit>> future : futures )
+            {
+                solutions.add( future.get() );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            throw new RuntimeException( e );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException( e.getCause() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return solutions;
+    }
+
+    protected Collection<IInstallableUnit> resolveEnvironment( File projectLocation, IInstallableUnit[] availableIUs,
+                                                              Object availableIUsKey, Map<String, String> properties,
+                                                              IProgressMonitor monitor )
+    {
+        long start = System.currentTimeMillis();
+
+        Map<String, String> newSelectionContext = SimplePlanner.createSelectionContext( properties );
 
         Set<IInstallableUnit> rootIUs = getProjectIUs( projectLocation );
 
@@ -293,91 +397,150 @@ public class P2ResolverImpl
         rootWithExtraIUs.addAll( rootIUs );
         rootWithExtraIUs.addAll( extraIUs );
 
-        Slicer slicer = new Slicer( new QueryableArray( availableIUs ), newSelectionContext, false );
-        IQueryable<IInstallableUnit> slice = slicer.slice( rootWithExtraIUs.toArray( IU_ARRAY ), monitor );
+        IQueryable<IInstallableUnit> slice =
+            slice( availableIUs, availableIUsKey, rootIUs, newSelectionContext, rootWithExtraIUs, monitor );
+
+        long sliced = System.currentTimeMillis();
 
-        if ( slice != null )
+        if ( slice == null )
         {
-            Projector projector = new Projector( slice, newSelectionContext, new HashSet<IInstallableUnit>(), false );
-            projector.encode( createMetaIU( rootIUs ), extraIUs.toArray( IU_ARRAY ) /* alreadyExistingRoots */,
-                              new QueryableArray( new IInstallableUnit[0] ) /* installed IUs */,
-                              rootIUs /* newRoots */, monitor );
-            IStatus s = projector.invokeSolver( monitor );
-            if ( s.getSeverity() == IStatus.ERROR )
-            {
-                Set<Explanation> explanation = projector.getExplanation( monitor );
+            return null;
+        }
 
-                System.out.println( properties.toString() );
-                System.out.println( explanation );
+        Projector projector = new Projector( slice, newSelectionContext, new HashSet<IInstallableUnit>(), false );
+        projector.encode( createMetaIU( rootIUs ), extraIUs.toArray( IU_ARRAY ) /* alreadyExistingRoots */,
+                          new QueryableArray( new IInstallableUnit[0] ) /* installed IUs */, rootIUs /* newRoots */,
+                          monitor );
+        IStatus s = projector.invokeSolver( monitor );
+        if ( s.getSeverity() == IStatus.ERROR )
+        {
+            Set<Explanation> explanation = projector.getExplanation( monitor );
 
-                throw new RuntimeException( new ProvisionException( s ) );
-            }
-            Collection<IInstallableUnit> newState = projector.extractSolution();
+            System.out.println( properties.toString() );
+            System.out.println( explanation );
 
-            fixSWT( newState, availableIUs, newSelectionContext );
+            throw new RuntimeException( new ProvisionException( s ) );
+        }
+        Collection<IInstallableUnit> newState = projector.extractSolution();
+
+        fixSWT( newState, availableIUs, newSelectionContext );
+
+        if ( logger != null )
+        {
+            long end = System.currentTimeMillis();
+            logger.debug( "Resolved environment " + properties + " in " + ( end - start ) + " ms (slice "
+                + ( sliced - start ) + " ms, solve " + ( end - sliced ) + " ms)" );
+        }
+
+        return newState;
+    }
+
+    private IQueryable<IInstallableUnit> slice( IInstallableUnit[] availableIUs, Object availableIUsKey,
+                                                Set<IInstallableUnit> rootIUs, Map<String, String> selectionContext,
+                                                Set<IInstallableUnit> rootWithExtraIUs, IProgressMonitor monitor )
+    {
+        // extra IU has unique id, use additional requirements as part of the key instead
+        List<Object> key =
+            Arrays.<Object> asList( availableIUsKey, rootIUs, new ArrayList<IRequirement>( additionalRequirements ),
+                                    selectionContext );
 
-            List<MavenMirrorRequest> requests = new ArrayList<MavenMirrorRequest>();
-            for ( IInstallableUnit iu : newState )
+        IInstallableUnit[] sliceIUs = (IInstallableUnit[]) repositoryCache.getSlice( key );
+
+        if ( sliceIUs == null )
+        {
+            Slicer slicer = new Slicer( new QueryableArray( availableIUs ), selectionContext, false );
+            IQueryable<IInstallableUnit> slice = slicer.slice( rootWithExtraIUs.toArray( IU_ARRAY ), monitor );
+            if ( slice == null )
             {
-                if ( getReactorProjectBasedir( iu ) == null )
-                {
-                    Collection<IArtifactKey> artifactKeys = iu.getArtifacts();
-                    for ( IArtifactKey key : artifactKeys )
-                    {
-                        requests.add( new MavenMirrorRequest( iu, key, localMetadataRepository, localRepository ) );
-                    }
-                    if ( artifactKeys.size() <= 0 )
-                    {
-                        GAV gav = RepositoryLayoutHelper.getP2Gav( "iu", iu.getId(), iu.getVersion().toString() );
-                        localMetadataRepository.addInstallableUnit( iu, gav );
-                    }
-                }
+                return null;
             }
 
-            for ( IArtifactRepository artifactRepository : artifactRepositories )
+            sliceIUs = slice.query( QueryUtil.ALL_UNITS, monitor ).toArray( IInstallableUnit.class );
+            repositoryCache.putSlice( key, sliceIUs );
+        }
+        else
+        {
+            for ( IInstallableUnit iu : rootWithExtraIUs )
             {
-                artifactRepository.getArtifacts( requests.toArray( ARTIFACT_REQUEST_ARRAY ), monitor );
-
-                requests = filterCompletedRequests( requests );
+                if ( !rootIUs.contains( iu ) )
+                {
+                    // cached slice contains extra IU of another resolution, make sure ours is there
+                    IInstallableUnit[] withExtraIUs = new IInstallableUnit[sliceIUs.length + 1];
+                    System.arraycopy( sliceIUs, 0, withExtraIUs, 0, sliceIUs.length );
+                    withExtraIUs[sliceIUs.length] = iu;
+                    sliceIUs = withExtraIUs;
+                }
             }
+        }
 
-            localRepository.save();
-            localMetadataRepository.save();
+        // QueryableArray is not thread safe, never share it between resolutions
+        return new QueryableArray( sliceIUs );
+    }
 
-            // check for locally installed artifacts, which are not available from any remote repo
-            for ( Iterator<MavenMirrorRequest> iter = requests.iterator(); iter.hasNext(); )
+    protected void addSolution( P2ResolutionResult result, Collection<IInstallableUnit> newState )
+    {
+        List<MavenMirrorRequest> requests = new ArrayList<MavenMirrorRequest>();
+        for ( IInstallableUnit iu : newState )
+        {
+            if ( getReactorProjectBasedir( iu ) == null )
             {
-                MavenMirrorRequest request = iter.next();
-                if ( localRepository.contains( request.getArtifactKey() ) )
+                Collection<IArtifactKey> artifactKeys = iu.getArtifacts();
+                for ( IArtifactKey key : artifactKeys )
                 {
-                    iter.remove();
+                    requests.add( new MavenMirrorRequest( iu, key, localMetadataRepository, localRepository ) );
+                }
+                if ( artifactKeys.size() <= 0 )
+                {
+                    GAV gav = RepositoryLayoutHelper.getP2Gav( "iu", iu.getId(), iu.getVersion().toString() );
+                    localMetadataRepository.addInstallableUnit( iu, gav );
                 }
             }
+        }
+
+        ParallelArtifactMirror mirror = new ParallelArtifactMirror();
+        for ( IArtifactRepository artifactRepository : artifactRepositories )
+        {
+            mirror.mirror( artifactRepository, requests, monitor );
+
+            requests = filterCompletedRequests( requests );
+        }
+
+        localRepository.save();
+        localMetadataRepository.save();
 
-            if ( !requests.isEmpty() )
+        // check for locally installed artifacts, which are not available from any remote repo
+        for ( Iterator<MavenMirrorRequest> iter = requests.iterator(); iter.hasNext(); )
+        {
+            MavenMirrorRequest request = iter.next();
+            if ( localRepository.contains( request.getArtifactKey() ) )
             {
-                StringBuilder msg = new StringBuilder( "Could not download artifacts from any repository\n" );
-                for ( MavenMirrorRequest request : requests )
-                {
-                    msg.append( "   " ).append( request.getArtifactKey().toExternalForm() ).append( '\n' );
-                }
+                iter.remove();
+            }
+        }
 
-                throw new RuntimeException( msg.toString() );
+        if ( !requests.isEmpty() )
+        {
+            StringBuilder msg = new StringBuilder( "Could not download artifacts from any repository\n" );
+            for ( MavenMirrorRequest request : requests )
+            {
+                msg.append( "   " ).append( request.getArtifactKey().toExternalForm() ).append( '\n' );
             }
 
-            for ( IInstallableUnit iu : newState )
+            throw new RuntimeException( msg.toString() );
+        }
+
+        for ( IInstallableUnit iu : newState )
+        {
+            File basedir = getReactorProjectBasedir( iu );
+            if ( basedir != null )
             {
-                File basedir = getReactorProjectBasedir( iu );
-                if ( basedir != null )
-                {
-                    addReactorProject( result, iu, basedir );
-                }
-                else
+                addReactorProject( result, iu, basedir );
+            }
+            else
+            {
+                for ( IArtifactKey key : iu.getArtifacts() )
                 {
-                    for ( IArtifactKey key : iu.getArtifacts() )
-                    {
-                        addArtifactFile( result, iu, key );
-                    }
+                    addArtifactFile( result, iu, key );
                 }
             }
         }
@@ -385,14 +548,7 @@ public class P2ResolverImpl
 
     private File getReactorProjectBasedir( IInstallableUnit iu )
     {
-        for ( Map.Entry<File, Set<IInstallableUnit>> entry : mavenArtifactIUs.entrySet() )
-        {
-            if ( entry.getValue().contains( iu ) )
-            {
-                return entry.getKey();
-            }
-        }
-        return null;
+        return iuMavenArtifacts.get( iu );
     }
 
     private void fixSWT( Collection<IInstallableUnit> ius, IInstallableUnit[] availableIUs,
@@ -574,6 +730,15 @@ public class P2ResolverImpl
     }
 
     public IInstallableUnit[] gatherAvailableInstallableUnits( IProgressMonitor monitor )
+    {
+        return mergeInstallableUnits( gatherLocalInstallableUnits( monitor ), getRemoteInstallableUnits( monitor ) );
+    }
+
+    /**
+     * Installable units of reactor projects, maven artifacts and maven local repository. These change during the
+     * build and are never cached.
+     */
+    private Set<IInstallableUnit> gatherLocalInstallableUnits( IProgressMonitor monitor )
     {
         Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
 
@@ -600,29 +765,94 @@ public class P2ResolverImpl
             }
         }
 
-        SubMonitor sub = SubMonitor.convert( monitor, metadataRepositories.size() * 200 );
+        if ( localMetadataRepository != null )
+        {
+            addRepositoryInstallableUnits( result, localMetadataRepository, iuReactorProjects.keySet(), monitor );
+        }
+
+        return result;
+    }
+
+    /**
+     * Installable units of all remote repositories, shared by all resolvers that use the same repositories.
+     */
+    private InstallableUnitUniverse getRemoteInstallableUnits( final IProgressMonitor monitor )
+    {
+        List<URI> locations = new ArrayList<URI>();
         for ( IMetadataRepository repository : metadataRepositories )
         {
-            IQueryResult<IInstallableUnit> matches = repository.query( QueryUtil.ALL_UNITS, sub.newChild( 100 ) );
-            for ( Iterator<IInstallableUnit> it = matches.iterator(); it.hasNext(); )
+            if ( repository != localMetadataRepository )
             {
-                IInstallableUnit iu = it.next();
+                locations.add( repository.getLocation() );
+            }
+        }
 
-                if ( !isPartialIU( iu ) )
+        try
+        {
+            return (InstallableUnitUniverse) repositoryCache.getInstallableUnits( locations, new Callable<Object>()
+            {
+                public Object call()
                 {
-                    if ( !iuReactorProjects.containsKey( iu.getId() ) )
+                    Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>();
+
+                    SubMonitor sub = SubMonitor.convert( monitor, metadataRepositories.size() * 200 );
+                    for ( IMetadataRepository repository : metadataRepositories )
                     {
-                        result.add( iu );
+                        if ( repository != localMetadataRepository )
+                        {
+                            // reactor projects are filtered out by InstallableUnitUniverse#getUnits
+                            addRepositoryInstallableUnits( result, repository, Collections.<String> emptySet(),
+                                                           sub.newChild( 100 ) );
+                        }
                     }
+                    result.addAll( createJREIUs() );
+                    sub.done();
+
+                    return new InstallableUnitUniverse( result );
                 }
-                else
+            } );
+        }
+        catch ( Exception e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private void addRepositoryInstallableUnits( Set<IInstallableUnit> result, IMetadataRepository repository,
+                                                Set<String> excludedIds, IProgressMonitor monitor )
+    {
+        IQueryResult<IInstallableUnit> matches = repository.query( QueryUtil.ALL_UNITS, monitor );
+        for ( Iterator<IInstallableUnit> it = matches.iterator(); it.hasNext(); )
+        {
+            IInstallableUnit iu = it.next();
+
+            if ( !isPartialIU( iu ) )
+            {
+                if ( !excludedIds.contains( iu.getId() ) )
                 {
-                    System.out.println( "PARTIAL IU: " + iu );
+                    result.add( iu );
                 }
             }
+            else
+            {
+                System.out.println( "PARTIAL IU: " + iu );
+            }
+        }
+    }
+
+    private IInstallableUnit[] mergeInstallableUnits( Set<IInstallableUnit> localIUs, InstallableUnitUniverse universe )
+    {
+        IInstallableUnit[] remoteIUs = universe.getUnits( iuReactorProjects.keySet() );
+
+        ArrayList<IInstallableUnit> result = new ArrayList<IInstallableUnit>( localIUs.size() + remoteIUs.length );
+        result.addAll( localIUs );
+        for ( IInstallableUnit iu : remoteIUs )
+        {
+            if ( !localIUs.contains( iu ) )
+            {
+                result.add( iu );
+            }
         }
-        result.addAll( createJREIUs() );
-        sub.done();
         return result.toArray( IU_ARRAY );
     }
 
@@ -664,22 +894,36 @@ public class P2ResolverImpl
         return MetadataFactory.createInstallableUnit( iud );
     }
 
-    public void setLocalRepositoryLocation( File location )
+    public void setLocalRepositoryLocation( final File location )
     {
         URI uri = location.toURI();
 
-        localRepository = (LocalArtifactRepository) repositoryCache.getArtifactRepository( uri );
-        localMetadataRepository = (LocalMetadataRepository) repositoryCache.getMetadataRepository( uri );
+        // index content is read lazily, by the first repository that is not cached yet
+        final LocalTychoRepositoryIndex index = new LocalTychoRepositoryIndex( location );
 
-        if ( localRepository == null || localMetadataRepository == null )
+        try
         {
-            TychoRepositoryIndex projectIndex = new LocalTychoRepositoryIndex( location );
-            RepositoryReader contentLocator = new LocalRepositoryReader( location );
-
-            localRepository = new LocalArtifactRepository( location, projectIndex, contentLocator );
-            localMetadataRepository = new LocalMetadataRepository( uri, projectIndex, contentLocator );
-
-            repositoryCache.putRepository( uri, localMetadataRepository, localRepository );
+            localRepository =
+                (LocalArtifactRepository) repositoryCache.getArtifactRepository( uri, new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        return new LocalArtifactRepository( location, index, new LocalRepositoryReader( location ) );
+                    }
+                } );
+            localMetadataRepository =
+                (LocalMetadataRepository) repositoryCache.getMetadataRepository( uri, new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        return new LocalMetadataRepository( location.toURI(), index,
+                                                            new LocalRepositoryReader( location ) );
+                    }
+                } );
+        }
+        catch ( Exception e )
+        {
+            throw new RuntimeException( e );
         }
 
         // XXX remove old
@@ -708,19 +952,33 @@ public class P2ResolverImpl
         }
     }
 
-    public void addMavenRepository( URI location, TychoRepositoryIndex projectIndex, RepositoryReader contentLocator )
+    public void addMavenRepository( final URI location, final TychoRepositoryIndex projectIndex,
+                                    final RepositoryReader contentLocator )
     {
-        MavenMetadataRepository metadataRepository =
-            (MavenMetadataRepository) repositoryCache.getMetadataRepository( location );
-        MavenArtifactRepository artifactRepository =
-            (MavenArtifactRepository) repositoryCache.getArtifactRepository( location );
-
-        if ( metadataRepository == null || artifactRepository == null )
+        MavenMetadataRepository metadataRepository;
+        MavenArtifactRepository artifactRepository;
+        try
         {
-            metadataRepository = new MavenMetadataRepository( location, projectIndex, contentLocator );
-            artifactRepository = new MavenArtifactRepository( location, projectIndex, contentLocator );
-
-            repositoryCache.putRepository( location, metadataRepository, artifactRepository );
+            metadataRepository =
+                (MavenMetadataRepository) repositoryCache.getMetadataRepository( location, new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        return new MavenMetadataRepository( location, projectIndex, contentLocator );
+                    }
+                } );
+            artifactRepository =
+                (MavenArtifactRepository) repositoryCache.getArtifactRepository( location, new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        return new MavenArtifactRepository( location, projectIndex, contentLocator );
+                    }
+                } );
+        }
+        catch ( Exception e )
+        {
+            throw new RuntimeException( e );
         }
 
         metadataRepositories.add( metadataRepository );
@@ -4,8 +4,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
@@ -70,9 +79,12 @@ public class LocalArtifactRepositoryTest
 
     private ArtifactDescriptor newBundleArtifactDescriptor( boolean maven )
     {
-        ArtifactKey key =
-            new ArtifactKey( PublisherHelper.OSGI_BUNDLE_CLASSIFIER, "org.sonatype.tycho.test."
-                + ( maven ? "maven" : "p2" ), Version.createOSGi( 1, 0, 0 ) );
+        return newBundleArtifactDescriptor( "org.sonatype.tycho.test." + ( maven ? "maven" : "p2" ), maven );
+    }
+
+    private ArtifactDescriptor newBundleArtifactDescriptor( String id, boolean maven )
+    {
+        ArtifactKey key = new ArtifactKey( PublisherHelper.OSGI_BUNDLE_CLASSIFIER, id, Version.createOSGi( 1, 0, 0 ) );
         ArtifactDescriptor desc = new ArtifactDescriptor( key );
 
         if ( maven )
@@ -155,4 +167,104 @@ public class LocalArtifactRepositoryTest
         Assert.assertTrue( repo.contains( p2Artifact.getArtifactKey() ) );
     }
 
+    @Test
+    public void failedTransfer()
+        throws Exception
+    {
+        LocalArtifactRepository repo = new LocalArtifactRepository( basedir );
+
+        ArtifactDescriptor desc = newBundleArtifactDescriptor( false );
+
+        OutputStream os = repo.getOutputStream( desc );
+        os.write( 111 );
+        ( (IStateful) os ).setStatus( new Status( IStatus.ERROR, "test", "transfer failed" ) );
+        os.close();
+
+        File dir = new File( basedir, "p2/osgi/bundle/org.sonatype.tycho.test.p2/1.0.0" );
+        Assert.assertFalse( new File( dir, "org.sonatype.tycho.test.p2-1.0.0.jar" ).exists() );
+        Assert.assertEquals( 0, dir.list().length );
+        Assert.assertFalse( repo.contains( desc.getArtifactKey() ) );
+        Assert.assertFalse( repo.contains( desc ) );
+    }
+
+    @Test
+    public void retryReplacesArtifact()
+        throws Exception
+    {
+        LocalArtifactRepository repo = new LocalArtifactRepository( basedir );
+
+        ArtifactDescriptor desc = newBundleArtifactDescriptor( false );
+        File file = new File( basedir, "p2/osgi/bundle/org.sonatype.tycho.test.p2/1.0.0/org.sonatype.tycho.test.p2-1.0.0.jar" );
+
+        writeDummyArtifact( repo, desc );
+        Assert.assertEquals( 1, file.length() );
+
+        repo.removeDescriptor( desc );
+        Assert.assertFalse( repo.contains( desc ) );
+        Assert.assertFalse( file.exists() );
+
+        OutputStream os = repo.getOutputStream( desc );
+        os.write( new byte[] { 1, 2, 3 } );
+        os.close();
+
+        Assert.assertTrue( repo.contains( desc ) );
+        Assert.assertEquals( 3, file.length() );
+
+        // a present artifact is replaced as well
+        os = repo.getOutputStream( desc );
+        os.write( new byte[] { 1, 2 } );
+        os.close();
+
+        Assert.assertTrue( repo.contains( desc ) );
+        Assert.assertEquals( 2, file.length() );
+    }
+
+    @Test
+    public void concurrentWrites()
+        throws Exception
+    {
+        final LocalArtifactRepository repo = new LocalArtifactRepository( basedir );
+
+        List<ArtifactDescriptor> artifacts = new ArrayList<ArtifactDescriptor>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            artifacts.add( newBundleArtifactDescriptor( "org.sonatype.tycho.test.concurrent" + i, i % 2 == 0 ) );
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for ( final ArtifactDescriptor desc : artifacts )
+            {
+                futures.add( executor.submit( new Callable<Object>()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        writeDummyArtifact( repo, desc );
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<?> future : futures )
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        repo.save();
+
+        LocalArtifactRepository reloaded = new LocalArtifactRepository( basedir );
+        for ( ArtifactDescriptor desc : artifacts )
+        {
+            Assert.assertTrue( reloaded.contains( desc.getArtifactKey() ) );
+            Assert.assertTrue( new File( reloaded.getLocation( desc ) ).isFile() );
+        }
+    }
+
 }
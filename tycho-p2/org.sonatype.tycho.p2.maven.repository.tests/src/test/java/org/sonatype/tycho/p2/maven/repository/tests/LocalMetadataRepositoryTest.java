@@ -98,4 +98,36 @@ public class LocalMetadataRepositoryTest
         Assert.assertEquals( 1, ius.size() );
     }
 
+    @Test
+    public void queryById()
+        throws CoreException
+    {
+        File location = new File( "target/queryById" );
+        LocalMetadataRepository repository = createRepository( location, "group", "artifact", "version" );
+
+        InstallableUnitDescription iud = new MetadataFactory.InstallableUnitDescription();
+        iud.setId( "test" );
+        iud.setVersion( Version.parseVersion( "1.0.0" ) );
+
+        iud.setProperty( RepositoryLayoutHelper.PROP_GROUP_ID, "group" );
+        iud.setProperty( RepositoryLayoutHelper.PROP_ARTIFACT_ID, "artifact" );
+        iud.setProperty( RepositoryLayoutHelper.PROP_VERSION, "version" );
+
+        InstallableUnitDescription iud2 = new MetadataFactory.InstallableUnitDescription();
+        iud2.setId( "test2" );
+        iud2.setVersion( Version.parseVersion( "1.0.0" ) );
+
+        iud2.setProperty( RepositoryLayoutHelper.PROP_GROUP_ID, "group" );
+        iud2.setProperty( RepositoryLayoutHelper.PROP_ARTIFACT_ID, "artifact" );
+        iud2.setProperty( RepositoryLayoutHelper.PROP_VERSION, "version" );
+
+        repository.addInstallableUnits( Arrays.asList( MetadataFactory.createInstallableUnit( iud ),
+                                                       MetadataFactory.createInstallableUnit( iud2 ) ) );
+
+        repository = (LocalMetadataRepository) loadRepository( location );
+
+        Set<IInstallableUnit> result = repository.query( QueryUtil.createIUQuery( "test2" ), monitor ).toSet();
+        Assert.assertEquals( 1, result.size() );
+        Assert.assertEquals( "test2", result.iterator().next().getId() );
+    }
 }
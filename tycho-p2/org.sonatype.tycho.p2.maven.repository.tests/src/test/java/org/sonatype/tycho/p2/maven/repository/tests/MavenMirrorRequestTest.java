@@ -1,6 +1,7 @@
 package org.sonatype.tycho.p2.maven.repository.tests;
 
 import java.io.File;
+import java.util.Arrays;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -20,6 +21,7 @@ import org.sonatype.tycho.p2.maven.repository.Activator;
 import org.sonatype.tycho.p2.maven.repository.LocalArtifactRepository;
 import org.sonatype.tycho.p2.maven.repository.LocalMetadataRepository;
 import org.sonatype.tycho.p2.maven.repository.MavenMirrorRequest;
+import org.sonatype.tycho.p2.maven.repository.ParallelArtifactMirror;
 
 public class MavenMirrorRequestTest
 {
@@ -53,4 +55,36 @@ public class MavenMirrorRequestTest
 
         Assert.assertEquals( 1, localRepository.getArtifactDescriptors( key ).length );
     }
+
+    @Test
+    public void testParallelMirror()
+        throws Exception
+    {
+        IProvisioningAgent agent = Activator.getProvisioningAgent();
+
+        IArtifactRepositoryManager manager =
+            (IArtifactRepositoryManager) agent.getService( IArtifactRepositoryManager.SERVICE_NAME );
+
+        IArtifactRepository repository =
+            manager.loadRepository( new File( "resources/repositories/e342" ).toURI(), monitor );
+
+        File location = new File( "target/parallel" );
+        LocalArtifactRepository localRepository = new LocalArtifactRepository( location );
+        LocalMetadataRepository localMetadataRepository = new LocalMetadataRepository( location.toURI(), "local" );
+
+        IArtifactKey key =
+            new ArtifactKey( "osgi.bundle", "org.eclipse.osgi", Version.parseVersion( "3.4.3.R34x_v20081215-1030" ) );
+
+        IInstallableUnit iu = MetadataFactory.createInstallableUnit( new InstallableUnitDescription() );
+
+        // the same artifact requested twice, concurrent downloads must not corrupt local repository
+        MavenMirrorRequest request1 = new MavenMirrorRequest( iu, key, localMetadataRepository, localRepository );
+        MavenMirrorRequest request2 = new MavenMirrorRequest( iu, key, localMetadataRepository, localRepository );
+
+        new ParallelArtifactMirror( 2 ).mirror( repository, Arrays.asList( request1, request2 ), monitor );
+
+        Assert.assertTrue( request1.getResult().isOK() );
+        Assert.assertTrue( request2.getResult().isOK() );
+        Assert.assertEquals( 1, localRepository.getArtifactDescriptors( key ).length );
+    }
 }
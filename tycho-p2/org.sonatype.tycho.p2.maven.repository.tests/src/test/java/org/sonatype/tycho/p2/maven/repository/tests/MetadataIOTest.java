@@ -0,0 +1,112 @@
+package org.sonatype.tycho.p2.maven.repository.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.metadata.MetadataFactory;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.spi.p2.publisher.PublisherHelper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonatype.tycho.p2.facade.RepositoryLayoutHelper;
+import org.sonatype.tycho.p2.maven.repository.xmlio.ArtifactsIO;
+import org.sonatype.tycho.p2.maven.repository.xmlio.MetadataIO;
+
+@SuppressWarnings( "restriction" )
+public class MetadataIOTest
+{
+    private static final int UNITS = 2000;
+
+    @Test
+    public void metadataRoundTrip()
+        throws IOException
+    {
+        Set<IInstallableUnit> units = newUnits( UNITS );
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new MetadataIO().writeXML( units, os );
+
+        assertUnits( units, new MetadataIO().readXML( new ByteArrayInputStream( os.toByteArray() ) ) );
+    }
+
+    @Test
+    public void artifactsRoundTrip()
+        throws IOException
+    {
+        Set<IArtifactDescriptor> descriptors = new LinkedHashSet<IArtifactDescriptor>();
+        for ( int i = 0; i < UNITS; i++ )
+        {
+            ArtifactKey key =
+                new ArtifactKey( PublisherHelper.OSGI_BUNDLE_CLASSIFIER, "test.bundle" + i, Version.createOSGi( 1, 0, i ) );
+            ArtifactDescriptor desc = new ArtifactDescriptor( key );
+            desc.setProperty( RepositoryLayoutHelper.PROP_GROUP_ID, "group" );
+            desc.setProperty( RepositoryLayoutHelper.PROP_ARTIFACT_ID, key.getId() );
+            descriptors.add( desc );
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new ArtifactsIO().writeXML( descriptors, os );
+
+        Set<IArtifactDescriptor> read = new ArtifactsIO().readXML( new ByteArrayInputStream( os.toByteArray() ) );
+        Assert.assertEquals( descriptors.size(), read.size() );
+
+        Iterator<IArtifactDescriptor> expected = descriptors.iterator();
+        for ( IArtifactDescriptor actual : read )
+        {
+            IArtifactDescriptor desc = expected.next();
+            Assert.assertEquals( desc.getArtifactKey(), actual.getArtifactKey() );
+            Assert.assertEquals( desc.getProperties(), actual.getProperties() );
+        }
+    }
+
+    private Set<IInstallableUnit> newUnits( int count )
+    {
+        Set<IInstallableUnit> units = new LinkedHashSet<IInstallableUnit>();
+        for ( int i = 0; i < count; i++ )
+        {
+            InstallableUnitDescription iud = new MetadataFactory.InstallableUnitDescription();
+            iud.setId( "test.unit" + i );
+            iud.setVersion( Version.createOSGi( 1, 0, i ) );
+            iud.setProperty( RepositoryLayoutHelper.PROP_GROUP_ID, "group" );
+            iud.setProperty( RepositoryLayoutHelper.PROP_ARTIFACT_ID, "test.unit" + i );
+            iud.setProperty( RepositoryLayoutHelper.PROP_VERSION, "1.0." + i );
+            iud.setCapabilities( new IProvidedCapability[] { MetadataFactory.createProvidedCapability(
+                IInstallableUnit.NAMESPACE_IU_ID, iud.getId(), iud.getVersion() ) } );
+            if ( i > 0 )
+            {
+                iud.setRequirements( new IRequirement[] { MetadataFactory.createRequirement(
+                    IInstallableUnit.NAMESPACE_IU_ID, "test.unit" + ( i - 1 ), VersionRange.emptyRange, null, false,
+                    false ) } );
+            }
+            units.add( MetadataFactory.createInstallableUnit( iud ) );
+        }
+        return units;
+    }
+
+    private void assertUnits( Set<IInstallableUnit> expected, Set<IInstallableUnit> actual )
+    {
+        Assert.assertEquals( expected.size(), actual.size() );
+
+        Iterator<IInstallableUnit> expectedIterator = expected.iterator();
+        for ( IInstallableUnit unit : actual )
+        {
+            IInstallableUnit expectedUnit = expectedIterator.next();
+            Assert.assertEquals( expectedUnit, unit );
+            Assert.assertEquals( expectedUnit.getProperties(), unit.getProperties() );
+            Assert.assertEquals( expectedUnit.getProvidedCapabilities(), unit.getProvidedCapabilities() );
+            Assert.assertEquals( expectedUnit.getRequirements(), unit.getRequirements() );
+        }
+    }
+}
@@ -37,7 +37,7 @@ public abstract class AbstractMavenArtifactRepository
 
     private final RepositoryReader contentLocator;
 
-    private final TychoRepositoryIndex projectIndex;
+    protected final TychoRepositoryIndex projectIndex;
 
     protected AbstractMavenArtifactRepository( URI uri, TychoRepositoryIndex projectIndex,
         RepositoryReader contentLocator )
@@ -85,19 +85,19 @@ public abstract class AbstractMavenArtifactRepository
     }
 
     @Override
-    public boolean contains( IArtifactDescriptor descriptor )
+    public synchronized boolean contains( IArtifactDescriptor descriptor )
     {
         return descriptor != null && descriptors.contains( descriptor );
     }
 
     @Override
-    public boolean contains( IArtifactKey key )
+    public synchronized boolean contains( IArtifactKey key )
     {
         return key != null && descriptorsMap.containsKey( key );
     }
 
     @Override
-    public IArtifactDescriptor[] getArtifactDescriptors( IArtifactKey key )
+    public synchronized IArtifactDescriptor[] getArtifactDescriptors( IArtifactKey key )
     {
         Set<IArtifactDescriptor> descriptors = descriptorsMap.get( key );
         if ( descriptors == null )
@@ -123,7 +123,7 @@ public abstract class AbstractMavenArtifactRepository
     public abstract IStatus resolve( IArtifactDescriptor descriptor );
 
     @Override
-    public void addDescriptor( IArtifactDescriptor descriptor )
+    public synchronized void addDescriptor( IArtifactDescriptor descriptor )
     {
         super.addDescriptor( descriptor );
 
@@ -154,7 +154,7 @@ public abstract class AbstractMavenArtifactRepository
         return gav;
     }
 
-    public IQueryResult<IArtifactKey> query( IQuery<IArtifactKey> query, IProgressMonitor monitor )
+    public synchronized IQueryResult<IArtifactKey> query( IQuery<IArtifactKey> query, IProgressMonitor monitor )
     {
         return query.perform( descriptorsMap.keySet().iterator() );
     }
@@ -165,7 +165,10 @@ public abstract class AbstractMavenArtifactRepository
         {
             public IQueryResult<IArtifactDescriptor> query( IQuery<IArtifactDescriptor> query, IProgressMonitor monitor )
             {
-                return query.perform( descriptors.iterator() );
+                synchronized ( AbstractMavenArtifactRepository.this )
+                {
+                    return query.perform( descriptors.iterator() );
+                }
             }
         };
     }
@@ -2,15 +2,27 @@ package org.sonatype.tycho.p2.maven.repository;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.expression.IQueryWithIndex;
+import org.eclipse.equinox.internal.p2.metadata.index.CapabilityIndex;
+import org.eclipse.equinox.internal.p2.metadata.index.IdIndex;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.index.IIndex;
+import org.eclipse.equinox.p2.metadata.index.IIndexProvider;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.repository.IRepositoryReference;
@@ -21,8 +33,17 @@ import org.sonatype.tycho.p2.facade.internal.RepositoryReader;
 import org.sonatype.tycho.p2.facade.internal.TychoRepositoryIndex;
 import org.sonatype.tycho.p2.maven.repository.xmlio.MetadataIO;
 
+/**
+ * Metadata repository backed by p2 metadata files of the projects listed in Tycho repository index.
+ * <p>
+ * Metadata of individual projects is parsed lazily, on first access, and parsed units are only softly referenced so
+ * they can be reclaimed and parsed again under memory pressure. Queries that support indexes use installable unit id
+ * and provided capability indexes instead of iterating over all units.
+ */
+@SuppressWarnings( "restriction" )
 public abstract class AbstractMavenMetadataRepository
     extends AbstractMetadataRepository
+    implements IIndexProvider<IInstallableUnit>
 {
     private static final String REPOSITORY_TYPE = AbstractMavenMetadataRepository.class.getName();
 
@@ -32,9 +53,37 @@ public abstract class AbstractMavenMetadataRepository
 
     protected final RepositoryReader contentLocator;
 
-    protected Set<IInstallableUnit> units = new LinkedHashSet<IInstallableUnit>();
+    /**
+     * Projects listed in the project index, read on first access
+     */
+    private Set<GAV> indexedGAVs;
+
+    /**
+     * Units parsed from project metadata files, may be reclaimed and parsed again
+     */
+    private final Map<GAV, SoftReference<Set<IInstallableUnit>>> loadedUnits =
+        new HashMap<GAV, SoftReference<Set<IInstallableUnit>>>();
+
+    /**
+     * Units of projects added or changed in this repository instance, never reclaimed
+     */
+    private final Map<GAV, Set<IInstallableUnit>> changedUnits = new LinkedHashMap<GAV, Set<IInstallableUnit>>();
+
+    private SoftReference<UnitsSnapshot> snapshot;
+
+    private static class UnitsSnapshot
+    {
+        final List<IInstallableUnit> units;
+
+        IIndex<IInstallableUnit> idIndex;
+
+        IIndex<IInstallableUnit> capabilityIndex;
 
-    protected Map<GAV, Set<IInstallableUnit>> unitsMap = new LinkedHashMap<GAV, Set<IInstallableUnit>>();
+        UnitsSnapshot( List<IInstallableUnit> units )
+        {
+            this.units = units;
+        }
+    }
 
     public AbstractMavenMetadataRepository( URI location, TychoRepositoryIndex projectIndex,
                                             RepositoryReader contentLocator )
@@ -46,42 +95,114 @@ public abstract class AbstractMavenMetadataRepository
 
         this.projectIndex = projectIndex;
         this.contentLocator = contentLocator;
+    }
 
-        if ( projectIndex != null && contentLocator != null )
+    /**
+     * Returns installable units of the project, parsing project metadata if necessary.
+     */
+    protected synchronized Set<IInstallableUnit> getUnits( GAV gav )
+    {
+        Set<IInstallableUnit> units = changedUnits.get( gav );
+        if ( units != null )
         {
-            load();
+            return units;
         }
+
+        SoftReference<Set<IInstallableUnit>> ref = loadedUnits.get( gav );
+        units = ref != null ? ref.get() : null;
+        if ( units == null )
+        {
+            units = load( gav );
+            loadedUnits.put( gav, new SoftReference<Set<IInstallableUnit>>( units ) );
+        }
+        return units;
     }
 
-    protected void load()
+    /**
+     * Adds installable unit to the project, the unit will be kept in memory until the repository is discarded.
+     */
+    protected synchronized void addUnit( GAV gav, IInstallableUnit unit )
     {
+        Set<IInstallableUnit> units = changedUnits.get( gav );
+        if ( units == null )
+        {
+            units = new LinkedHashSet<IInstallableUnit>();
+            if ( getIndexedGAVs().contains( gav ) )
+            {
+                units.addAll( getUnits( gav ) );
+            }
+            changedUnits.put( gav, units );
+            loadedUnits.remove( gav );
+        }
+        units.add( unit );
+
+        snapshot = null;
+    }
+
+    private Set<IInstallableUnit> load( GAV gav )
+    {
+        if ( contentLocator == null )
+        {
+            return Collections.emptySet();
+        }
+
         MetadataIO io = new MetadataIO();
 
-        for ( GAV gav : projectIndex.getProjectGAVs() )
+        try
         {
+            InputStream is =
+                contentLocator.getContents( gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
+                                            RepositoryLayoutHelper.EXTENSION_P2_METADATA );
             try
             {
-                InputStream is =
-                    contentLocator.getContents( gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
-                                                RepositoryLayoutHelper.EXTENSION_P2_METADATA );
-                try
-                {
-                    Set<IInstallableUnit> gavUnits = io.readXML( is );
-
-                    unitsMap.put( gav, gavUnits );
-                    units.addAll( gavUnits );
-                }
-                finally
-                {
-                    is.close();
-                }
+                return io.readXML( is );
             }
-            catch ( IOException e )
+            finally
             {
-                // too bad
+                is.close();
             }
+        }
+        catch ( IOException e )
+        {
+            // too bad
+            return Collections.emptySet();
+        }
+    }
 
+    private Set<GAV> getIndexedGAVs()
+    {
+        if ( indexedGAVs == null )
+        {
+            indexedGAVs = new LinkedHashSet<GAV>();
+            if ( projectIndex != null )
+            {
+                indexedGAVs.addAll( projectIndex.getProjectGAVs() );
+            }
         }
+        return indexedGAVs;
+    }
+
+    private Set<GAV> getAllGAVs()
+    {
+        Set<GAV> gavs = new LinkedHashSet<GAV>( getIndexedGAVs() );
+        gavs.addAll( changedUnits.keySet() );
+        return gavs;
+    }
+
+    private UnitsSnapshot getSnapshot()
+    {
+        UnitsSnapshot result = snapshot != null ? snapshot.get() : null;
+        if ( result == null )
+        {
+            Set<IInstallableUnit> units = new LinkedHashSet<IInstallableUnit>();
+            for ( GAV gav : getAllGAVs() )
+            {
+                units.addAll( getUnits( gav ) );
+            }
+            result = new UnitsSnapshot( Collections.unmodifiableList( new ArrayList<IInstallableUnit>( units ) ) );
+            snapshot = new SoftReference<UnitsSnapshot>( result );
+        }
+        return result;
     }
 
     @Override
@@ -89,17 +210,59 @@ public abstract class AbstractMavenMetadataRepository
     {
     }
 
-    public IQueryResult<IInstallableUnit> query( IQuery<IInstallableUnit> query, IProgressMonitor monitor )
+    @SuppressWarnings( "unchecked" )
+    public synchronized IQueryResult<IInstallableUnit> query( IQuery<IInstallableUnit> query, IProgressMonitor monitor )
+    {
+        if ( query instanceof IQueryWithIndex<?> )
+        {
+            return ( (IQueryWithIndex<IInstallableUnit>) query ).perform( this );
+        }
+        return query.perform( everything() );
+    }
+
+    public synchronized Iterator<IInstallableUnit> everything()
+    {
+        return getSnapshot().units.iterator();
+    }
+
+    public synchronized IIndex<IInstallableUnit> getIndex( String memberName )
     {
-        return query.perform( units.iterator() );
+        UnitsSnapshot snapshot = getSnapshot();
+        if ( InstallableUnit.MEMBER_ID.equals( memberName ) )
+        {
+            if ( snapshot.idIndex == null )
+            {
+                snapshot.idIndex = new IdIndex( snapshot.units.iterator() );
+            }
+            return snapshot.idIndex;
+        }
+        if ( InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals( memberName ) )
+        {
+            if ( snapshot.capabilityIndex == null )
+            {
+                snapshot.capabilityIndex = new CapabilityIndex( snapshot.units.iterator() );
+            }
+            return snapshot.capabilityIndex;
+        }
+        return null;
+    }
+
+    public Object getManagedProperty( Object client, String memberName, Object key )
+    {
+        return null;
     }
 
     /**
      * For testing purposes only
      */
-    public Map<GAV, Set<IInstallableUnit>> getGAVs()
+    public synchronized Map<GAV, Set<IInstallableUnit>> getGAVs()
     {
-        return unitsMap;
+        Map<GAV, Set<IInstallableUnit>> result = new LinkedHashMap<GAV, Set<IInstallableUnit>>();
+        for ( GAV gav : getAllGAVs() )
+        {
+            result.put( gav, getUnits( gav ) );
+        }
+        return result;
     }
 
     public Collection<IRepositoryReference> getReferences()
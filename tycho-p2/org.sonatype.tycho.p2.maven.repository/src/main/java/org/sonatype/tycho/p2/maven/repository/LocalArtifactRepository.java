@@ -2,8 +2,8 @@ package org.sonatype.tycho.p2.maven.repository;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
@@ -12,6 +12,8 @@ import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
@@ -25,6 +27,7 @@ import org.sonatype.tycho.p2.facade.internal.RepositoryReader;
 import org.sonatype.tycho.p2.facade.internal.TychoRepositoryIndex;
 import org.sonatype.tycho.p2.maven.repository.xmlio.ArtifactsIO;
 
+@SuppressWarnings( "restriction" )
 public class LocalArtifactRepository
     extends AbstractMavenArtifactRepository
 {
@@ -41,11 +44,11 @@ public class LocalArtifactRepository
         super( location.toURI(), projectIndex, contentLocator );
     }
 
-    private void saveMaven()
+    private synchronized void saveMaven()
     {
         File location = getBasedir();
 
-        LocalTychoRepositoryIndex index = new LocalTychoRepositoryIndex( location );
+        LocalTychoRepositoryIndex index = getLocalIndex( projectIndex, location );
 
         ArtifactsIO io = new ArtifactsIO();
 
@@ -100,6 +103,18 @@ public class LocalArtifactRepository
         changedDescriptors.clear();
     }
 
+    /**
+     * Index the repository was loaded from, so projects that are already indexed are not appended again.
+     */
+    static LocalTychoRepositoryIndex getLocalIndex( TychoRepositoryIndex projectIndex, File basedir )
+    {
+        if ( projectIndex instanceof LocalTychoRepositoryIndex )
+        {
+            return (LocalTychoRepositoryIndex) projectIndex;
+        }
+        return new LocalTychoRepositoryIndex( basedir );
+    }
+
     private String getMetadataRelpath( GAV gav )
     {
         String relpath = RepositoryLayoutHelper.getRelativePath(
@@ -126,8 +141,14 @@ public class LocalArtifactRepository
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Returns stream that writes artifact to a temporary file. The file is renamed to its final location and the
+     * artifact descriptor is added to the repository only when the stream is closed, so concurrent downloads never
+     * expose partially written artifacts. Nothing is added if the status of the stream is not OK, i.e. the transfer
+     * failed.
+     */
     @Override
-    public synchronized OutputStream getOutputStream( IArtifactDescriptor descriptor )
+    public OutputStream getOutputStream( IArtifactDescriptor descriptor )
         throws ProvisionException
     {
         GAV gav = RepositoryLayoutHelper.getGAV( descriptor.getProperties() );
@@ -141,31 +162,119 @@ public class LocalArtifactRepository
         File file = new File( basedir, RepositoryLayoutHelper.getRelativePath( gav, null, null ) );
         file.getParentFile().mkdirs();
 
-        // TODO ideally, repository index should be updated after artifact has been written to the file
-
         ArtifactDescriptor newDescriptor = new ArtifactDescriptor( descriptor );
         newDescriptor.setRepository( this );
-        descriptors.add( newDescriptor );
 
-        IArtifactKey key = newDescriptor.getArtifactKey();
-        Set<IArtifactDescriptor> keyDescriptors = descriptorsMap.get( key );
-        if ( keyDescriptors == null )
+        try
         {
-            keyDescriptors = new HashSet<IArtifactDescriptor>();
-            descriptorsMap.put( key, keyDescriptors );
+            File tmp = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
+            return new ArtifactOutputStream( tmp, file, newDescriptor );
+        }
+        catch ( IOException e )
+        {
+            throw new ProvisionException( "Could not create artifact file", e );
         }
-        keyDescriptors.add( newDescriptor );
+    }
 
-        changedDescriptors.add( key );
+    private class ArtifactOutputStream
+        extends FilterOutputStream
+        implements IStateful
+    {
+        private final File tmp;
 
-        try
+        private final File file;
+
+        private final IArtifactDescriptor descriptor;
+
+        private boolean closed;
+
+        private IStatus status = Status.OK_STATUS;
+
+        ArtifactOutputStream( File tmp, File file, IArtifactDescriptor descriptor )
+            throws IOException
         {
-            return new FileOutputStream( file );
+            super( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+            this.tmp = tmp;
+            this.file = file;
+            this.descriptor = descriptor;
         }
-        catch ( FileNotFoundException e )
+
+        @Override
+        public void write( byte[] b, int off, int len )
+            throws IOException
         {
-            throw new ProvisionException( "Could not create artifact file", e );
+            out.write( b, off, len );
         }
+
+        public IStatus getStatus()
+        {
+            return status;
+        }
+
+        public void setStatus( IStatus status )
+        {
+            this.status = status != null ? status : Status.OK_STATUS;
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            if ( closed )
+            {
+                return;
+            }
+            closed = true;
+
+            try
+            {
+                super.close();
+            }
+            catch ( IOException e )
+            {
+                tmp.delete();
+                throw e;
+            }
+
+            if ( !status.isOK() )
+            {
+                // failed or incomplete transfer
+                tmp.delete();
+                return;
+            }
+
+            commitArtifact( tmp, file, descriptor );
+        }
+    }
+
+    private synchronized void commitArtifact( File tmp, File file, IArtifactDescriptor descriptor )
+        throws IOException
+    {
+        // replaces the file if the artifact is already present, it may have been downloaded concurrently or be broken
+        if ( file.exists() && !file.delete() )
+        {
+            tmp.delete();
+            throw new IOException( "Could not replace artifact file " + file );
+        }
+
+        if ( !tmp.renameTo( file ) )
+        {
+            tmp.delete();
+            throw new IOException( "Could not rename " + tmp + " to " + file );
+        }
+
+        descriptors.add( descriptor );
+
+        IArtifactKey key = descriptor.getArtifactKey();
+        Set<IArtifactDescriptor> keyDescriptors = descriptorsMap.get( key );
+        if ( keyDescriptors == null )
+        {
+            keyDescriptors = new HashSet<IArtifactDescriptor>();
+            descriptorsMap.put( key, keyDescriptors );
+        }
+        keyDescriptors.add( descriptor );
+
+        changedDescriptors.add( key );
     }
 
     public IStatus getRawArtifact( IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor )
@@ -220,10 +329,35 @@ public class LocalArtifactRepository
     }
 
     @Override
-    public void addDescriptor( IArtifactDescriptor descriptor )
+    public synchronized void addDescriptor( IArtifactDescriptor descriptor )
     {
         super.addDescriptor( descriptor );
 
         changedDescriptors.add( descriptor.getArtifactKey() );
     }
+
+    @Override
+    public synchronized void removeDescriptor( IArtifactDescriptor descriptor )
+    {
+        super.removeDescriptor( descriptor );
+
+        descriptors.remove( descriptor );
+
+        IArtifactKey key = descriptor.getArtifactKey();
+        Set<IArtifactDescriptor> keyDescriptors = descriptorsMap.get( key );
+        if ( keyDescriptors != null )
+        {
+            keyDescriptors.remove( descriptor );
+            if ( keyDescriptors.isEmpty() )
+            {
+                descriptorsMap.remove( key );
+                // not written by saveMaven, which needs a descriptor to locate it
+                new File( getBasedir(), getMetadataRelpath( getGAV( descriptor ) ) ).delete();
+            }
+        }
+
+        getLocationFile( descriptor ).delete();
+
+        changedDescriptors.add( key );
+    }
 }
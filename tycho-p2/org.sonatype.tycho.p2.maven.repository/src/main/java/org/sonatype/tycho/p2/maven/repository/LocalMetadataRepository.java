@@ -47,7 +47,7 @@ public class LocalMetadataRepository
     }
 
     @Override
-    public void addInstallableUnits( Collection<IInstallableUnit> newUnits )
+    public synchronized void addInstallableUnits( Collection<IInstallableUnit> newUnits )
     {
         for ( IInstallableUnit unit : newUnits )
         {
@@ -59,35 +59,27 @@ public class LocalMetadataRepository
         save();
     }
 
-    public void addInstallableUnit( IInstallableUnit unit, GAV gav )
+    public synchronized void addInstallableUnit( IInstallableUnit unit, GAV gav )
     {
-        this.units.add( unit );
-
-        Set<IInstallableUnit> gavUnits = unitsMap.get( gav );
-        if ( gavUnits == null )
-        {
-            gavUnits = new LinkedHashSet<IInstallableUnit>();
-            unitsMap.put( gav, gavUnits );
-        }
-        gavUnits.add( unit );
+        addUnit( gav, unit );
 
         changedGAVs.add( gav );
     }
 
-    public void save()
+    public synchronized void save()
     {
         File basedir = new File( getLocation() );
 
-        // XXX lock
-        LocalTychoRepositoryIndex index = new LocalTychoRepositoryIndex( basedir );
+        // index appends changed projects under a lock, no need to lock here
+        LocalTychoRepositoryIndex index = LocalArtifactRepository.getLocalIndex( projectIndex, basedir );
 
         MetadataIO io = new MetadataIO();
 
         for ( GAV gav : changedGAVs )
         {
-            Set<IInstallableUnit> gavUnits = unitsMap.get( gav );
+            Set<IInstallableUnit> gavUnits = getUnits( gav );
 
-            if ( gavUnits != null && !gavUnits.isEmpty() )
+            if ( !gavUnits.isEmpty() )
             {
                 String relpath =
                     RepositoryLayoutHelper.getRelativePath( gav, RepositoryLayoutHelper.CLASSIFIER_P2_METADATA,
@@ -0,0 +1,129 @@
+package org.sonatype.tycho.p2.maven.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
+
+/**
+ * Mirrors artifacts from a source repository into maven local repository using several concurrent requests.
+ * <p>
+ * Number of concurrent downloads from one repository is limited by {@link #PROP_MAX_THREADS_PER_REPOSITORY} system
+ * property. Number of concurrent downloads of all resolvers running in the same JVM is limited by
+ * {@link #PROP_MAX_THREADS} system property.
+ */
+public class ParallelArtifactMirror
+{
+    public static final String PROP_MAX_THREADS = "tycho.p2.download.maxThreads";
+
+    public static final String PROP_MAX_THREADS_PER_REPOSITORY = "tycho.p2.download.maxThreadsPerRepository";
+
+    private static final int DEFAULT_MAX_THREADS = 8;
+
+    private static final int DEFAULT_MAX_THREADS_PER_REPOSITORY = 4;
+
+    private static final IArtifactRequest[] ARTIFACT_REQUEST_ARRAY = new IArtifactRequest[0];
+
+    private static final Semaphore downloads =
+        new Semaphore( Math.max( 1, Integer.getInteger( PROP_MAX_THREADS, DEFAULT_MAX_THREADS ).intValue() ), true );
+
+    private final int maxThreadsPerRepository;
+
+    public ParallelArtifactMirror()
+    {
+        this( Integer.getInteger( PROP_MAX_THREADS_PER_REPOSITORY, DEFAULT_MAX_THREADS_PER_REPOSITORY ).intValue() );
+    }
+
+    public ParallelArtifactMirror( int maxThreadsPerRepository )
+    {
+        this.maxThreadsPerRepository = Math.max( 1, maxThreadsPerRepository );
+    }
+
+    /**
+     * Performs requests against the source repository and returns when all requests are completed. Results are
+     * available from the individual requests.
+     */
+    public void mirror( final IArtifactRepository source, List<? extends IArtifactRequest> requests,
+                        IProgressMonitor monitor )
+    {
+        int threads = Math.min( maxThreadsPerRepository, requests.size() );
+
+        if ( threads <= 1 )
+        {
+            getArtifacts( source, requests.toArray( ARTIFACT_REQUEST_ARRAY ), monitor );
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for ( final IArtifactRequest[] chunk : split( requests, threads ) )
+            {
+                futures.add( executor.submit( new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        getArtifacts( source, chunk, new NullProgressMonitor() );
+                        return null;
+                    }
+                } ) );
+            }
+
+            for ( Future<?> future : futures )
+            {
+                future.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            throw new RuntimeException( e );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException( e.getCause() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private void getArtifacts( IArtifactRepository source, IArtifactRequest[] requests, IProgressMonitor monitor )
+    {
+        downloads.acquireUninterruptibly();
+        try
+        {
+            source.getArtifacts( requests, monitor );
+        }
+        finally
+        {
+            downloads.release();
+        }
+    }
+
+    private static List<IArtifactRequest[]> split( List<? extends IArtifactRequest> requests, int chunks )
+    {
+        List<IArtifactRequest[]> result = new ArrayList<IArtifactRequest[]>();
+        int chunkSize = ( requests.size() + chunks - 1 ) / chunks;
+        for ( int i = 0; i < requests.size(); i += chunkSize )
+        {
+            List<? extends IArtifactRequest> chunk = requests.subList( i, Math.min( i + chunkSize, requests.size() ) );
+            result.add( chunk.toArray( ARTIFACT_REQUEST_ARRAY ) );
+        }
+        return result;
+    }
+}
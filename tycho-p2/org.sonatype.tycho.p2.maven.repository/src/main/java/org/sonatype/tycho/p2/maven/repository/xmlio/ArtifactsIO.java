@@ -22,6 +22,14 @@ import org.xml.sax.SAXException;
 @SuppressWarnings( "restriction" )
 public class ArtifactsIO
 {
+    private static final ThreadLocal<Parser35M7> parsers = new ThreadLocal<Parser35M7>()
+    {
+        @Override
+        protected Parser35M7 initialValue()
+        {
+            return new Parser35M7( Activator.getContext(), Activator.ID );
+        }
+    };
 
     private static class Writer35M7
         extends SimpleArtifactRepositoryIO.Writer
@@ -124,7 +132,9 @@ public class ArtifactsIO
 
         public Set<IArtifactDescriptor> getArtifacts()
         {
-            return artifacts;
+            Set<IArtifactDescriptor> result = artifacts;
+            artifacts = null;
+            return result;
         }
 
     }
@@ -132,7 +142,8 @@ public class ArtifactsIO
     public Set<IArtifactDescriptor> readXML( InputStream is )
         throws IOException
     {
-        Parser35M7 parser = new Parser35M7( Activator.getContext(), Activator.ID );
+        // parsers track SAX parser factory service and are expensive to set up
+        Parser35M7 parser = parsers.get();
 
         parser.parse( is );
 
@@ -31,6 +31,18 @@ import org.xml.sax.SAXException;
 @SuppressWarnings( "restriction" )
 public class MetadataIO
 {
+    /**
+     * Parsers are expensive to set up, each one tracks SAX parser factory service, so they are reused by the thread.
+     */
+    private static final ThreadLocal<Parser> parsers = new ThreadLocal<Parser>()
+    {
+        @Override
+        protected Parser initialValue()
+        {
+            return new Parser();
+        }
+    };
+
     private static class Writer
         extends MetadataWriter
     {
@@ -174,20 +186,28 @@ public class MetadataIO
 
         public List<InstallableUnitDescription> getUnits()
         {
-            return units;
+            List<InstallableUnitDescription> result = units;
+            units = null;
+            return result;
         }
     }
 
     public Set<IInstallableUnit> readXML( InputStream is )
         throws IOException
     {
-        Parser parser = new Parser();
+        Parser parser = parsers.get();
 
         parser.parse( is, new NullProgressMonitor() );
+        List<InstallableUnitDescription> descriptions = parser.getUnits();
 
         Set<IInstallableUnit> units = new LinkedHashSet<IInstallableUnit>();
 
-        for ( InstallableUnitDescription desc : parser.getUnits() )
+        if ( descriptions == null )
+        {
+            return units;
+        }
+
+        for ( InstallableUnitDescription desc : descriptions )
         {
             units.add( MetadataFactory.createInstallableUnit( desc ) );
         }
@@ -0,0 +1,15 @@
+package org.sonatype.tycho.p2.facade;
+
+/**
+ * Runs eclipse applications, like the p2 publisher applications, inside the embedded p2 runtime.
+ */
+public interface P2ApplicationLauncher
+{
+    /**
+     * @param applicationId id of the org.eclipse.core.runtime.applications extension
+     * @param args application arguments, without launcher and framework arguments
+     * @return application exit code, 0 on success
+     */
+    public int run( String applicationId, String[] args )
+        throws Exception;
+}
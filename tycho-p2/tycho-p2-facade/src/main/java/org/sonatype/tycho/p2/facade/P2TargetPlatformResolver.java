@@ -2,6 +2,7 @@ package org.sonatype.tycho.p2.facade;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -17,6 +18,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.maven.ProjectDependenciesResolver;
 import org.apache.maven.artifact.Artifact;
@@ -70,6 +72,8 @@ public class P2TargetPlatformResolver
 
     public static final String ROLE_HINT = "p2";
 
+    private static final String REPOSITORY_CACHE_PATH = ".cache/tycho-p2";
+
     @Requirement
     private EquinoxEmbedder equinox;
 
@@ -101,6 +105,12 @@ public class P2TargetPlatformResolver
 
         P2Resolver resolver = resolverFactory.createResolver();
 
+        if ( Boolean.getBoolean( P2RepositoryCache.PROP_PERSISTENT ) )
+        {
+            repositoryCache.setCacheDirectory( new File( session.getLocalRepository().getBasedir(),
+                                                         REPOSITORY_CACHE_PATH ) );
+        }
+
         resolver.setRepositoryCache( repositoryCache );
 
         resolver.setLogger( new P2Logger()
@@ -261,14 +271,7 @@ public class P2TargetPlatformResolver
                             reader.setArtifactRepository( repository );
                             reader.setLocalRepository( session.getLocalRepository() );
 
-                            String repositoryKey = getRepositoryKey( repository );
-                            TychoRepositoryIndex index = repositoryCache.getRepositoryIndex( repositoryKey );
-                            if ( index == null )
-                            {
-                                index = new DefaultTychoRepositoryIndex( reader );
-
-                                repositoryCache.putRepositoryIndex( repositoryKey, index );
-                            }
+                            TychoRepositoryIndex index = getRepositoryIndex( repository, reader );
 
                             resolver.addMavenRepository( uri, index, reader );
                             getLogger().debug(
@@ -380,6 +383,11 @@ public class P2TargetPlatformResolver
 
         List<P2ResolutionResult> results = resolver.resolveProject( project.getBasedir() );
 
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( "P2 repository cache statistics\n" + repositoryCache.getStatistics() );
+        }
+
         MultiEnvironmentTargetPlatform multiPlatform = new MultiEnvironmentTargetPlatform();
 
         // FIXME this is just wrong
@@ -410,6 +418,11 @@ public class P2TargetPlatformResolver
             multiPlatform.addPlatform( environment, platform );
         }
 
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( "Target platform artifact caches " + DefaultTargetPlatform.getCacheStatistics() );
+        }
+
         return multiPlatform;
     }
 
@@ -439,6 +452,20 @@ public class P2TargetPlatformResolver
         return environments;
     }
 
+    private TychoRepositoryIndex getRepositoryIndex( ArtifactRepository repository,
+                                                     final MavenRepositoryReader reader )
+        throws Exception
+    {
+        return repositoryCache.getRepositoryIndex( getRepositoryKey( repository ), new Callable<TychoRepositoryIndex>()
+        {
+            public TychoRepositoryIndex call()
+                throws IOException
+            {
+                return new DefaultTychoRepositoryIndex( reader );
+            }
+        } );
+    }
+
     private String getRepositoryKey( ArtifactRepository repository )
     {
         StringBuilder sb = new StringBuilder();
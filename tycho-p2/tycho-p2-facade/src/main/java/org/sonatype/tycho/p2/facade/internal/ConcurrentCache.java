@@ -0,0 +1,204 @@
+package org.sonatype.tycho.p2.facade.internal;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Thread safe in-memory cache with least-recently-used eviction, optional time-to-live and single-flight loading:
+ * concurrent requests for a missing key wait for the first requester to load the value instead of loading it again.
+ */
+public class ConcurrentCache<K, V>
+{
+    private final long timeToLive;
+
+    private final Map<K, CacheEntry<V>> entries;
+
+    private final Map<K, FutureTask<V>> loading = new HashMap<K, FutureTask<V>>();
+
+    private long hits;
+
+    private long misses;
+
+    private long loadTime;
+
+    private static class CacheEntry<V>
+    {
+        final V value;
+
+        final long created;
+
+        CacheEntry( V value, long created )
+        {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    /**
+     * @param maxSize maximum number of cached values, values are never evicted if <code>maxSize &lt;= 0</code>.
+     * @param timeToLive milliseconds, values never expire if <code>timeToLive &lt;= 0</code>.
+     */
+    public ConcurrentCache( final int maxSize, long timeToLive )
+    {
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<K, CacheEntry<V>> eldest )
+            {
+                return maxSize > 0 && size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized V get( K key )
+    {
+        V value = getCached( key );
+        if ( value != null )
+        {
+            hits++;
+        }
+        else
+        {
+            misses++;
+        }
+        return value;
+    }
+
+    public synchronized void put( K key, V value )
+    {
+        if ( value != null )
+        {
+            entries.put( key, new CacheEntry<V>( value, System.currentTimeMillis() ) );
+        }
+        else
+        {
+            entries.remove( key );
+        }
+    }
+
+    /**
+     * Returns cached value of the key or loads it using the provided loader. <code>null</code> values are not cached.
+     */
+    public V get( K key, Callable<V> loader )
+        throws Exception
+    {
+        FutureTask<V> task;
+        boolean owner = false;
+        synchronized ( this )
+        {
+            V value = getCached( key );
+            if ( value != null )
+            {
+                hits++;
+                return value;
+            }
+
+            task = loading.get( key );
+            if ( task == null )
+            {
+                task = new FutureTask<V>( loader );
+                loading.put( key, task );
+                owner = true;
+                misses++;
+            }
+            else
+            {
+                // loaded by another thread, counts as a hit
+                hits++;
+            }
+        }
+
+        if ( owner )
+        {
+            long start = System.currentTimeMillis();
+            task.run();
+            synchronized ( this )
+            {
+                loadTime += System.currentTimeMillis() - start;
+                loading.remove( key );
+                try
+                {
+                    put( key, task.get() );
+                }
+                catch ( ExecutionException e )
+                {
+                    // rethrown below
+                }
+            }
+        }
+
+        try
+        {
+            return task.get();
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof Exception )
+            {
+                throw (Exception) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Total time in milliseconds spent loading values.
+     */
+    public synchronized long getLoadTime()
+    {
+        return loadTime;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "size=" + entries.size() + ", hits=" + hits + ", misses=" + misses + ", loadTime=" + loadTime + "ms";
+    }
+
+    private V getCached( K key )
+    {
+        CacheEntry<V> entry = entries.get( key );
+        if ( entry == null )
+        {
+            return null;
+        }
+        if ( timeToLive > 0 && System.currentTimeMillis() - entry.created > timeToLive )
+        {
+            entries.remove( key );
+            return null;
+        }
+        return entry.value;
+    }
+}
@@ -9,6 +9,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -39,6 +40,11 @@ public class DefaultTychoRepositoryIndex
         gavs = read( repositoryReader.getContents( INDEX_RELPATH ) );
     }
 
+    public DefaultTychoRepositoryIndex( Collection<GAV> gavs )
+    {
+        this.gavs = new LinkedHashSet<GAV>( gavs );
+    }
+
     protected static Set<GAV> read( InputStream is )
         throws IOException
     {
@@ -1,45 +1,193 @@
 package org.sonatype.tycho.p2.facade.internal;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
-
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Simplistic local Maven repository index to allow efficient lookup 
- * of all installed Tycho projects.
+ * Simplistic local Maven repository index to allow efficient lookup of all installed Tycho projects.
+ * <p>
+ * Index file is used as an append-only journal, new projects are appended to the end of the file. Projects this
+ * instance has loaded or saved before are not appended again. Duplicate entries written by other builds are removed when the index is read and the file has grown much bigger than the number of projects it lists. Writes
+ * are guarded by a file lock, so builds running in different processes do not lose each other's entries. Index
+ * content is read lazily, on first access.
  */
 public class LocalTychoRepositoryIndex
     extends DefaultTychoRepositoryIndex
 {
+    public static final String LOCK_RELPATH = ".meta/p2-metadata.lock";
+
+    /** Index is compacted when it has more duplicate than unique entries, but not for a handful of duplicates */
+    private static final int MIN_COMPACTION_DUPLICATES = 100;
+
+    private static final Map<File, IndexLock> locks = new HashMap<File, IndexLock>();
+
+    private final File basedir;
+
     private final File indexFile;
 
+    /** projects to append on next save */
+    private final Set<GAV> added = new LinkedHashSet<GAV>();
+
+    /** projects appended by this instance */
+    private final Set<GAV> saved = new HashSet<GAV>();
+
+    private boolean loaded;
+
+    private static class IndexLock
+    {
+        final ReentrantLock threadLock = new ReentrantLock();
+
+        RandomAccessFile file;
+
+        FileLock fileLock;
+    }
+
     public LocalTychoRepositoryIndex( File basedir )
     {
+        this.basedir = basedir;
         this.indexFile = new File( basedir, INDEX_RELPATH );
+    }
+
+    public static void addProject( File basedir, String groupId, String artifactId, String version )
+        throws IOException
+    {
+        LocalTychoRepositoryIndex index = new LocalTychoRepositoryIndex( basedir );
+        index.addProject( groupId, artifactId, version );
+        index.save();
+    }
+
+    @Override
+    public synchronized List<GAV> getProjectGAVs()
+    {
+        load();
+        return super.getProjectGAVs();
+    }
+
+    @Override
+    public synchronized void addProject( GAV gav )
+    {
+        if ( saved.contains( gav ) || ( loaded && gavs.contains( gav ) ) )
+        {
+            return;
+        }
+        added.add( gav );
+        if ( loaded )
+        {
+            gavs.add( gav );
+        }
+    }
+
+    @Override
+    public synchronized void write( OutputStream os )
+        throws IOException
+    {
+        load();
+        super.write( os );
+    }
+
+    /**
+     * Appends projects added since the last load or save to the index file.
+     */
+    public synchronized void save()
+        throws IOException
+    {
+        if ( added.isEmpty() )
+        {
+            return;
+        }
+
+        lock( basedir );
         try
         {
-            this.gavs = read( new FileInputStream( indexFile ) );
+            indexFile.getParentFile().mkdirs();
+
+            StringBuilder sb = new StringBuilder();
+            if ( !endsWithEOL( indexFile ) )
+            {
+                // partially written entry of a crashed build
+                sb.append( EOL );
+            }
+            for ( GAV gav : added )
+            {
+                sb.append( gav.toExternalForm() ).append( EOL );
+            }
+
+            FileOutputStream os = new FileOutputStream( indexFile, true );
+            try
+            {
+                os.write( sb.toString().getBytes( ENCODING ) );
+            }
+            finally
+            {
+                os.close();
+            }
+
+            saved.addAll( added );
+            added.clear();
+        }
+        finally
+        {
+            unlock( basedir );
+        }
+    }
+
+    private void load()
+    {
+        if ( loaded )
+        {
+            return;
+        }
+
+        gavs = new LinkedHashSet<GAV>();
+        try
+        {
+            int entries = read( indexFile, gavs );
+            if ( entries - gavs.size() > Math.max( gavs.size(), MIN_COMPACTION_DUPLICATES ) )
+            {
+                compact();
+            }
         }
         catch ( IOException e )
         {
             // lets assume index does not exist yet
-            this.gavs = new LinkedHashSet<GAV>();
         }
+        gavs.addAll( added );
+        loaded = true;
     }
 
-    public static void addProject( File basedir, String groupId, String artifactId, String version )
+    private void compact()
         throws IOException
     {
         lock( basedir );
-
         try
         {
-            LocalTychoRepositoryIndex index = new LocalTychoRepositoryIndex( basedir );
-            index.addProject( groupId, artifactId, version );
-            index.save();
+            // re-read under lock, other processes may have appended entries
+            LinkedHashSet<GAV> current = new LinkedHashSet<GAV>();
+            read( indexFile, current );
+
+            File tmp = new File( indexFile.getParentFile(), indexFile.getName() + ".tmp" );
+            new DefaultTychoRepositoryIndex( current ).write( new FileOutputStream( tmp ) );
+            if ( !tmp.renameTo( indexFile ) && ( !indexFile.delete() || !tmp.renameTo( indexFile ) ) )
+            {
+                tmp.delete();
+                throw new IOException( "Could not compact " + indexFile );
+            }
+
+            gavs = current;
         }
         finally
         {
@@ -47,24 +195,148 @@ public class LocalTychoRepositoryIndex
         }
     }
 
-    public void save()
+    /**
+     * Reads index entries into the provided set, ignoring malformed lines, and returns total number of entries.
+     */
+    private static int read( File file, Set<GAV> result )
         throws IOException
     {
-        indexFile.getParentFile().mkdirs();
+        int entries = 0;
+        BufferedReader br = new BufferedReader( new InputStreamReader( new FileInputStream( file ), ENCODING ) );
+        try
+        {
+            String str;
+            while ( ( str = br.readLine() ) != null )
+            {
+                try
+                {
+                    GAV gav = GAV.parse( str );
+                    if ( gav != null )
+                    {
+                        result.add( gav );
+                        entries++;
+                    }
+                }
+                catch ( IllegalArgumentException e )
+                {
+                    // partially written entry
+                }
+            }
+        }
+        finally
+        {
+            br.close();
+        }
+        return entries;
+    }
 
-        write( new FileOutputStream( indexFile ) );
+    private static boolean endsWithEOL( File file )
+        throws IOException
+    {
+        if ( !file.isFile() || file.length() == 0 )
+        {
+            return true;
+        }
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            raf.seek( raf.length() - 1 );
+            return raf.read() == '\n';
+        }
+        finally
+        {
+            raf.close();
+        }
     }
 
-    public static void unlock( File basedir )
+    /**
+     * Acquires exclusive lock of the local repository index. The lock is reentrant and guards the index against
+     * concurrent modification by other threads and other processes.
+     */
+    public static void lock( File basedir )
+        throws IOException
     {
-        // TODO Auto-generated method stub
+        IndexLock lock = getLock( basedir );
 
+        lock.threadLock.lock();
+        if ( lock.threadLock.getHoldCount() > 1 )
+        {
+            return;
+        }
+
+        try
+        {
+            File lockFile = new File( basedir, LOCK_RELPATH );
+            lockFile.getParentFile().mkdirs();
+            lock.file = new RandomAccessFile( lockFile, "rw" );
+            lock.fileLock = lock.file.getChannel().lock();
+        }
+        catch ( IOException e )
+        {
+            closeLockFile( lock );
+            lock.threadLock.unlock();
+            throw e;
+        }
     }
 
-    public static void lock( File basedir )
+    public static void unlock( File basedir )
     {
-        // TODO Auto-generated method stub
+        IndexLock lock = getLock( basedir );
 
+        if ( !lock.threadLock.isHeldByCurrentThread() )
+        {
+            throw new IllegalStateException( "Local repository index is not locked by current thread" );
+        }
+
+        try
+        {
+            if ( lock.threadLock.getHoldCount() == 1 )
+            {
+                closeLockFile( lock );
+            }
+        }
+        finally
+        {
+            lock.threadLock.unlock();
+        }
     }
 
+    private static void closeLockFile( IndexLock lock )
+    {
+        try
+        {
+            if ( lock.fileLock != null )
+            {
+                lock.fileLock.release();
+            }
+            if ( lock.file != null )
+            {
+                lock.file.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // lock is released when the file is closed or the process exits
+        }
+        finally
+        {
+            lock.fileLock = null;
+            lock.file = null;
+        }
+    }
+
+    private static IndexLock getLock( File basedir )
+    {
+        File key = basedir.getAbsoluteFile();
+        synchronized ( locks )
+        {
+            IndexLock lock = locks.get( key );
+            if ( lock == null )
+            {
+                lock = new IndexLock();
+                locks.put( key, lock );
+            }
+            return lock;
+        }
+    }
 }
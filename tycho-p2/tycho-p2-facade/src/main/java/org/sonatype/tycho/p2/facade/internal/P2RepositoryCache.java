@@ -1,19 +1,76 @@
 package org.sonatype.tycho.p2.facade.internal;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.util.HashMap;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.codehaus.plexus.component.annotations.Component;
 
+/**
+ * Repositories, repository indexes and derived resolution data shared by all modules of the build. All methods are
+ * thread safe. Repositories and indexes are loaded only once even if several modules request them concurrently.
+ * <p>
+ * Cache size and time-to-live are controlled by {@link #PROP_MAX_SIZE} and {@link #PROP_TTL} system properties. If
+ * cache directory is set, Tycho repository indexes are also stored on disk. By default, stored indexes are only used
+ * when the remote repository is not available, every build loads the index from the repository once. Stored indexes
+ * are used without revalidation while they are younger than {@link #PROP_PERSISTENT_TTL}.
+ */
 @Component( role = P2RepositoryCache.class )
 public class P2RepositoryCache
 {
+    public static final String PROP_MAX_SIZE = "tycho.p2.repositoryCache.maxSize";
 
-    private HashMap<URI, Object> artifactRepositories = new HashMap<URI, Object>();
+    /** Time-to-live of cached repositories and indexes, in seconds */
+    public static final String PROP_TTL = "tycho.p2.repositoryCache.ttl";
 
-    private HashMap<URI, Object> metadataRepositories = new HashMap<URI, Object>();
+    /** Enables on-disk cache of Tycho repository indexes */
+    public static final String PROP_PERSISTENT = "tycho.p2.repositoryCache.persistent";
 
-    private HashMap<String, TychoRepositoryIndex> indexes = new HashMap<String, TychoRepositoryIndex>();
+    /** Time in seconds stored Tycho repository indexes are used without loading them from the repository */
+    public static final String PROP_PERSISTENT_TTL = "tycho.p2.repositoryCache.persistentTtl";
+
+    private static final int DEFAULT_MAX_SIZE = 64;
+
+    private static final long DEFAULT_TTL = 24 * 60 * 60;
+
+    private static final int MAX_CACHED_SLICES = 100;
+
+    private final int maxSize = Integer.getInteger( PROP_MAX_SIZE, DEFAULT_MAX_SIZE ).intValue();
+
+    private final long timeToLive = Long.getLong( PROP_TTL, DEFAULT_TTL ).longValue() * 1000;
+
+    private final long persistentTimeToLive = Long.getLong( PROP_PERSISTENT_TTL, 0 ).longValue() * 1000;
+
+    private final ConcurrentCache<URI, Object> artifactRepositories =
+        new ConcurrentCache<URI, Object>( maxSize, timeToLive );
+
+    private final ConcurrentCache<URI, Object> metadataRepositories =
+        new ConcurrentCache<URI, Object>( maxSize, timeToLive );
+
+    private final ConcurrentCache<String, TychoRepositoryIndex> indexes =
+        new ConcurrentCache<String, TychoRepositoryIndex>( maxSize, timeToLive );
+
+    /**
+     * Installable units available from a list of repositories, keyed by the list of repository locations
+     */
+    private final ConcurrentCache<Object, Object> installableUnits =
+        new ConcurrentCache<Object, Object>( maxSize, timeToLive );
+
+    /**
+     * Results of slicing available installable units for project root units and selection context
+     */
+    private final ConcurrentCache<Object, Object> slices = new ConcurrentCache<Object, Object>( MAX_CACHED_SLICES, 0 );
+
+    private File cacheDirectory;
+
+    private int diskHits;
 
     public Object getArtifactRepository( URI uri )
     {
@@ -25,6 +82,18 @@ public class P2RepositoryCache
         return metadataRepositories.get( uri );
     }
 
+    public Object getArtifactRepository( URI uri, Callable<Object> loader )
+        throws Exception
+    {
+        return artifactRepositories.get( uri, loader );
+    }
+
+    public Object getMetadataRepository( URI uri, Callable<Object> loader )
+        throws Exception
+    {
+        return metadataRepositories.get( uri, loader );
+    }
+
     public void putRepository( URI uri, Object metadataRepository, Object artifactRepository )
     {
         metadataRepositories.put( uri, metadataRepository );
@@ -36,8 +105,176 @@ public class P2RepositoryCache
         return indexes.get( repositoryKey );
     }
 
+    public TychoRepositoryIndex getRepositoryIndex( final String repositoryKey,
+                                                    final Callable<TychoRepositoryIndex> loader )
+        throws Exception
+    {
+        return indexes.get( repositoryKey, new Callable<TychoRepositoryIndex>()
+        {
+            public TychoRepositoryIndex call()
+                throws Exception
+            {
+                return loadRepositoryIndex( repositoryKey, loader );
+            }
+        } );
+    }
+
     public void putRepositoryIndex( String repositoryKey, TychoRepositoryIndex index )
     {
         indexes.put( repositoryKey, index );
     }
+
+    public Object getInstallableUnits( Object key )
+    {
+        return installableUnits.get( key );
+    }
+
+    public Object getInstallableUnits( Object key, Callable<Object> loader )
+        throws Exception
+    {
+        return installableUnits.get( key, loader );
+    }
+
+    public void putInstallableUnits( Object key, Object units )
+    {
+        installableUnits.put( key, units );
+    }
+
+    public Object getSlice( Object key )
+    {
+        return slices.get( key );
+    }
+
+    public void putSlice( Object key, Object slice )
+    {
+        slices.put( key, slice );
+    }
+
+    /**
+     * Enables on-disk cache of Tycho repository indexes in the specified directory.
+     */
+    public synchronized void setCacheDirectory( File cacheDirectory )
+    {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public synchronized String getStatistics()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "metadata repositories: " ).append( metadataRepositories ).append( '\n' );
+        sb.append( "artifact repositories: " ).append( artifactRepositories ).append( '\n' );
+        sb.append( "repository indexes: " ).append( indexes ).append( ", diskHits=" ).append( diskHits ).append( '\n' );
+        sb.append( "installable units: " ).append( installableUnits ).append( '\n' );
+        sb.append( "slices: " ).append( slices );
+        return sb.toString();
+    }
+
+    private TychoRepositoryIndex loadRepositoryIndex( String repositoryKey, Callable<TychoRepositoryIndex> loader )
+        throws Exception
+    {
+        File file = getIndexFile( repositoryKey );
+
+        if ( file == null )
+        {
+            return loader.call();
+        }
+
+        if ( file.isFile() && System.currentTimeMillis() - file.lastModified() < persistentTimeToLive )
+        {
+            TychoRepositoryIndex index = readIndex( file );
+            if ( index != null )
+            {
+                countDiskHit();
+                return index;
+            }
+        }
+
+        TychoRepositoryIndex index;
+        try
+        {
+            index = loader.call();
+        }
+        catch ( IOException e )
+        {
+            // repository is not available, use stale copy if we have one
+            TychoRepositoryIndex stale = file.isFile() ? readIndex( file ) : null;
+            if ( stale != null )
+            {
+                countDiskHit();
+                return stale;
+            }
+            throw e;
+        }
+
+        writeIndex( file, index );
+
+        return index;
+    }
+
+    private synchronized void countDiskHit()
+    {
+        diskHits++;
+    }
+
+    private synchronized File getIndexFile( String repositoryKey )
+        throws NoSuchAlgorithmException, UnsupportedEncodingException
+    {
+        if ( cacheDirectory == null )
+        {
+            return null;
+        }
+
+        MessageDigest digest = MessageDigest.getInstance( "MD5" );
+        StringBuilder name = new StringBuilder();
+        for ( byte b : digest.digest( repositoryKey.getBytes( "UTF-8" ) ) )
+        {
+            name.append( Integer.toHexString( ( b & 0xff ) | 0x100 ).substring( 1 ) );
+        }
+        return new File( cacheDirectory, name.append( ".index" ).toString() );
+    }
+
+    private TychoRepositoryIndex readIndex( File file )
+    {
+        try
+        {
+            return new DefaultTychoRepositoryIndex( DefaultTychoRepositoryIndex.read( new FileInputStream( file ) ) );
+        }
+        catch ( IOException e )
+        {
+            // corrupted or removed by another build
+            return null;
+        }
+    }
+
+    private void writeIndex( File file, TychoRepositoryIndex index )
+    {
+        List<GAV> gavs = index.getProjectGAVs();
+
+        TychoRepositoryIndex cached = file.isFile() ? readIndex( file ) : null;
+        if ( cached != null && cached.getProjectGAVs().equals( gavs ) )
+        {
+            // not changed, just mark revalidated
+            file.setLastModified( System.currentTimeMillis() );
+            return;
+        }
+
+        try
+        {
+            file.getParentFile().mkdirs();
+            File tmp = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
+            new DefaultTychoRepositoryIndex( gavs ).write( new FileOutputStream( tmp ) );
+            if ( !tmp.renameTo( file ) )
+            {
+                file.delete();
+                if ( !tmp.renameTo( file ) )
+                {
+                    tmp.delete();
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            // disk cache is optional
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package org.sonatype.tycho.p2.facade.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.tycho.p2.facade.internal.GAV;
+import org.sonatype.tycho.p2.facade.internal.LocalTychoRepositoryIndex;
+
+public class LocalTychoRepositoryIndexTest
+{
+    private File basedir;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        basedir = new File( "target/localindex" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+    }
+
+    @Test
+    public void testAppend()
+        throws IOException
+    {
+        LocalTychoRepositoryIndex.addProject( basedir, "g", "a", "1.0.0" );
+        LocalTychoRepositoryIndex.addProject( basedir, "g", "b", "1.0.0" );
+        LocalTychoRepositoryIndex.addProject( basedir, "g", "a", "1.0.0" );
+
+        List<GAV> gavs = new LocalTychoRepositoryIndex( basedir ).getProjectGAVs();
+        Assert.assertEquals( 2, gavs.size() );
+        Assert.assertEquals( new GAV( "g", "a", "1.0.0" ), gavs.get( 0 ) );
+        Assert.assertEquals( new GAV( "g", "b", "1.0.0" ), gavs.get( 1 ) );
+    }
+
+    @Test
+    public void testAppendOnlyNewProjects()
+        throws IOException
+    {
+        LocalTychoRepositoryIndex.addProject( basedir, "g", "a", "1.0.0" );
+        File indexFile = new File( basedir, LocalTychoRepositoryIndex.INDEX_RELPATH );
+
+        LocalTychoRepositoryIndex index = new LocalTychoRepositoryIndex( basedir );
+        index.getProjectGAVs();
+        // loaded
+        index.addProject( "g", "a", "1.0.0" );
+        index.save();
+        index.addProject( "g", "b", "1.0.0" );
+        index.addProject( "g", "b", "1.0.0" );
+        index.save();
+        // saved
+        index.addProject( "g", "b", "1.0.0" );
+        index.save();
+
+        Assert.assertEquals( "g:a:1.0.0\ng:b:1.0.0\n", FileUtils.fileRead( indexFile ) );
+    }
+
+    @Test
+    public void testCompaction()
+        throws IOException
+    {
+        for ( int i = 0; i < 200; i++ )
+        {
+            LocalTychoRepositoryIndex.addProject( basedir, "g", "a", "1.0.0" );
+        }
+
+        Assert.assertEquals( 1, new LocalTychoRepositoryIndex( basedir ).getProjectGAVs().size() );
+
+        String content = FileUtils.fileRead( new File( basedir, LocalTychoRepositoryIndex.INDEX_RELPATH ) );
+        Assert.assertEquals( "g:a:1.0.0\n", content );
+    }
+
+    @Test
+    public void testPartiallyWrittenEntry()
+        throws IOException
+    {
+        LocalTychoRepositoryIndex.addProject( basedir, "g", "a", "1.0.0" );
+
+        FileOutputStream os = new FileOutputStream( new File( basedir, LocalTychoRepositoryIndex.INDEX_RELPATH ), true );
+        os.write( "g:b".getBytes( "UTF8" ) );
+        os.close();
+
+        LocalTychoRepositoryIndex.addProject( basedir, "g", "c", "1.0.0" );
+
+        List<GAV> gavs = new LocalTychoRepositoryIndex( basedir ).getProjectGAVs();
+        Assert.assertEquals( 2, gavs.size() );
+        Assert.assertEquals( new GAV( "g", "c", "1.0.0" ), gavs.get( 1 ) );
+    }
+
+    @Test
+    public void testConcurrentAdd()
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for ( int i = 0; i < 100; i++ )
+            {
+                final String artifactId = "a" + i;
+                futures.add( executor.submit( new Callable<Object>()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        LocalTychoRepositoryIndex.addProject( basedir, "g", artifactId, "1.0.0" );
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<Object> future : futures )
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals( 100, new LocalTychoRepositoryIndex( basedir ).getProjectGAVs().size() );
+    }
+}
@@ -0,0 +1,221 @@
+package org.sonatype.tycho.p2.facade.test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonatype.tycho.p2.facade.internal.ConcurrentCache;
+import org.sonatype.tycho.p2.facade.internal.DefaultTychoRepositoryIndex;
+import org.sonatype.tycho.p2.facade.internal.GAV;
+import org.sonatype.tycho.p2.facade.internal.P2RepositoryCache;
+import org.sonatype.tycho.p2.facade.internal.TychoRepositoryIndex;
+
+public class P2RepositoryCacheTest
+{
+    @Test
+    public void testSingleFlightLoading()
+        throws Exception
+    {
+        final ConcurrentCache<String, Object> cache = new ConcurrentCache<String, Object>( 10, 0 );
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        final Callable<Object> loader = new Callable<Object>()
+        {
+            public Object call()
+                throws Exception
+            {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "value";
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for ( int i = 0; i < 4; i++ )
+            {
+                futures.add( executor.submit( new Callable<Object>()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        return cache.get( "key", loader );
+                    }
+                } ) );
+            }
+            started.await();
+            release.countDown();
+            for ( Future<Object> future : futures )
+            {
+                Assert.assertEquals( "value", future.get() );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals( 1, loads.get() );
+        Assert.assertEquals( 1, cache.getMisses() );
+        Assert.assertEquals( 3, cache.getHits() );
+    }
+
+    @Test
+    public void testEviction()
+        throws Exception
+    {
+        ConcurrentCache<String, Object> cache = new ConcurrentCache<String, Object>( 2, 0 );
+        cache.put( "a", "a" );
+        cache.put( "b", "b" );
+        cache.get( "a" );
+        cache.put( "c", "c" );
+
+        Assert.assertEquals( 2, cache.size() );
+        Assert.assertNotNull( cache.get( "a" ) );
+        Assert.assertNull( cache.get( "b" ) );
+        Assert.assertNotNull( cache.get( "c" ) );
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached()
+        throws Exception
+    {
+        ConcurrentCache<String, Object> cache = new ConcurrentCache<String, Object>( 2, 0 );
+        try
+        {
+            cache.get( "a", new Callable<Object>()
+            {
+                public Object call()
+                    throws Exception
+                {
+                    throw new FileNotFoundException();
+                }
+            } );
+            Assert.fail();
+        }
+        catch ( FileNotFoundException e )
+        {
+            // expected
+        }
+
+        Assert.assertEquals( "a", cache.get( "a", new Callable<Object>()
+        {
+            public Object call()
+            {
+                return "a";
+            }
+        } ) );
+    }
+
+    @Test
+    public void testPersistentRepositoryIndex()
+        throws Exception
+    {
+        File cacheDirectory = new File( "target/repositorycache" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( cacheDirectory );
+
+        final List<GAV> gavs = Arrays.asList( new GAV( "a", "b", "1.0.0" ), new GAV( "a", "c", "1.0.0" ) );
+
+        P2RepositoryCache cache = new P2RepositoryCache();
+        cache.setCacheDirectory( cacheDirectory );
+        cache.getRepositoryIndex( "repo|http://example.com", new Callable<TychoRepositoryIndex>()
+        {
+            public TychoRepositoryIndex call()
+            {
+                return new DefaultTychoRepositoryIndex( gavs );
+            }
+        } );
+
+        // new build, repository index is read from disk
+        cache = new P2RepositoryCache();
+        cache.setCacheDirectory( cacheDirectory );
+        TychoRepositoryIndex index =
+            cache.getRepositoryIndex( "repo|http://example.com", new Callable<TychoRepositoryIndex>()
+            {
+                public TychoRepositoryIndex call()
+                    throws Exception
+                {
+                    throw new FileNotFoundException();
+                }
+            } );
+
+        Assert.assertEquals( gavs, index.getProjectGAVs() );
+    }
+
+    @Test
+    public void testPersistentRepositoryIndexRevalidated()
+        throws Exception
+    {
+        File cacheDirectory = new File( "target/repositorycache" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( cacheDirectory );
+
+        P2RepositoryCache cache = new P2RepositoryCache();
+        cache.setCacheDirectory( cacheDirectory );
+        cache.getRepositoryIndex( "repo|http://example.com", newLoader( new GAV( "a", "b", "1.0.0" ) ) );
+
+        // new build, repository has changed
+        List<GAV> gavs = Arrays.asList( new GAV( "a", "b", "1.0.0" ), new GAV( "a", "c", "1.0.0" ) );
+        cache = new P2RepositoryCache();
+        cache.setCacheDirectory( cacheDirectory );
+        TychoRepositoryIndex index =
+            cache.getRepositoryIndex( "repo|http://example.com", newLoader( gavs.toArray( new GAV[gavs.size()] ) ) );
+
+        Assert.assertEquals( gavs, index.getProjectGAVs() );
+    }
+
+    @Test
+    public void testPersistentRepositoryIndexTimeToLive()
+        throws Exception
+    {
+        File cacheDirectory = new File( "target/repositorycache" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( cacheDirectory );
+
+        GAV gav = new GAV( "a", "b", "1.0.0" );
+
+        P2RepositoryCache cache = new P2RepositoryCache();
+        cache.setCacheDirectory( cacheDirectory );
+        cache.getRepositoryIndex( "repo|http://example.com", newLoader( gav ) );
+
+        System.setProperty( P2RepositoryCache.PROP_PERSISTENT_TTL, "3600" );
+        try
+        {
+            cache = new P2RepositoryCache();
+        }
+        finally
+        {
+            System.clearProperty( P2RepositoryCache.PROP_PERSISTENT_TTL );
+        }
+        cache.setCacheDirectory( cacheDirectory );
+        TychoRepositoryIndex index =
+            cache.getRepositoryIndex( "repo|http://example.com", newLoader( gav, new GAV( "a", "c", "1.0.0" ) ) );
+
+        Assert.assertEquals( Arrays.asList( gav ), index.getProjectGAVs() );
+    }
+
+    private static Callable<TychoRepositoryIndex> newLoader( final GAV... gavs )
+    {
+        return new Callable<TychoRepositoryIndex>()
+        {
+            public TychoRepositoryIndex call()
+            {
+                return new DefaultTychoRepositoryIndex( Arrays.asList( gavs ) );
+            }
+        };
+    }
+}
@@ -3,6 +3,7 @@ package org.sonatype.tycho.plugins.p2;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -13,6 +14,7 @@ import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 import org.sonatype.tycho.osgi.EquinoxEmbedder;
+import org.sonatype.tycho.p2.facade.P2ApplicationLauncher;
 
 public abstract class AbstractP2MetadataMojo
     extends AbstractMojo
@@ -73,6 +75,14 @@ public abstract class AbstractP2MetadataMojo
      */
     private boolean p2ConsoleLog;
 
+    /**
+     * Run the publisher applications inside the p2 runtime embedded in the build JVM instead of forking a new JVM for
+     * each invocation. Invocations that need JVM arguments, see argLine, are still forked.
+     * 
+     * @parameter expression="${p2.inProcess}" default-value="false"
+     */
+    private boolean inProcess;
+
     /** @component */
     private EquinoxEmbedder p2;
 
@@ -108,6 +118,13 @@ public abstract class AbstractP2MetadataMojo
     private void generateMetadata()
         throws Exception
     {   
+        String vmArg = internalGetVmArgLine();
+        if ( inProcess && ( vmArg == null || vmArg.length() == 0 ) )
+        {
+            generateMetadataInProcess();
+            return;
+        }
+
         Commandline cli = new Commandline();
 
         cli.setWorkingDirectory( project.getBasedir() );
@@ -140,7 +157,6 @@ public abstract class AbstractP2MetadataMojo
         
         
         //last argument is traditionally for the vm:
-        String vmArg = internalGetVmArgLine();
         if (vmArg != null && vmArg.length() != 0)
         {
         	cli.addArguments(new String[] {"-vmargs", internalGetVmArgLine()});
@@ -171,6 +187,46 @@ public abstract class AbstractP2MetadataMojo
         }
     }
     
+    private void generateMetadataInProcess()
+        throws Exception
+    {
+        List<String> args = new ArrayList<String>();
+        addApplicationArguments( args, getDefaultPublisherArguments() );
+        addApplicationArguments( args, getOtherPublisherArguments() );
+        addApplicationArguments( args, getDownloadStatsPublisherArguments() );
+
+        getLog().info( "Running " + getPublisherApplication() + " in process:\n\t" + args );
+
+        P2ApplicationLauncher launcher = p2.getService( P2ApplicationLauncher.class );
+        int result = launcher.run( getPublisherApplication(), args.toArray( new String[args.size()] ) );
+        if ( result != 0 )
+        {
+            throw new MojoFailureException( "P2 publisher return code was " + result );
+        }
+    }
+
+    /**
+     * Adds the arguments without the launcher and framework arguments, these are only understood by a forked eclipse.
+     */
+    private static void addApplicationArguments( List<String> args, String[] arguments )
+    {
+        if ( arguments == null )
+        {
+            return;
+        }
+        for ( int i = 0; i < arguments.length; i++ )
+        {
+            if ( "-application".equals( arguments[i] ) )
+            {
+                i++;
+            }
+            else if ( !"-nosplash".equals( arguments[i] ) && !"-consoleLog".equals( arguments[i] ) )
+            {
+                args.add( arguments[i] );
+            }
+        }
+    }
+
     /**
      * @return The vm arg line passed to the publisher app.
      */
@@ -1,15 +1,27 @@
 package org.codehaus.tycho.osgitest;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.jar.Manifest;
 
 import org.codehaus.plexus.PlexusContainer;
@@ -50,8 +62,87 @@ public class TestEclipseRuntime
 
     private BundleReader manifestReader;
 
+    private Map<File, BundleStartLevel> installedBundles;
+
+    private File cacheLocation;
+
+    private static volatile boolean linkFailed;
+
+    /** java.nio.file.Files.createSymbolicLink( Path, Path, FileAttribute... ), only available on java 7 and newer */
+    private static final Method CREATE_SYMBOLIC_LINK;
+
+    /** java.nio.file.Files.isSymbolicLink( Path ) */
+    private static final Method IS_SYMBOLIC_LINK;
+
+    /** java.io.File.toPath() */
+    private static final Method TO_PATH;
+
+    /** java.nio.file.attribute.FileAttribute */
+    private static final Class<?> FILE_ATTRIBUTE;
+
+    /** java.io.File.setWritable( boolean ), only available on java 6 and newer */
+    private static final Method SET_WRITABLE;
+
+    /** unpacked bundle within a cache entry */
+    private static final String CACHED_BUNDLE = "bundle";
+
+    /** listing of the files of the unpacked bundle, written before the entry is published */
+    private static final String CACHED_CONTENTS = "contents";
+
+    /** checksums of recently used bundle files, keyed by path, size and timestamp */
+    private static final Map<String, String> checksums = Collections.synchronizedMap( new HashMap<String, String>() );
+
+    /** cache entries already checked against their listing by this JVM */
+    private static final Set<File> validatedEntries = Collections.synchronizedSet( new HashSet<File>() );
+
+    /**
+     * Least recently used cache entries beyond this number are deleted.
+     */
+    static final int MAX_CACHED_BUNDLES = 256;
+
+    /**
+     * Cache entries used more recently may be linked by a running build and are never deleted.
+     */
+    static final long MIN_UNUSED_TIME = 24L * 60 * 60 * 1000;
+
     static
     {
+        Method createSymbolicLink = null;
+        Method isSymbolicLink = null;
+        Method toPath = null;
+        Class<?> fileAttribute = null;
+        Method setWritable = null;
+        try
+        {
+            setWritable = File.class.getMethod( "setWritable", Boolean.TYPE );
+        }
+        catch ( Exception e )
+        {
+            // read-only cache entries cannot be deleted
+        }
+        try
+        {
+            Class<?> path = Class.forName( "java.nio.file.Path" );
+            Class<?> files = Class.forName( "java.nio.file.Files" );
+            fileAttribute = Class.forName( "java.nio.file.attribute.FileAttribute" );
+            createSymbolicLink =
+                files.getMethod( "createSymbolicLink", path, path, Array.newInstance( fileAttribute, 0 ).getClass() );
+            isSymbolicLink = files.getMethod( "isSymbolicLink", path );
+            toPath = File.class.getMethod( "toPath" );
+        }
+        catch ( Exception e )
+        {
+            // no symbolic link support, always unpack
+            createSymbolicLink = null;
+            isSymbolicLink = null;
+        }
+        CREATE_SYMBOLIC_LINK = createSymbolicLink;
+        IS_SYMBOLIC_LINK = isSymbolicLink;
+        TO_PATH = toPath;
+        FILE_ATTRIBUTE = fileAttribute;
+        SET_WRITABLE = setWritable;
+        linkFailed = createSymbolicLink == null;
+
         setDefaultStartLevel( "org.eclipse.equinox.common", 2 );
         setDefaultStartLevel( "org.eclipse.core.runtime", 4 );
         setDefaultStartLevel( "org.eclipse.equinox.simpleconfigurator", 1 );
@@ -86,6 +177,7 @@ public class TestEclipseRuntime
             {
                 continue; // system bundle
             }
+            installedBundles.put( entry.getValue(), level );
             if ( result.length() > 0 )
             {
                 result.append( "," );
@@ -106,12 +198,13 @@ public class TestEclipseRuntime
     private String appendAbsolutePath( File file )
         throws IOException
     {
-        String url = file.getAbsolutePath().replace( '\\', '/' );
-        return "reference:file:" + url;
+        return getBundleLocation( file );
     }
 
     public void create()
     {
+        installedBundles = new LinkedHashMap<File, BundleStartLevel>();
+
         Map<ArtifactKey, File> effective = new LinkedHashMap<ArtifactKey, File>();
 
         for (ArtifactDescription artifact : bundles.getArtifacts( TychoProject.ECLIPSE_PLUGIN ) )
@@ -120,18 +213,19 @@ public class TestEclipseRuntime
             File file = artifact.getLocation();
             Manifest mf = manifestReader.loadManifest( file );
 
-            boolean directoryShape = bundlesToExplode.contains( key.getId() ) || manifestReader.isDirectoryShape( mf );
+            boolean explode = bundlesToExplode.contains( key.getId() );
 
-            if ( !file.isDirectory() && directoryShape )
+            if ( !file.isDirectory() && ( explode || manifestReader.isDirectoryShape( mf ) ) )
             {
-                String filename = key.getId() + "_" + key.getVersion();
-                File unpacked = new File( location, "plugins/" + filename );
-
-                unpacked.mkdirs();
-
-                unpack( file, unpacked );
-
-                effective.put( key, unpacked );
+                try
+                {
+                    // tests may write into exploded bundles, they get a private copy
+                    effective.put( key, getUnpackedBundle( key, file, !explode ) );
+                }
+                catch ( IOException e )
+                {
+                    throw new RuntimeException( "Unable to unpack bundle " + file, e );
+                }
             }
             else
             {
@@ -208,8 +302,16 @@ public class TestEclipseRuntime
                 p.setProperty( "osgi.framework.extensions", StringUtils.join( bundleNames.iterator(), "," ) );
             }
 
+            File configIni = new File( location, TychoConstants.CONFIG_INI_PATH );
+            if ( p.equals( loadProperties( configIni ) ) )
+            {
+                // unchanged, keep the timestamp so the framework can reuse its persisted state
+                getLogger().debug( "Test runtime configuration is up to date " + configIni );
+                return;
+            }
+
             new File( location, "configuration" ).mkdir();
-            FileOutputStream fos = new FileOutputStream( new File( location, TychoConstants.CONFIG_INI_PATH ) );
+            FileOutputStream fos = new FileOutputStream( configIni );
             try
             {
                 p.store( fos, null );
@@ -225,6 +327,23 @@ public class TestEclipseRuntime
         }
     }
 
+    /**
+     * Bundles installed in the created runtime, except the system bundle, with their start level configuration or
+     * <code>null</code>.
+     */
+    public Map<File, BundleStartLevel> getInstalledBundles()
+    {
+        return installedBundles;
+    }
+
+    /**
+     * Location of the bundle as used in config.ini osgi.bundles.
+     */
+    public static String getBundleLocation( File file )
+    {
+        return "reference:file:" + file.getAbsolutePath().replace( '\\', '/' );
+    }
+
     public File getLocation()
     {
         return location;
@@ -258,6 +377,15 @@ public class TestEclipseRuntime
         }
     }
 
+    /**
+     * Shared directory for unpacked directory-shaped bundles, keyed by bundle content. Cached bundles are read-only,
+     * bundles listed in explodedBundles are always unpacked into the runtime location.
+     */
+    public void setCacheLocation( File cacheLocation )
+    {
+        this.cacheLocation = cacheLocation;
+    }
+
     public void setBundlesToExplode( List<String> bundlesToExplode )
     {
         this.bundlesToExplode = bundlesToExplode;
@@ -292,6 +420,343 @@ public class TestEclipseRuntime
         }
     }
 
+    /**
+     * Shared directory-shaped bundles are unpacked once per bundle content into the cache and linked into the
+     * runtime location. Other bundles, or without cache or link support, are unpacked into the runtime location if
+     * changed.
+     */
+    File getUnpackedBundle( ArtifactKey key, File file, boolean shared )
+        throws IOException
+    {
+        File unpacked = new File( location, "plugins/" + key.getId() + "_" + key.getVersion() );
+        if ( shared && cacheLocation != null && !linkFailed )
+        {
+            File cached = getCachedBundle( file );
+            if ( isSymbolicLink( unpacked ) && unpacked.getCanonicalFile().equals( cached.getCanonicalFile() ) )
+            {
+                return unpacked;
+            }
+            deleteBundleDirectory( unpacked );
+            if ( createSymbolicLink( unpacked, cached ) )
+            {
+                return unpacked;
+            }
+        }
+        unpackIfChanged( file, unpacked );
+        return unpacked;
+    }
+
+    /**
+     * Cache entries are shared by all builds using the cache. The unpacked bundle is read-only, and an entry is only
+     * used if its files still match the listing written when it was created. Entries are checked once per JVM, and
+     * touched on every use.
+     */
+    private File getCachedBundle( File file )
+        throws IOException
+    {
+        File entry = new File( cacheLocation, checksum( file ) );
+        if ( entry.isDirectory() && !validatedEntries.contains( entry ) && !isValidCacheEntry( entry ) )
+        {
+            getLogger().warn( "Cached bundle " + entry + " has been modified, unpacking " + file + " again" );
+            File stale = new File( cacheLocation, entry.getName() + "." + System.nanoTime() + ".stale" );
+            // another build may have replaced the entry meanwhile
+            if ( !entry.renameTo( stale ) && entry.isDirectory() && !isValidCacheEntry( entry ) )
+            {
+                throw new IOException( "Could not remove modified cached bundle " + entry );
+            }
+            deleteCacheEntry( stale );
+        }
+        if ( entry.isDirectory() )
+        {
+            entry.setLastModified( System.currentTimeMillis() );
+        }
+        else
+        {
+            // unpack next to the cache entry and move it in place, other builds may use the cache concurrently
+            File tmp = new File( cacheLocation, entry.getName() + "." + System.nanoTime() + ".tmp" );
+            File bundle = new File( tmp, CACHED_BUNDLE );
+            unpack( file, bundle );
+            FileUtils.fileWrite( new File( tmp, CACHED_CONTENTS ).getAbsolutePath(), "UTF-8", getContents( bundle ) );
+            setReadOnly( bundle );
+            if ( !tmp.renameTo( entry ) )
+            {
+                deleteCacheEntry( tmp );
+                if ( !entry.isDirectory() )
+                {
+                    throw new IOException( "Could not create cached bundle directory " + entry );
+                }
+            }
+            pruneCache();
+        }
+        validatedEntries.add( entry );
+        return new File( entry, CACHED_BUNDLE );
+    }
+
+    /**
+     * Forgets which cache entries have been checked, they are checked again on next use.
+     */
+    static void clearValidatedEntries()
+    {
+        validatedEntries.clear();
+    }
+
+    /**
+     * Deletes least recently used entries beyond {@link #MAX_CACHED_BUNDLES} and leftovers of interrupted builds,
+     * unless used within {@link #MIN_UNUSED_TIME}.
+     */
+    private void pruneCache()
+    {
+        File[] entries = cacheLocation.listFiles();
+        if ( entries == null )
+        {
+            return;
+        }
+        Arrays.sort( entries, new Comparator<File>()
+        {
+            public int compare( File a, File b )
+            {
+                long diff = b.lastModified() - a.lastModified();
+                return diff > 0 ? 1 : ( diff < 0 ? -1 : 0 );
+            }
+        } );
+        long unused = System.currentTimeMillis() - MIN_UNUSED_TIME;
+        int count = 0;
+        for ( File entry : entries )
+        {
+            boolean leftover = entry.getName().endsWith( ".tmp" ) || entry.getName().endsWith( ".stale" );
+            if ( !leftover && ++count <= MAX_CACHED_BUNDLES )
+            {
+                continue;
+            }
+            if ( entry.lastModified() < unused )
+            {
+                // move away first, other builds must not see a partially deleted entry
+                File stale = new File( cacheLocation, entry.getName() + "." + System.nanoTime() + ".stale" );
+                if ( leftover || entry.renameTo( stale ) )
+                {
+                    validatedEntries.remove( entry );
+                    deleteCacheEntry( leftover ? entry : stale );
+                }
+            }
+        }
+    }
+
+    private static boolean isValidCacheEntry( File entry )
+        throws IOException
+    {
+        File contents = new File( entry, CACHED_CONTENTS );
+        File bundle = new File( entry, CACHED_BUNDLE );
+        return contents.isFile() && bundle.isDirectory()
+            && getContents( bundle ).equals( FileUtils.fileRead( contents, "UTF-8" ) );
+    }
+
+    /**
+     * Path, size and timestamp of all files and directories.
+     */
+    private static String getContents( File directory )
+    {
+        StringBuilder sb = new StringBuilder();
+        appendContents( sb, directory, "" );
+        return sb.toString();
+    }
+
+    private static void appendContents( StringBuilder sb, File directory, String prefix )
+    {
+        File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        Arrays.sort( files );
+        for ( File file : files )
+        {
+            String path = prefix + file.getName();
+            if ( file.isDirectory() )
+            {
+                sb.append( path ).append( "/\n" );
+                appendContents( sb, file, path + "/" );
+            }
+            else
+            {
+                sb.append( path ).append( ':' ).append( file.length() ).append( ':' ).append( file.lastModified() );
+                sb.append( '\n' );
+            }
+        }
+    }
+
+    private static void setReadOnly( File file )
+    {
+        File[] files = file.listFiles();
+        if ( files != null )
+        {
+            for ( File child : files )
+            {
+                setReadOnly( child );
+            }
+        }
+        // directories last, their entries cannot be changed afterwards
+        file.setReadOnly();
+    }
+
+    private void deleteCacheEntry( File entry )
+    {
+        try
+        {
+            if ( SET_WRITABLE != null )
+            {
+                setWritable( entry );
+            }
+            FileUtils.deleteDirectory( entry );
+        }
+        catch ( Exception e )
+        {
+            getLogger().debug( "Could not delete cached bundle " + entry, e );
+        }
+    }
+
+    private static void setWritable( File file )
+        throws Exception
+    {
+        SET_WRITABLE.invoke( file, Boolean.TRUE );
+        File[] files = file.listFiles();
+        if ( files != null )
+        {
+            for ( File child : files )
+            {
+                setWritable( child );
+            }
+        }
+    }
+
+    private static boolean isSymbolicLink( File file )
+    {
+        if ( IS_SYMBOLIC_LINK == null )
+        {
+            return false;
+        }
+        try
+        {
+            return ( (Boolean) IS_SYMBOLIC_LINK.invoke( null, TO_PATH.invoke( file ) ) ).booleanValue();
+        }
+        catch ( Exception e )
+        {
+            return false;
+        }
+    }
+
+    private boolean createSymbolicLink( File link, File target )
+    {
+        link.getParentFile().mkdirs();
+        try
+        {
+            CREATE_SYMBOLIC_LINK.invoke( null, TO_PATH.invoke( link ), TO_PATH.invoke( target ),
+                                         Array.newInstance( FILE_ATTRIBUTE, 0 ) );
+            return true;
+        }
+        catch ( Exception e )
+        {
+            // filesystem or platform does not support symbolic links, do not try again
+            getLogger().debug( "Could not link " + link + " to " + target + ", unpacking bundles instead", e );
+            linkFailed = true;
+            return false;
+        }
+    }
+
+    /**
+     * Deletes an unpacked bundle, or only the link if it is linked to the cache.
+     */
+    private static void deleteBundleDirectory( File directory )
+        throws IOException
+    {
+        if ( isSymbolicLink( directory ) )
+        {
+            directory.delete();
+        }
+        else
+        {
+            FileUtils.deleteDirectory( directory );
+        }
+    }
+
+    /**
+     * Unpacks the jar unless the directory already has the content of the same jar.
+     */
+    private void unpackIfChanged( File source, File destination )
+        throws IOException
+    {
+        File fingerprint = new File( destination.getParentFile(), destination.getName() + ".checksum" );
+        String checksum = checksum( source );
+        if ( destination.isDirectory() && fingerprint.isFile()
+            && checksum.equals( FileUtils.fileRead( fingerprint ).trim() ) )
+        {
+            return;
+        }
+        fingerprint.delete();
+        deleteBundleDirectory( destination );
+        unpack( source, destination );
+        FileUtils.fileWrite( fingerprint.getAbsolutePath(), checksum );
+    }
+
+    private static String checksum( File file )
+        throws IOException
+    {
+        String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        String checksum = checksums.get( key );
+        if ( checksum == null )
+        {
+            MessageDigest digest;
+            try
+            {
+                digest = MessageDigest.getInstance( "MD5" );
+            }
+            catch ( NoSuchAlgorithmException e )
+            {
+                throw new IllegalStateException( e );
+            }
+            InputStream is = new BufferedInputStream( new FileInputStream( file ) );
+            try
+            {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ( ( n = is.read( buffer ) ) != -1 )
+                {
+                    digest.update( buffer, 0, n );
+                }
+            }
+            finally
+            {
+                is.close();
+            }
+            StringBuilder sb = new StringBuilder();
+            for ( byte b : digest.digest() )
+            {
+                sb.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+            }
+            checksum = sb.toString();
+            checksums.put( key, checksum );
+        }
+        return checksum;
+    }
+
+    private static Properties loadProperties( File file )
+        throws IOException
+    {
+        Properties p = new Properties();
+        if ( file.isFile() )
+        {
+            InputStream is = new FileInputStream( file );
+            try
+            {
+                p.load( is );
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+        return p;
+    }
+
     public void addFrameworkExtensions( Collection<File> frameworkExtensions )
     {
         this.frameworkExtensions.addAll( frameworkExtensions );
@@ -318,11 +783,11 @@ public class TestEclipseRuntime
             File bundleDir = new File( location, "plugins/" + id[0].getValue() + "_" + version[0].getValue() );
             if ( bundleFile.isFile() )
             {
-                unpack( bundleFile, bundleDir );
+                unpackIfChanged( bundleFile, bundleDir );
             }
             else
             {
-                FileUtils.copyDirectoryStructure( bundleFile, bundleDir );
+                FileUtils.copyDirectoryStructureIfModified( bundleFile, bundleDir );
             }
         }
 
@@ -8,7 +8,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -57,6 +59,19 @@ public class TestMojo extends AbstractMojo {
 
     private static final String EQUINOX_LAUNCHER = "org.eclipse.equinox.launcher";
 
+    /** unpacked directory-shaped bundles, relative to the local repository */
+    private static final String BUNDLE_CACHE_PATH = ".cache/tycho-test-bundles";
+
+    /** test class durations of parallel runs, relative to the local repository, so they outlast mvn clean */
+    private static final String TIMINGS_CACHE_PATH = ".cache/tycho-test-timings";
+
+    private static final String TEST_WORKER_APPLICATION = "org.codehaus.tycho.surefire.osgibooter.testworker";
+
+    /** command line arguments followed by module specific values which do not affect test results */
+    private static final Set<String> MODULE_ARGUMENTS = new HashSet<String>(Arrays.asList(new String[] {
+        "-install", "-configuration",
+    }));
+
     /**
 	 * @parameter default-value="${project.build.directory}/work"
 	 */
@@ -251,7 +266,9 @@ public class TestMojo extends AbstractMojo {
     private Map<String, String> systemProperties;
 
 	/**
-	 * List of bundles that must be expanded in order to execute the tests
+	 * List of bundles that must be expanded in order to execute the tests. These are unpacked into the test
+	 * runtime work directory and may be modified by tests. Other directory-shaped bundles are linked to read-only
+	 * copies shared in the local repository.
 	 * 
 	 * @parameter
 	 */
@@ -271,6 +288,25 @@ public class TestMojo extends AbstractMojo {
      */
     private BundleStartLevel[] bundleStartLevel;
 
+    /**
+     * Number of threads running test classes in parallel. Durations of the test classes are written to
+     * .cache/tycho-test-timings/&lt;groupId&gt;/&lt;artifactId&gt;.properties in the local repository, the longest
+     * test classes of the previous run are started first. Only applies to the headless test harness.
+     * 
+     * @parameter expression="${tycho.test.threads}" default-value="1"
+     */
+    private int testThreads;
+
+    /**
+     * Run the tests in a forked test runtime that is kept alive and reused by the following test runs of the reactor,
+     * as long as their test runtimes are launched with the same configuration, working directory, workspace and dev
+     * entries. Between runs only bundles that differ are installed or uninstalled, and bundles built by the reactor are
+     * updated. Only applies to the headless test harness.
+     * 
+     * @parameter expression="${tycho.test.worker}" default-value="false"
+     */
+    private boolean useTestWorker;
+
     /**
      * @component
      */
@@ -342,9 +378,11 @@ public class TestMojo extends AbstractMojo {
 		TestEclipseRuntime testRuntime = new TestEclipseRuntime();
 		testRuntime.enableLogging(logger);
 		testRuntime.setLocation(work);
+		testRuntime.setCacheLocation(new File(session.getLocalRepository().getBasedir(), BUNDLE_CACHE_PATH));
 		testRuntime.setPlexusContainer(plexus);
 		testRuntime.setBundlesToExplode(getBundlesToExplode());
-		testRuntime.addFrameworkExtensions(getFrameworkExtensions());
+		List<File> frameworkExtensions = getFrameworkExtensions();
+		testRuntime.addFrameworkExtensions(frameworkExtensions);
         if (bundleStartLevel != null) {
             for (BundleStartLevel level : bundleStartLevel) {
                 testRuntime.addBundleStartLevel(level);
@@ -358,14 +396,17 @@ public class TestMojo extends AbstractMojo {
 		}
 		getLog().debug("Using test framework " + testFramework);
 
+		Set<File> reactorBundles = new LinkedHashSet<File>();
 		for (ArtifactDescription artifact : testTargetPlatform.getArtifacts(TychoProject.ECLIPSE_PLUGIN)) {
 		    MavenProject otherProject = artifact.getMavenProject();
 		    if (otherProject != null) {
                 File file = otherProject.getArtifact().getFile();
                 if (file != null) {
                     testRuntime.addBundle(artifact.getKey(), file);
+                    reactorBundles.add(file);
                     continue;
                 } 
+                reactorBundles.add(artifact.getLocation());
 		    }
             testRuntime.addBundle(artifact);
 		}
@@ -383,7 +424,12 @@ public class TestMojo extends AbstractMojo {
 		reportsDirectory.mkdirs();
 
 		String testBundle = null;
-		boolean succeeded = runTest(testRuntime, testBundle);
+		boolean succeeded;
+		if (useTestWorker && !useUIHarness && debugPort <= 0) {
+			succeeded = runTestWorker(testRuntime, reactorBundles, frameworkExtensions);
+		} else {
+			succeeded = runTest(testRuntime, testBundle);
+		}
 		
 		if (succeeded) {
 			getLog().info("All tests passed!");
@@ -431,6 +477,11 @@ public class TestMojo extends AbstractMojo {
         return ideapp;
     }
 
+	private File getTimingsFile() {
+		File dir = new File(session.getLocalRepository().getBasedir(), TIMINGS_CACHE_PATH);
+		return new File(dir, project.getGroupId() + "/" + project.getArtifactId() + ".properties");
+	}
+
 	private void createSurefireProperties(String symbolicName, String testFramework) throws MojoExecutionException {
 		Properties p = new Properties();
 
@@ -438,6 +489,14 @@ public class TestMojo extends AbstractMojo {
 		p.put("testclassesdirectory", testClassesDirectory.getAbsolutePath());
 		p.put("reportsdirectory", reportsDirectory.getAbsolutePath());
 		p.put("testrunner", getTestRunner(testFramework));
+		if (testThreads > 1) {
+			if (useUIHarness) {
+				getLog().warn("Tests of the UI test harness do not run in parallel, ignoring testThreads");
+			} else {
+				p.put("threads", Integer.toString(testThreads));
+				p.put("timingsfile", getTimingsFile().getAbsolutePath());
+			}
+		}
 
 		if (test != null) {
             String test = this.test;
@@ -494,84 +553,10 @@ public class TestMojo extends AbstractMojo {
 			
 			FileUtils.deleteDirectory(workspace);
 
-			Commandline cli = new Commandline();
-
-			cli.setWorkingDirectory(project.getBasedir());
-
-			String executable = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
-			if (File.separatorChar == '\\') {
-				executable = executable + ".exe";
-			}
-			cli.setExecutable(executable);
-
-			if (debugPort > 0) {
-				cli.addArguments(new String[] {
-					"-Xdebug",
-					"-Xrunjdwp:transport=dt_socket,address=" + debugPort + ",server=y,suspend=y" });
-			}
-			cli.addArguments(new String[] {
-				"-Dosgi.noShutdown=false",
-			});
-
-            Properties properties = (Properties) project.getContextValue(TychoConstants.CTX_MERGED_PROPERTIES);
-            cli.addArguments(new String[] {
-                "-Dosgi.os=" + PlatformPropertiesUtils.getOS(properties),
-                "-Dosgi.ws=" + PlatformPropertiesUtils.getWS(properties),
-                "-Dosgi.arch=" + PlatformPropertiesUtils.getArch(properties),
-            });
-
-			if (argLine != null) {
-				Arg arg = cli.createArg();
-				arg.setLine(argLine);
-			}
-
-            if (systemProperties != null) {
-                for (Map.Entry<String, String> entry : systemProperties.entrySet()) {
-                    cli.createArg().setValue("-D" + entry.getKey() + "=" + entry.getValue());
-                }
-            }
-
-			cli.addArguments(new String[] {
-				"-jar", getEclipseLauncher(testRuntime).getAbsolutePath(),
-			});
-
-			if (getLog().isDebugEnabled() || showEclipseLog) {
-				cli.addArguments(new String[] {
-					"-debug", "-consolelog",
-				});
-			}
-			cli.addArguments(new String[] {
-				"-data", workspace,
-				"-dev", devProperties.toURI().toURL().toExternalForm(),
-				"-install", testRuntime.getLocation().getAbsolutePath(),
-				"-configuration", new File(work, "configuration").getAbsolutePath(),
+			Commandline cli = createCommandLine(testRuntime, workspace, new String[] {
 				"-application",	getTestApplication(testRuntime),
 				"-testproperties", surefireProperties.getAbsolutePath(), 
 			});
-			if (application != null) {
-                cli.addArguments(new String[] {
-                    "-testApplication", application,
-                });
-			}
-			if (product != null) {
-                cli.addArguments(new String[] {
-                    "-product", product,
-                });
-			}
-            if (useUIHarness && !useUIThread) {
-                cli.addArguments(new String[] {
-                    "-nouithread",
-                });
-            }
-			if (appArgLine != null) {
-                Arg appArg = cli.createArg();
-                appArg.setLine(appArgLine);
-			}
-			if (environmentVariables != null) {
-				for (Map.Entry<String, String> entry : environmentVariables.entrySet()) {
-					cli.addEnvironment(entry.getKey(), entry.getValue());
-				}
-			}
 
 			getLog().info("Expected eclipse log file: " + new File(workspace, ".metadata/.log").getCanonicalPath());
 			getLog().info("Command line:\n\t" + cli.toString());
@@ -594,6 +579,142 @@ public class TestMojo extends AbstractMojo {
 		return result == 0;
 	}
 
+	private boolean runTestWorker(TestEclipseRuntime testRuntime, Set<File> reactorBundles, List<File> frameworkExtensions) throws MojoExecutionException {
+		Map<String, BundleStartLevel> bundles = new LinkedHashMap<String, BundleStartLevel>();
+		for (Map.Entry<File, BundleStartLevel> entry : testRuntime.getInstalledBundles().entrySet()) {
+			bundles.put(TestEclipseRuntime.getBundleLocation(entry.getKey()), entry.getValue());
+		}
+		Set<String> reactorLocations = new LinkedHashSet<String>();
+		for (File file : reactorBundles) {
+			reactorLocations.add(TestEclipseRuntime.getBundleLocation(file));
+		}
+
+		String workspace = new File(work, "data").getAbsolutePath();
+		boolean reusable = false;
+		int result;
+		TestWorker worker = null;
+		try {
+			String key = getTestWorkerKey(testRuntime, workspace, frameworkExtensions);
+			worker = TestWorker.acquire(key);
+			if (worker == null) {
+				getLog().info("Test worker is busy, forking a separate test runtime");
+				return runTest(testRuntime, null);
+			}
+
+			if (!worker.isStarted()) {
+				FileUtils.deleteDirectory(workspace);
+				Commandline cli = createCommandLine(testRuntime, workspace, new String[] {
+					"-application", TEST_WORKER_APPLICATION,
+					"-testworkerport", Integer.toString(worker.listen()),
+				});
+				getLog().info("Expected eclipse log file: " + new File(workspace, ".metadata/.log").getCanonicalPath());
+				getLog().info("Starting test worker, command line:\n\t" + cli.toString());
+				worker.start(cli, bundles);
+			} else {
+				getLog().info("Running tests in test worker");
+			}
+
+			result = worker.runTests(bundles, reactorLocations, surefireProperties, forkedProcessTimeoutInSeconds, getLog());
+			reusable = true;
+		} catch (Exception e) {
+			throw new MojoExecutionException("Error while executing platform", e);
+		} finally {
+			if (worker != null) {
+				TestWorker.release(worker, reusable);
+			}
+		}
+
+		return result == 0;
+	}
+
+	private String getTestWorkerKey(TestEclipseRuntime testRuntime, String workspace, List<File> frameworkExtensions) throws IOException {
+		Commandline cli = createCommandLine(testRuntime, workspace, new String[0]);
+		String environment = environmentVariables != null ? environmentVariables.toString() : null;
+		return TestWorker.getKey(cli, MODULE_ARGUMENTS, environment, testRuntime.getSystemBundle().getLocation(), frameworkExtensions);
+	}
+
+	private Commandline createCommandLine(TestEclipseRuntime testRuntime, String workspace, String[] applicationArgs) throws IOException {
+		Commandline cli = new Commandline();
+
+		cli.setWorkingDirectory(project.getBasedir());
+
+		String executable = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		if (File.separatorChar == '\\') {
+			executable = executable + ".exe";
+		}
+		cli.setExecutable(executable);
+
+		if (debugPort > 0) {
+			cli.addArguments(new String[] {
+				"-Xdebug",
+				"-Xrunjdwp:transport=dt_socket,address=" + debugPort + ",server=y,suspend=y" });
+		}
+		cli.addArguments(new String[] {
+			"-Dosgi.noShutdown=false",
+		});
+
+        Properties properties = (Properties) project.getContextValue(TychoConstants.CTX_MERGED_PROPERTIES);
+        cli.addArguments(new String[] {
+            "-Dosgi.os=" + PlatformPropertiesUtils.getOS(properties),
+            "-Dosgi.ws=" + PlatformPropertiesUtils.getWS(properties),
+            "-Dosgi.arch=" + PlatformPropertiesUtils.getArch(properties),
+        });
+
+		if (argLine != null) {
+			Arg arg = cli.createArg();
+			arg.setLine(argLine);
+		}
+
+        if (systemProperties != null) {
+            for (Map.Entry<String, String> entry : systemProperties.entrySet()) {
+                cli.createArg().setValue("-D" + entry.getKey() + "=" + entry.getValue());
+            }
+        }
+
+		cli.addArguments(new String[] {
+			"-jar", getEclipseLauncher(testRuntime).getAbsolutePath(),
+		});
+
+		if (getLog().isDebugEnabled() || showEclipseLog) {
+			cli.addArguments(new String[] {
+				"-debug", "-consolelog",
+			});
+		}
+		cli.addArguments(new String[] {
+			"-data", workspace,
+			"-dev", devProperties.toURI().toURL().toExternalForm(),
+			"-install", testRuntime.getLocation().getAbsolutePath(),
+			"-configuration", new File(work, "configuration").getAbsolutePath(),
+		});
+		cli.addArguments(applicationArgs);
+		if (application != null) {
+            cli.addArguments(new String[] {
+                "-testApplication", application,
+            });
+		}
+		if (product != null) {
+            cli.addArguments(new String[] {
+                "-product", product,
+            });
+		}
+        if (useUIHarness && !useUIThread) {
+            cli.addArguments(new String[] {
+                "-nouithread",
+            });
+        }
+		if (appArgLine != null) {
+            Arg appArg = cli.createArg();
+            appArg.setLine(appArgLine);
+		}
+		if (environmentVariables != null) {
+			for (Map.Entry<String, String> entry : environmentVariables.entrySet()) {
+				cli.addEnvironment(entry.getKey(), entry.getValue());
+			}
+		}
+
+		return cli;
+	}
+
 	private String getTestApplication(TestEclipseRuntime testRuntime) {
 		if (useUIHarness) {
 		    ArtifactDescription systemBundle = testRuntime.getSystemBundle();
@@ -0,0 +1,384 @@
+package org.codehaus.tycho.osgitest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.cli.StreamPumper;
+
+/**
+ * Forked test runtime that stays alive and runs the tests of several test bundles of the reactor, see
+ * TestWorkerApplication of the OSGi test booter. Between runs, bundles are installed, updated and uninstalled so that
+ * the runtime has the bundles of the next test runtime. Only one worker is kept, it is shut down when a test runtime
+ * with a different configuration, working directory or workspace is requested or when the build JVM exits.
+ */
+class TestWorker
+{
+    /** time to wait for the forked runtime to start and connect, in milliseconds */
+    private static final int CONNECT_TIMEOUT = 5 * 60 * 1000;
+
+    private static TestWorker current;
+
+    static
+    {
+        Runtime.getRuntime().addShutdownHook( new Thread()
+        {
+            @Override
+            public void run()
+            {
+                synchronized ( TestWorker.class )
+                {
+                    if ( current != null )
+                    {
+                        current.destroy();
+                        current = null;
+                    }
+                }
+            }
+        } );
+    }
+
+    private final String key;
+
+    private boolean busy;
+
+    private ServerSocket serverSocket;
+
+    private Process process;
+
+    private Socket socket;
+
+    private BufferedReader in;
+
+    private Writer out;
+
+    /** installed bundles, by location */
+    private Map<String, BundleStartLevel> installed;
+
+    /** true until the first tests ran, reactor bundles are up to date */
+    private boolean fresh;
+
+    private TestWorker( String key )
+    {
+        this.key = key;
+    }
+
+    /**
+     * Returns the worker for test runtimes with the given configuration key, a new and not yet started worker if the
+     * current worker has a different configuration, or <code>null</code> if the current worker is busy running tests
+     * of another module. The returned worker must be released.
+     */
+    public static synchronized TestWorker acquire( String key )
+    {
+        if ( current != null )
+        {
+            if ( current.busy )
+            {
+                return null;
+            }
+            if ( !current.key.equals( key ) || !current.isAlive() )
+            {
+                current.destroy();
+                current = null;
+            }
+        }
+        if ( current == null )
+        {
+            current = new TestWorker( key );
+        }
+        current.busy = true;
+        return current;
+    }
+
+    /**
+     * Test runtimes with equal keys can be run by the same test worker. The key contains the working directory, the
+     * command line without the values of module specific arguments, the system bundle and the framework extensions. The
+     * working directory and the workspace cannot be changed once the runtime is started.
+     *
+     * @param moduleArguments arguments whose values differ between modules
+     */
+    static String getKey( Commandline cli, Set<String> moduleArguments, String environment, File systemBundle,
+                          List<File> frameworkExtensions )
+    {
+        StringBuilder sb = new StringBuilder();
+        if ( cli.getWorkingDirectory() != null )
+        {
+            sb.append( cli.getWorkingDirectory().getAbsolutePath() ).append( ' ' );
+        }
+        sb.append( cli.getExecutable() );
+        String[] arguments = cli.getArguments();
+        for ( int i = 0; i < arguments.length; i++ )
+        {
+            sb.append( ' ' ).append( arguments[i] );
+            if ( moduleArguments.contains( arguments[i] ) && i + 1 < arguments.length )
+            {
+                i++;
+            }
+        }
+        if ( environment != null )
+        {
+            sb.append( ' ' ).append( environment );
+        }
+        sb.append( ' ' ).append( systemBundle.getAbsolutePath() );
+        for ( File file : frameworkExtensions )
+        {
+            sb.append( ' ' ).append( file.getAbsolutePath() );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param reusable false if the worker is in an unknown state and must not run further tests
+     */
+    public static synchronized void release( TestWorker worker, boolean reusable )
+    {
+        worker.busy = false;
+        if ( !reusable )
+        {
+            worker.destroy();
+            if ( current == worker )
+            {
+                current = null;
+            }
+        }
+    }
+
+    public boolean isStarted()
+    {
+        return process != null;
+    }
+
+    /**
+     * Opens the port the forked runtime connects to.
+     */
+    public int listen()
+        throws IOException
+    {
+        serverSocket = new ServerSocket( 0, 1, InetAddress.getByName( "127.0.0.1" ) );
+        serverSocket.setSoTimeout( CONNECT_TIMEOUT );
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Forks the runtime and waits for it to connect.
+     *
+     * @param bundles bundles installed by the runtime configuration, by location
+     */
+    public void start( Commandline cli, Map<String, BundleStartLevel> bundles )
+        throws IOException, CommandLineException
+    {
+        process = cli.execute();
+        pump( new StreamPumper( process.getInputStream(), new StreamConsumer()
+        {
+            public void consumeLine( String line )
+            {
+                System.out.println( line );
+            }
+        } ) );
+        pump( new StreamPumper( process.getErrorStream(), new StreamConsumer()
+        {
+            public void consumeLine( String line )
+            {
+                System.err.println( line );
+            }
+        } ) );
+
+        try
+        {
+            socket = serverSocket.accept();
+        }
+        finally
+        {
+            serverSocket.close();
+            serverSocket = null;
+        }
+        in = new BufferedReader( new InputStreamReader( socket.getInputStream(), "UTF-8" ) );
+        out = new BufferedWriter( new OutputStreamWriter( socket.getOutputStream(), "UTF-8" ) );
+
+        installed = new LinkedHashMap<String, BundleStartLevel>( bundles );
+        fresh = true;
+    }
+
+    private static void pump( StreamPumper pumper )
+    {
+        pumper.setDaemon( true );
+        pumper.start();
+    }
+
+    /**
+     * Brings the runtime to the given bundles and runs the tests described by the test properties file.
+     *
+     * @param bundles bundles of the test runtime, by location
+     * @param reactorBundles locations of bundles built by the reactor, updated before each run
+     * @param timeout in seconds, 0 to wait forever
+     * @return surefire result code, 0 if all tests passed
+     */
+    public int runTests( Map<String, BundleStartLevel> bundles, Set<String> reactorBundles, File testProperties,
+                         int timeout, Log log )
+        throws IOException
+    {
+        socket.setSoTimeout( 0 );
+
+        for ( String command : getCommands( installed, bundles, reactorBundles, !fresh ) )
+        {
+            command( command );
+        }
+
+        fresh = false;
+
+        socket.setSoTimeout( timeout * 1000 );
+        String reply = send( "TEST " + testProperties.getAbsolutePath() );
+        if ( reply.startsWith( "RESULT " ) )
+        {
+            return Integer.parseInt( reply.substring( "RESULT ".length() ) );
+        }
+        // tests could not be started, like a failing forked runtime
+        log.error( "Test worker could not run tests: " + reply );
+        return -1;
+    }
+
+    /**
+     * Commands that bring a runtime with the installed bundles to the required bundles. Bundles whose start level
+     * changed are installed again. The installed bundles are updated accordingly.
+     *
+     * @param installed bundles installed in the runtime, by location
+     * @param bundles required bundles, by location
+     * @param updateReactorBundles true if installed reactor bundles may have changed since they were installed
+     */
+    static List<String> getCommands( Map<String, BundleStartLevel> installed, Map<String, BundleStartLevel> bundles,
+                                     Set<String> reactorBundles, boolean updateReactorBundles )
+    {
+        List<String> commands = new ArrayList<String>();
+
+        for ( String location : new ArrayList<String>( installed.keySet() ) )
+        {
+            boolean required = bundles.containsKey( location );
+            if ( !required || !isSameStartLevel( installed.get( location ), bundles.get( location ) ) )
+            {
+                commands.add( "UNINSTALL " + location );
+                installed.remove( location );
+            }
+        }
+
+        List<String> autoStart = new ArrayList<String>();
+        for ( Map.Entry<String, BundleStartLevel> entry : bundles.entrySet() )
+        {
+            String location = entry.getKey();
+            BundleStartLevel level = entry.getValue();
+            if ( !installed.containsKey( location ) )
+            {
+                commands.add( "INSTALL " + ( level != null ? level.getLevel() : 0 ) + " " + location );
+                installed.put( location, level );
+                if ( level != null && level.isAutoStart() )
+                {
+                    autoStart.add( location );
+                }
+            }
+            else if ( updateReactorBundles && reactorBundles.contains( location ) )
+            {
+                commands.add( "UPDATE " + location );
+            }
+        }
+
+        if ( !commands.isEmpty() )
+        {
+            commands.add( "REFRESH" );
+        }
+        for ( String location : autoStart )
+        {
+            commands.add( "START " + location );
+        }
+
+        return commands;
+    }
+
+    private static boolean isSameStartLevel( BundleStartLevel a, BundleStartLevel b )
+    {
+        if ( a == null || b == null )
+        {
+            return a == b;
+        }
+        return a.getLevel() == b.getLevel() && a.isAutoStart() == b.isAutoStart();
+    }
+
+    private void command( String command )
+        throws IOException
+    {
+        String reply = send( command );
+        if ( !"OK".equals( reply ) )
+        {
+            throw new IOException( "Test worker command failed: " + command + ": " + reply );
+        }
+    }
+
+    private String send( String command )
+        throws IOException
+    {
+        out.write( command );
+        out.write( '\n' );
+        out.flush();
+        String reply = in.readLine();
+        if ( reply == null )
+        {
+            throw new IOException( "Test worker terminated unexpectedly" );
+        }
+        return reply;
+    }
+
+    private boolean isAlive()
+    {
+        if ( process == null )
+        {
+            return true; // not started yet
+        }
+        try
+        {
+            process.exitValue();
+            return false;
+        }
+        catch ( IllegalThreadStateException e )
+        {
+            return true;
+        }
+    }
+
+    private void destroy()
+    {
+        try
+        {
+            if ( serverSocket != null )
+            {
+                serverSocket.close();
+            }
+            if ( socket != null )
+            {
+                // the runtime exits when the connection is closed
+                socket.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // the process is destroyed anyway
+        }
+        if ( process != null )
+        {
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.codehaus.tycho.osgitest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.tycho.ArtifactKey;
+import org.codehaus.tycho.TychoProject;
+
+public class TestEclipseRuntimeTest
+    extends PlexusTestCase
+{
+    private static final ArtifactKey KEY = new ArtifactKey( TychoProject.ECLIPSE_PLUGIN, "bundle", "1.0.0" );
+
+    private File basedir;
+
+    private File cache;
+
+    private File jar;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        basedir = new File( "target/runtime-cache" ).getAbsoluteFile();
+        makeWritable( basedir );
+        FileUtils.deleteDirectory( basedir );
+        cache = new File( basedir, "cache" );
+        jar = new File( basedir, "bundle_1.0.0.jar" );
+        writeJar( jar, "original" );
+        TestEclipseRuntime.clearValidatedEntries();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        makeWritable( basedir );
+        FileUtils.deleteDirectory( basedir );
+        super.tearDown();
+    }
+
+    public void testCacheHit()
+        throws Exception
+    {
+        File first = newRuntime( "work1", cache ).getUnpackedBundle( KEY, jar, true );
+        File second = newRuntime( "work2", cache ).getUnpackedBundle( KEY, jar, true );
+
+        assertEquals( "original", FileUtils.fileRead( new File( first, "file.txt" ) ) );
+        assertEquals( first.getCanonicalFile(), second.getCanonicalFile() );
+        assertEquals( 1, cache.list().length );
+        assertEquals( new File( basedir, "work1/plugins/bundle_1.0.0" ), first );
+
+        // links are reused
+        File entry = first.getCanonicalFile();
+        assertEquals( entry, newRuntime( "work1", cache ).getUnpackedBundle( KEY, jar, true ).getCanonicalFile() );
+    }
+
+    public void testModifiedCacheEntry()
+        throws Exception
+    {
+        File unpacked = newRuntime( "work", cache ).getUnpackedBundle( KEY, jar, true );
+
+        File file = new File( unpacked, "file.txt" ).getCanonicalFile();
+        makeWritable( file.getParentFile() );
+        FileUtils.fileWrite( file.getAbsolutePath(), "modified by test" );
+        file.setLastModified( file.lastModified() + 2000 );
+
+        // checked once per build
+        unpacked = newRuntime( "work", cache ).getUnpackedBundle( KEY, jar, true );
+        assertEquals( "modified by test", FileUtils.fileRead( new File( unpacked, "file.txt" ) ) );
+
+        TestEclipseRuntime.clearValidatedEntries();
+        unpacked = newRuntime( "work", cache ).getUnpackedBundle( KEY, jar, true );
+
+        assertEquals( "original", FileUtils.fileRead( new File( unpacked, "file.txt" ) ) );
+        assertEquals( 1, cache.list().length );
+    }
+
+    public void testPrunedCache()
+        throws Exception
+    {
+        long old = System.currentTimeMillis() - 2 * TestEclipseRuntime.MIN_UNUSED_TIME;
+        for ( int i = 0; i < TestEclipseRuntime.MAX_CACHED_BUNDLES + 1; i++ )
+        {
+            File entry = new File( cache, "entry" + i );
+            entry.mkdirs();
+            entry.setLastModified( old + i * 1000 );
+        }
+        File leftover = new File( cache, "entry.tmp" );
+        leftover.mkdirs();
+        leftover.setLastModified( old );
+        File recent = new File( cache, "recent.tmp" );
+        recent.mkdirs();
+
+        newRuntime( "work", cache ).getUnpackedBundle( KEY, jar, true );
+
+        assertEquals( TestEclipseRuntime.MAX_CACHED_BUNDLES + 1, cache.list().length );
+        assertFalse( new File( cache, "entry0" ).exists() );
+        assertFalse( new File( cache, "entry1" ).exists() );
+        assertTrue( new File( cache, "entry2" ).exists() );
+        assertFalse( leftover.exists() );
+        assertTrue( recent.exists() );
+    }
+
+    public void testExplodedBundleNotShared()
+        throws Exception
+    {
+        File unpacked = newRuntime( "work", cache ).getUnpackedBundle( KEY, jar, false );
+
+        assertEquals( "original", FileUtils.fileRead( new File( unpacked, "file.txt" ) ) );
+        assertEquals( unpacked.getAbsoluteFile(), unpacked.getCanonicalFile() );
+        assertTrue( new File( unpacked, "file.txt" ).canWrite() );
+        assertFalse( cache.exists() );
+    }
+
+    public void testChangedBundle()
+        throws Exception
+    {
+        File unpacked = newRuntime( "work", cache ).getUnpackedBundle( KEY, jar, true );
+        File entry = unpacked.getCanonicalFile();
+
+        writeJar( jar, "changed" );
+        jar.setLastModified( jar.lastModified() + 2000 );
+
+        unpacked = newRuntime( "work", cache ).getUnpackedBundle( KEY, jar, true );
+
+        assertEquals( "changed", FileUtils.fileRead( new File( unpacked, "file.txt" ) ) );
+        assertFalse( entry.equals( unpacked.getCanonicalFile() ) );
+        assertEquals( "original", FileUtils.fileRead( new File( entry, "file.txt" ) ) );
+    }
+
+    public void testWithoutCache()
+        throws Exception
+    {
+        File unpacked = newRuntime( "work", null ).getUnpackedBundle( KEY, jar, true );
+
+        assertEquals( "original", FileUtils.fileRead( new File( unpacked, "file.txt" ) ) );
+        assertEquals( unpacked.getAbsoluteFile(), unpacked.getCanonicalFile() );
+
+        // unchanged bundle is not unpacked again
+        File marker = new File( unpacked, "marker" );
+        marker.createNewFile();
+        unpacked = newRuntime( "work", null ).getUnpackedBundle( KEY, jar, true );
+        assertTrue( marker.exists() );
+
+        writeJar( jar, "changed" );
+        jar.setLastModified( jar.lastModified() + 2000 );
+        unpacked = newRuntime( "work", null ).getUnpackedBundle( KEY, jar, true );
+        assertFalse( marker.exists() );
+        assertEquals( "changed", FileUtils.fileRead( new File( unpacked, "file.txt" ) ) );
+    }
+
+    private TestEclipseRuntime newRuntime( String work, File cacheLocation )
+    {
+        TestEclipseRuntime runtime = new TestEclipseRuntime();
+        runtime.enableLogging( new ConsoleLogger( Logger.LEVEL_WARN, "test" ) );
+        runtime.setLocation( new File( basedir, work ) );
+        runtime.setCacheLocation( cacheLocation );
+        runtime.setPlexusContainer( getContainer() );
+        return runtime;
+    }
+
+    private static void writeJar( File file, String content )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        JarOutputStream os = new JarOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            os.putNextEntry( new ZipEntry( "file.txt" ) );
+            os.write( content.getBytes( "UTF-8" ) );
+            os.closeEntry();
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+
+    private static void makeWritable( File file )
+    {
+        file.setWritable( true );
+        File[] files = file.listFiles();
+        if ( files != null )
+        {
+            for ( File child : files )
+            {
+                makeWritable( child );
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.codehaus.tycho.osgitest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.cli.Commandline;
+
+public class TestWorkerTest
+    extends TestCase
+{
+    private static final Set<String> MODULE_ARGUMENTS =
+        new HashSet<String>( Arrays.asList( new String[] { "-install", "-configuration" } ) );
+
+    private static final File SYSTEM_BUNDLE = new File( "org.eclipse.osgi.jar" );
+
+    public void testSameKey()
+    {
+        String key =
+            getKey( commandline( "-Xmx512m", "-data", "data", "-install", "work1", "-configuration", "work1/configuration" ) );
+
+        assertEquals( key, getKey( commandline( "-Xmx512m", "-data", "data", "-install", "work1", "-configuration",
+                                                "work1/configuration" ) ) );
+        // runtime locations
+        assertEquals( key, getKey( commandline( "-Xmx512m", "-data", "data", "-install", "work2", "-configuration",
+                                                "work2/configuration" ) ) );
+    }
+
+    public void testChangedKey()
+    {
+        List<File> extensions = Collections.emptyList();
+        String key = TestWorker.getKey( commandline( "-Xmx512m" ), MODULE_ARGUMENTS, null, SYSTEM_BUNDLE, extensions );
+
+        // vm arguments
+        assertFalse( key.equals( getKey( commandline( "-Xmx1024m" ) ) ) );
+        // workspace and dev entries
+        assertFalse( key.equals( getKey( commandline( "-Xmx512m", "-data", "module2/data" ) ) ) );
+        assertFalse( key.equals( getKey( commandline( "-Xmx512m", "-dev", "module2/dev.properties" ) ) ) );
+        // working directory
+        Commandline cli = commandline( "-Xmx512m" );
+        cli.setWorkingDirectory( new File( "module2" ) );
+        assertFalse( key.equals( getKey( cli ) ) );
+        // environment
+        assertFalse( key.equals( TestWorker.getKey( commandline( "-Xmx512m" ), MODULE_ARGUMENTS, "{A=B}",
+                                                    SYSTEM_BUNDLE, extensions ) ) );
+        // framework bundles
+        assertFalse( key.equals( TestWorker.getKey( commandline( "-Xmx512m" ), MODULE_ARGUMENTS, null,
+                                                    new File( "org.eclipse.osgi_3.6.jar" ), extensions ) ) );
+        assertFalse( key.equals( TestWorker.getKey( commandline( "-Xmx512m" ), MODULE_ARGUMENTS, null, SYSTEM_BUNDLE,
+                                                    Collections.singletonList( new File( "extension.jar" ) ) ) ) );
+    }
+
+    public void testReuse()
+    {
+        TestWorker worker = TestWorker.acquire( "key" );
+        try
+        {
+            // busy
+            assertNull( TestWorker.acquire( "key" ) );
+        }
+        finally
+        {
+            TestWorker.release( worker, true );
+        }
+
+        TestWorker same = TestWorker.acquire( "key" );
+        TestWorker.release( same, true );
+        assertSame( worker, same );
+
+        TestWorker other = TestWorker.acquire( "other" );
+        TestWorker.release( other, false );
+        assertNotSame( worker, other );
+
+        TestWorker fresh = TestWorker.acquire( "other" );
+        TestWorker.release( fresh, false );
+        assertNotSame( other, fresh );
+    }
+
+    public void testInitialCommands()
+    {
+        Map<String, BundleStartLevel> bundles = bundles( "a", "b" );
+        Map<String, BundleStartLevel> installed = new LinkedHashMap<String, BundleStartLevel>( bundles );
+
+        List<String> commands = TestWorker.getCommands( installed, bundles, Collections.singleton( "a" ), false );
+
+        assertEquals( Collections.emptyList(), commands );
+    }
+
+    public void testDelta()
+    {
+        Map<String, BundleStartLevel> installed = bundles( "a", "b", "reactor" );
+        Map<String, BundleStartLevel> bundles = bundles( "a", "reactor", "c" );
+        bundles.put( "started", new BundleStartLevel( "started", 4, true ) );
+
+        List<String> commands = TestWorker.getCommands( installed, bundles, Collections.singleton( "reactor" ), true );
+
+        assertEquals( Arrays.asList( "UNINSTALL b", "UPDATE reactor", "INSTALL 0 c", "INSTALL 4 started", "REFRESH",
+                                     "START started" ), commands );
+        assertEquals( bundles.keySet(), installed.keySet() );
+
+        // nothing changed
+        commands = TestWorker.getCommands( installed, bundles, Collections.<String> emptySet(), true );
+        assertEquals( Collections.emptyList(), commands );
+    }
+
+    public void testChangedStartLevel()
+    {
+        Map<String, BundleStartLevel> installed = bundles( "a" );
+        installed.put( "b", new BundleStartLevel( "b", 4, false ) );
+        Map<String, BundleStartLevel> bundles = bundles( "a" );
+        bundles.put( "b", new BundleStartLevel( "b", 2, true ) );
+
+        List<String> commands = TestWorker.getCommands( installed, bundles, Collections.<String> emptySet(), false );
+
+        assertEquals( Arrays.asList( "UNINSTALL b", "INSTALL 2 b", "REFRESH", "START b" ), commands );
+        assertSame( bundles.get( "b" ), installed.get( "b" ) );
+    }
+
+    private static Map<String, BundleStartLevel> bundles( String... locations )
+    {
+        Map<String, BundleStartLevel> bundles = new LinkedHashMap<String, BundleStartLevel>();
+        for ( String location : locations )
+        {
+            bundles.put( location, null );
+        }
+        return bundles;
+    }
+
+    private static String getKey( Commandline cli )
+    {
+        return TestWorker.getKey( cli, MODULE_ARGUMENTS, null, SYSTEM_BUNDLE, new ArrayList<File>() );
+    }
+
+    private static Commandline commandline( String... arguments )
+    {
+        Commandline cli = new Commandline();
+        cli.setExecutable( "java" );
+        cli.addArguments( arguments );
+        return cli;
+    }
+}
@@ -0,0 +1,181 @@
+package org.codehaus.tycho.surefire.osgibooter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.surefire.Surefire;
+import org.apache.maven.surefire.report.AbstractReporter;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.PropertyUtils;
+
+public class ParallelTestRunnerTest
+    extends TestCase
+{
+    /** both samples wait for each other, so they only pass the barrier when run in parallel */
+    static final CyclicBarrier BARRIER = new CyclicBarrier( 2 );
+
+    static final Set<String> THREADS = Collections.synchronizedSet( new HashSet<String>() );
+
+    static final List<String> FOOTER = Collections.synchronizedList( new ArrayList<String>() );
+
+    private File reportsDir;
+
+    private File timingsFile;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        File basedir = new File( "target/parallel-runner" ).getAbsoluteFile();
+        FileUtils.deleteDirectory( basedir );
+        reportsDir = new File( basedir, "reports" );
+        timingsFile = new File( basedir, "timings/test-timings.properties" );
+        BARRIER.reset();
+        THREADS.clear();
+        FOOTER.clear();
+    }
+
+    public void testReportsPerClass()
+        throws Exception
+    {
+        int result = runSamples();
+
+        // samples fail, so their output is part of the reports
+        assertEquals( 255, result );
+        assertEquals( 2, THREADS.size() );
+
+        String first = FileUtils.fileRead( getReport( FirstSample.class ) );
+        String second = FileUtils.fileRead( getReport( SecondSample.class ) );
+        assertTrue( first.contains( "first sample output" ) );
+        assertFalse( first.contains( "second sample output" ) );
+        assertTrue( second.contains( "second sample output" ) );
+        assertFalse( second.contains( "first sample output" ) );
+
+        Properties timings = PropertyUtils.loadProperties( timingsFile );
+        assertEquals( new HashSet<Object>( Arrays.asList( FirstSample.class.getName(), SecondSample.class.getName() ) ),
+                      timings.keySet() );
+    }
+
+    public void testSummary()
+        throws Exception
+    {
+        runSamples();
+
+        // one footer with the results of both threads
+        assertEquals( 1, Collections.frequency( FOOTER, "Results :" ) );
+        assertEquals( 1, Collections.frequency( FOOTER, "Failed tests: " ) );
+        assertTrue( FOOTER.contains( "Tests run: 2, Failures: 2, Errors: 0, Skipped: 0" ) );
+        int failed = FOOTER.indexOf( "Failed tests: " );
+        Set<String> sources = new HashSet<String>( FOOTER.subList( failed + 1, failed + 3 ) );
+        assertEquals( 2, sources.size() );
+        for ( String source : sources )
+        {
+            assertTrue( source, source.startsWith( "  testOutput" ) );
+        }
+    }
+
+    public void testTimingsMerged()
+        throws Exception
+    {
+        timingsFile.getParentFile().mkdirs();
+        FileUtils.fileWrite( timingsFile.getAbsolutePath(), "other.Test=5\n" + FirstSample.class.getName() + "=100000\n" );
+
+        runSamples();
+
+        Properties timings = PropertyUtils.loadProperties( timingsFile );
+        assertEquals( "5", timings.getProperty( "other.Test" ) );
+        assertTrue( Long.parseLong( timings.getProperty( FirstSample.class.getName() ) ) < 100000 );
+        assertNotNull( timings.getProperty( SecondSample.class.getName() ) );
+    }
+
+    private int runSamples()
+        throws Exception
+    {
+        List<Object[]> reports = new ArrayList<Object[]>();
+        reports.add( new Object[] { "org.apache.maven.surefire.report.XMLReporter",
+            new Object[] { reportsDir, Boolean.TRUE } } );
+        reports.add( new Object[] { FooterReporter.class.getName(), new Object[] { Boolean.TRUE } } );
+
+        ArrayList<String> includes = new ArrayList<String>();
+        includes.add( "**/" + getClassFile( FirstSample.class ) );
+        includes.add( "**/" + getClassFile( SecondSample.class ) );
+        Object[] suiteParams = new Object[] { new File( "target/test-classes" ), includes, new ArrayList<String>() };
+
+        return new ParallelTestRunner( 2, timingsFile ).run( reports,
+                                                             "org.apache.maven.surefire.junit.JUnitDirectoryTestSuite",
+                                                             suiteParams, Surefire.class.getClassLoader(),
+                                                             getClass().getClassLoader() );
+    }
+
+    private File getReport( Class<?> testClass )
+    {
+        return new File( reportsDir, "TEST-" + testClass.getName() + ".xml" );
+    }
+
+    private static String getClassFile( Class<?> testClass )
+    {
+        return testClass.getName().substring( testClass.getName().lastIndexOf( '.' ) + 1 ) + ".class";
+    }
+
+    static void runSample( String output )
+        throws Exception
+    {
+        THREADS.add( Thread.currentThread().getName() );
+        BARRIER.await( 10, TimeUnit.SECONDS );
+        for ( int i = 0; i < 10; i++ )
+        {
+            System.out.println( output );
+            Thread.sleep( 10 );
+        }
+        fail( "expected failure" );
+    }
+
+    public static class FooterReporter
+        extends AbstractReporter
+    {
+        public FooterReporter( Boolean trimStackTrace )
+        {
+            super( trimStackTrace );
+        }
+
+        public void writeMessage( String message )
+        {
+        }
+
+        @Override
+        public void writeFooter( String footer )
+        {
+            FOOTER.add( footer );
+        }
+    }
+
+    public static class FirstSample
+        extends TestCase
+    {
+        public void testOutput()
+            throws Exception
+        {
+            runSample( "first sample output" );
+        }
+    }
+
+    public static class SecondSample
+        extends TestCase
+    {
+        public void testOutput()
+            throws Exception
+        {
+            runSample( "second sample output" );
+        }
+    }
+}
@@ -31,6 +31,7 @@ public class OsgiSurefireBooter {
 		File reportsDir = new File(p.getProperty("reportsdirectory"));
 		
 		String runner = p.getProperty("testrunner");
+		int threads = Integer.parseInt(p.getProperty("threads", "1"));
 		
 		ArrayList<String> includes = getIncludesExcludes(p.getProperty("includes"));
 		ArrayList<String> excludes = getIncludesExcludes(p.getProperty("excludes"));
@@ -62,6 +63,16 @@ public class OsgiSurefireBooter {
 			}
 		});
 
+		if (threads > 1) {
+			String timingsFile = p.getProperty("timingsfile");
+			File timings = timingsFile != null ? new File(timingsFile) : new File(reportsDir, ParallelTestRunner.TIMINGS_FILE);
+			return new ParallelTestRunner(threads, timings).run(reports, runner, new Object[] {
+				testDir,
+				includes,
+				excludes
+			}, surefireClassLoader, testClassLoader);
+		}
+
 		List tests = new ArrayList();
 		tests.add(new Object[] {
 			runner,
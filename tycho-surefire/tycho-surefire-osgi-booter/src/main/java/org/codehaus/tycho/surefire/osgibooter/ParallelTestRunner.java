@@ -0,0 +1,394 @@
+package org.codehaus.tycho.surefire.osgibooter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.surefire.Surefire;
+import org.apache.maven.surefire.report.ReportEntry;
+import org.apache.maven.surefire.report.Reporter;
+import org.apache.maven.surefire.report.ReporterManager;
+import org.apache.maven.surefire.suite.SurefireTestSuite;
+
+/**
+ * Runs the test classes of a surefire test suite in several threads. Each thread reports to its own reporter
+ * instances, so per class reports are written as in a serial run, and the results of all threads are written as
+ * one summary. Test durations are merged into the timings file, and test classes that took longest in previous runs
+ * are started first.
+ */
+public class ParallelTestRunner {
+
+	public static final String TIMINGS_FILE = "test-timings.properties";
+
+	private static final int NO_TESTS = 254;
+
+	private static final int FAILURE = 255;
+
+	/** guards the System.out and System.err replacements done by reporter managers */
+	private static final Object STREAMS_LOCK = new Object();
+
+	private final int threads;
+
+	private final File timingsFile;
+
+	private PrintStream originalOut;
+
+	private PrintStream originalErr;
+
+	private ThreadOutputStream threadOut;
+
+	private ThreadOutputStream threadErr;
+
+	private PrintStream routedOut;
+
+	private PrintStream routedErr;
+
+	public ParallelTestRunner(int threads, File timingsFile) {
+		this.threads = threads;
+		this.timingsFile = timingsFile;
+	}
+
+	public int run(List reports, String suiteClassName, Object[] suiteParams, ClassLoader surefireClassLoader, final ClassLoader testClassLoader) throws Exception {
+		final SurefireTestSuite suite = (SurefireTestSuite) Surefire.instantiateObject(suiteClassName, suiteParams, surefireClassLoader);
+		Map testSets = suite.locateTestSets(testClassLoader);
+
+		List<String> classNames = new ArrayList<String>();
+		for (Object name : testSets.keySet()) {
+			classNames.add((String) name);
+		}
+		Properties previousTimings = loadTimings();
+		sortByPreviousDuration(classNames, previousTimings);
+
+		List<ThreadReporterManager> managers = new ArrayList<ThreadReporterManager>();
+		for (int i = 0; i < threads; i++) {
+			managers.add(new ThreadReporterManager(instantiateReports(reports, surefireClassLoader)));
+		}
+
+		// console reporters print the run heading, it is written once
+		ReporterManager first = managers.get(0);
+		first.runStarting(classNames.size());
+		if (classNames.isEmpty()) {
+			first.writeMessage("There are no tests to run.");
+			return NO_TESTS;
+		}
+
+		final Queue<String> queue = new ConcurrentLinkedQueue<String>(classNames);
+		final Map<String, Long> timings = new ConcurrentHashMap<String, Long>();
+
+		originalOut = System.out;
+		originalErr = System.err;
+		threadOut = new ThreadOutputStream(originalOut);
+		threadErr = new ThreadOutputStream(originalErr);
+		routedOut = new PrintStream(threadOut, true);
+		routedErr = new PrintStream(threadErr, true);
+		System.setOut(routedOut);
+		System.setErr(routedErr);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (final ReporterManager manager : managers) {
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						ClassLoader ccl = Thread.currentThread().getContextClassLoader();
+						Thread.currentThread().setContextClassLoader(testClassLoader);
+						try {
+							String className;
+							while ((className = queue.poll()) != null) {
+								long start = System.currentTimeMillis();
+								suite.execute(className, manager, testClassLoader);
+								timings.put(className, Long.valueOf(System.currentTimeMillis() - start));
+							}
+						} finally {
+							Thread.currentThread().setContextClassLoader(ccl);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) {
+						throw (Exception) cause;
+					}
+					throw (Error) cause;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			System.setOut(originalOut);
+			System.setErr(originalErr);
+		}
+
+		writeTimings(previousTimings, timings);
+
+		return writeResults(managers);
+	}
+
+	private static List instantiateReports(List reports, ClassLoader classLoader) throws Exception {
+		List<Reporter> result = new ArrayList<Reporter>();
+		for (Object report : reports) {
+			Object[] definition = (Object[]) report;
+			result.add((Reporter) Surefire.instantiateObject((String) definition[0], (Object[]) definition[1], classLoader));
+		}
+		return result;
+	}
+
+	/**
+	 * Longest test classes first, so the threads finish at about the same time. Classes without a previous duration
+	 * go first, they may be long running.
+	 */
+	private static void sortByPreviousDuration(List<String> classNames, final Properties previous) {
+		Collections.sort(classNames, new Comparator<String>() {
+			public int compare(String a, String b) {
+				long da = getDuration(a);
+				long db = getDuration(b);
+				return da > db ? -1 : (da < db ? 1 : a.compareTo(b));
+			}
+
+			private long getDuration(String className) {
+				try {
+					return Long.parseLong(previous.getProperty(className));
+				} catch (NumberFormatException e) {
+					return Long.MAX_VALUE;
+				}
+			}
+		});
+	}
+
+	private Properties loadTimings() {
+		Properties timings = new Properties();
+		if (timingsFile.canRead()) {
+			try {
+				BufferedInputStream in = new BufferedInputStream(new FileInputStream(timingsFile));
+				try {
+					timings.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// run in the default order
+			}
+		}
+		return timings;
+	}
+
+	/**
+	 * Classes that did not run this time, e.g. because of a test filter, keep their previous duration.
+	 */
+	private void writeTimings(Properties previous, Map<String, Long> current) throws IOException {
+		final Map<String, Long> timings = new HashMap<String, Long>();
+		for (Map.Entry<Object, Object> entry : previous.entrySet()) {
+			try {
+				timings.put((String) entry.getKey(), Long.valueOf((String) entry.getValue()));
+			} catch (NumberFormatException e) {
+				// dropped
+			}
+		}
+		timings.putAll(current);
+
+		List<String> classNames = new ArrayList<String>(timings.keySet());
+		Collections.sort(classNames, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return timings.get(b).compareTo(timings.get(a));
+			}
+		});
+		timingsFile.getParentFile().mkdirs();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(timingsFile), "ISO-8859-1"));
+		try {
+			writer.write("# test class duration in milliseconds\n");
+			for (String className : classNames) {
+				writer.write(className + "=" + timings.get(className) + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Completes the run of all reporters and writes the footer of {@link ReporterManager#runCompleted()} with the
+	 * merged results of all threads to the reporters of the first thread.
+	 */
+	private static int writeResults(List<ThreadReporterManager> managers) {
+		int completed = 0, errors = 0, failures = 0, skipped = 0;
+		List<Object> errorSources = new ArrayList<Object>();
+		List<Object> failureSources = new ArrayList<Object>();
+		for (ThreadReporterManager manager : managers) {
+			Properties results = new Properties();
+			manager.updateResultsProperties(results);
+			completed += Integer.parseInt(results.getProperty("completedCount", "0"));
+			errors += Integer.parseInt(results.getProperty("errors", "0"));
+			failures += Integer.parseInt(results.getProperty("failures", "0"));
+			skipped += Integer.parseInt(results.getProperty("skipped", "0"));
+			errorSources.addAll(manager.errorSources);
+			failureSources.addAll(manager.failureSources);
+			for (Object reporter : manager.getReports()) {
+				((Reporter) reporter).runCompleted();
+			}
+		}
+
+		List<Reporter> reporters = managers.get(0).getReports();
+		writeFooter(reporters, "");
+		writeFooter(reporters, "Results :");
+		writeFooter(reporters, "");
+		if (failures > 0) {
+			writeFooter(reporters, "Failed tests: ");
+			for (Object source : failureSources) {
+				writeFooter(reporters, "  " + source);
+			}
+			writeFooter(reporters, "");
+		}
+		if (errors > 0) {
+			writeFooter(reporters, "Tests in error: ");
+			for (Object source : errorSources) {
+				writeFooter(reporters, "  " + source);
+			}
+			writeFooter(reporters, "");
+		}
+		writeFooter(reporters, "Tests run: " + completed + ", Failures: " + failures + ", Errors: " + errors + ", Skipped: " + skipped);
+		writeFooter(reporters, "");
+
+		if (completed == 0) {
+			return NO_TESTS;
+		}
+		return errors > 0 || failures > 0 ? FAILURE : 0;
+	}
+
+	private static void writeFooter(List<Reporter> reporters, String footer) {
+		for (Reporter reporter : reporters) {
+			reporter.writeFooter(footer);
+		}
+	}
+
+	/**
+	 * Writes to the stream set by the current thread, or to the original stream.
+	 */
+	private static class ThreadOutputStream extends OutputStream {
+		private final PrintStream original;
+
+		private final ThreadLocal<PrintStream> stream = new ThreadLocal<PrintStream>();
+
+		ThreadOutputStream(PrintStream original) {
+			this.original = original;
+		}
+
+		void setStream(PrintStream stream) {
+			this.stream.set(stream);
+		}
+
+		private PrintStream getStream() {
+			PrintStream stream = this.stream.get();
+			return stream != null ? stream : original;
+		}
+
+		public void write(int b) throws IOException {
+			getStream().write(b);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			getStream().write(b, off, len);
+		}
+
+		public void flush() throws IOException {
+			getStream().flush();
+		}
+	}
+
+	/**
+	 * ReporterManager captures the output of each test by replacing System.out and System.err. Each capture is
+	 * installed for the current thread only, so concurrent tests do not capture each other's output.
+	 */
+	private class ThreadReporterManager extends ReporterManager {
+
+		final List<Object> errorSources = new ArrayList<Object>();
+
+		final List<Object> failureSources = new ArrayList<Object>();
+
+		ThreadReporterManager(List reports) {
+			super(reports);
+		}
+
+		public synchronized void testSetCompleted(ReportEntry report) {
+			// same sources as collected by the super class for its footer
+			if (!getReports().isEmpty()) {
+				Reporter reporter = (Reporter) getReports().get(0);
+				errorSources.addAll(reporter.getErrorSources());
+				failureSources.addAll(reporter.getFailureSources());
+			}
+			super.testSetCompleted(report);
+		}
+
+		public void testStarting(ReportEntry report) {
+			synchronized (STREAMS_LOCK) {
+				System.setOut(originalOut);
+				System.setErr(originalErr);
+				super.testStarting(report);
+				threadOut.setStream(System.out);
+				threadErr.setStream(System.err);
+				routeStreams();
+			}
+		}
+
+		public void testSucceeded(ReportEntry report) {
+			synchronized (STREAMS_LOCK) {
+				super.testSucceeded(report);
+				routeStreams();
+			}
+		}
+
+		public void testError(ReportEntry report) {
+			synchronized (STREAMS_LOCK) {
+				super.testError(report);
+				routeStreams();
+			}
+		}
+
+		public void testFailed(ReportEntry report) {
+			synchronized (STREAMS_LOCK) {
+				super.testFailed(report);
+				routeStreams();
+			}
+		}
+
+		public void testSkipped(ReportEntry report) {
+			synchronized (STREAMS_LOCK) {
+				super.testSkipped(report);
+				routeStreams();
+			}
+		}
+
+		private void routeStreams() {
+			if (System.out == originalOut) {
+				// test finished, the manager has restored the original streams
+				threadOut.setStream(null);
+				threadErr.setStream(null);
+			}
+			System.setOut(routedOut);
+			System.setErr(routedErr);
+		}
+	}
+}
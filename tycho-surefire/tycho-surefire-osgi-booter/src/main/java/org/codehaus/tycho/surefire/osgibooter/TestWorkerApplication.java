@@ -0,0 +1,191 @@
+package org.codehaus.tycho.surefire.osgibooter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.eclipse.core.runtime.IPlatformRunnable;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.osgi.service.startlevel.StartLevel;
+
+/**
+ * Headless test application which stays alive and runs tests of several test bundles. Connects to the port given by
+ * -testworkerport and executes one command per line until the connection is closed:
+ *
+ * <pre>
+ * INSTALL &lt;startlevel&gt; &lt;location&gt;
+ * UNINSTALL &lt;location&gt;
+ * UPDATE &lt;location&gt;
+ * REFRESH
+ * START &lt;location&gt;
+ * TEST &lt;testproperties file&gt;
+ * </pre>
+ *
+ * Each command is answered with a single line, <code>OK</code>, <code>RESULT &lt;code&gt;</code> for TEST or
+ * <code>ERROR &lt;message&gt;</code>.
+ */
+@SuppressWarnings("deprecation")
+public class TestWorkerApplication implements IPlatformRunnable {
+
+	private static final long REFRESH_TIMEOUT = 60 * 1000L;
+
+	private static final String INITIAL_LOCATION = "initial@";
+
+	public Object run(Object object) throws Exception {
+		String[] args = Platform.getCommandLineArgs();
+		int port = getPort(args);
+
+		Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+			String line;
+			while ((line = in.readLine()) != null) {
+				String reply;
+				try {
+					reply = execute(line);
+				} catch (Throwable t) {
+					t.printStackTrace();
+					reply = "ERROR " + String.valueOf(t.getMessage()).replace('\n', ' ');
+				}
+				out.write(reply);
+				out.write('\n');
+				out.flush();
+			}
+		} finally {
+			socket.close();
+		}
+
+		return new Integer(0);
+	}
+
+	private String execute(String line) throws Exception {
+		BundleContext context = Activator.getContext();
+		int idx = line.indexOf(' ');
+		String command = idx > 0 ? line.substring(0, idx) : line;
+		String argument = idx > 0 ? line.substring(idx + 1) : null;
+
+		if ("INSTALL".equals(command)) {
+			String[] parts = argument.split(" ", 2);
+			int level = Integer.parseInt(parts[0]);
+			String location = parts[1];
+			Bundle bundle = getBundle(context, location);
+			if (bundle == null) {
+				bundle = context.installBundle(location);
+			} else {
+				bundle.update();
+			}
+			if (level > 0) {
+				StartLevel startLevel = (StartLevel) getService(context, StartLevel.class.getName());
+				startLevel.setBundleStartLevel(bundle, level);
+			}
+		} else if ("UNINSTALL".equals(command)) {
+			Bundle bundle = getBundle(context, argument);
+			if (bundle != null) {
+				bundle.uninstall();
+			}
+		} else if ("UPDATE".equals(command)) {
+			getExistingBundle(context, argument).update();
+		} else if ("REFRESH".equals(command)) {
+			refresh(context);
+		} else if ("START".equals(command)) {
+			getExistingBundle(context, argument).start();
+		} else if ("TEST".equals(command)) {
+			int result = OsgiSurefireBooter.run(new String[] { "-testproperties", argument });
+			return "RESULT " + result;
+		} else {
+			throw new IllegalArgumentException("Unknown command " + line);
+		}
+		return "OK";
+	}
+
+	private void refresh(BundleContext context) throws InterruptedException {
+		PackageAdmin packageAdmin = (PackageAdmin) getService(context, PackageAdmin.class.getName());
+		final Object lock = new Object();
+		final boolean[] refreshed = new boolean[1];
+		FrameworkListener listener = new FrameworkListener() {
+			public void frameworkEvent(FrameworkEvent event) {
+				if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED) {
+					synchronized (lock) {
+						refreshed[0] = true;
+						lock.notifyAll();
+					}
+				}
+			}
+		};
+		context.addFrameworkListener(listener);
+		try {
+			packageAdmin.refreshPackages(null);
+			long timeout = System.currentTimeMillis() + REFRESH_TIMEOUT;
+			synchronized (lock) {
+				while (!refreshed[0] && System.currentTimeMillis() < timeout) {
+					lock.wait(1000L);
+				}
+			}
+		} finally {
+			context.removeFrameworkListener(listener);
+		}
+		packageAdmin.resolveBundles(null);
+	}
+
+	private static Bundle getBundle(BundleContext context, String location) {
+		location = normalize(location);
+		Bundle[] bundles = context.getBundles();
+		for (int i = 0; i < bundles.length; i++) {
+			if (location.equals(normalize(bundles[i].getLocation()))) {
+				return bundles[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Bundles installed from osgi.bundles of config.ini have initial@ locations, directories may have a trailing slash.
+	 */
+	private static String normalize(String location) {
+		if (location.startsWith(INITIAL_LOCATION)) {
+			location = location.substring(INITIAL_LOCATION.length());
+		}
+		if (location.endsWith("/")) {
+			location = location.substring(0, location.length() - 1);
+		}
+		return location;
+	}
+
+	private static Bundle getExistingBundle(BundleContext context, String location) throws BundleException {
+		Bundle bundle = getBundle(context, location);
+		if (bundle == null) {
+			throw new BundleException("Bundle is not installed " + location);
+		}
+		return bundle;
+	}
+
+	private static Object getService(BundleContext context, String name) {
+		ServiceReference reference = context.getServiceReference(name);
+		if (reference == null) {
+			throw new IllegalStateException("Service is not available " + name);
+		}
+		return context.getService(reference);
+	}
+
+	private static int getPort(String[] args) throws IOException {
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("-testworkerport".equals(args[i].toLowerCase())) {
+				return Integer.parseInt(args[i + 1]);
+			}
+		}
+		throw new IOException("-testworkerport command line parameter is not specified");
+	}
+}